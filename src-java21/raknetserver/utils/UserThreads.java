@@ -0,0 +1,20 @@
+package raknetserver.utils;
+
+import java.util.concurrent.ThreadFactory;
+
+//java 21 version of the user threads, virtual threads are cheap, so pool can be big enough to never be exhausted by blocked handlers
+public class UserThreads {
+
+	public static boolean isVirtual() {
+		return true;
+	}
+
+	public static ThreadFactory newThreadFactory(String name) {
+		return Thread.ofVirtual().name(name + "-", 0).factory();
+	}
+
+	public static int getDefaultPoolSize() {
+		return 16384;
+	}
+
+}
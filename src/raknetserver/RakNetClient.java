@@ -0,0 +1,160 @@
+package raknetserver;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import raknetserver.RakNetServer.UserChannelInitializer;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketInboundOrderer;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketOutboundOrder;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketOverloadHandler;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketSplitter;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketUnsplitter;
+import raknetserver.pipeline.internal.InternalPacketClientReadHandler;
+import raknetserver.pipeline.internal.InternalPacketDecoder;
+import raknetserver.pipeline.internal.InternalPacketEncoder;
+import raknetserver.pipeline.internal.InternalPacketWriteHandler;
+import raknetserver.pipeline.raknet.RakNetClientConnectionEstablishHandler;
+import raknetserver.pipeline.raknet.RakNetDatagramDecoder;
+import raknetserver.pipeline.raknet.RakNetKeepAliveHandler;
+import raknetserver.pipeline.raknet.RakNetPacketDecoder;
+import raknetserver.pipeline.raknet.RakNetPacketEncoder;
+import raknetserver.pipeline.raknet.RakNetPacketReliabilityHandler;
+import raknetserver.session.RakNetSession;
+import raknetserver.utils.Constants;
+
+//client uses the same pipeline as server, only connection establishment and internal packets read handlers are client specific
+//every connection uses its own connected datagram socket, because server identifies connections by remote address, but all of them share few event loops
+public class RakNetClient {
+
+	protected final UserChannelInitializer userinit;
+	protected final int userPacketId;
+
+	//stateless handlers are shared by all connections
+	protected final RakNetDatagramDecoder datagramDecoder = new RakNetDatagramDecoder();
+	protected final RakNetPacketEncoder rakNetEncoder = new RakNetPacketEncoder();
+	protected final RakNetPacketDecoder rakNetDecoder = new RakNetPacketDecoder();
+	protected final InternalPacketEncoder internalEncoder;
+	protected final InternalPacketDecoder internalDecoder;
+	protected final InternalPacketWriteHandler internalWriteHandler;
+
+	private Bootstrap bootstrap = null;
+	private EventLoopGroup group = null;
+	private ChannelGroup children = null;
+
+	public RakNetClient(UserChannelInitializer init, int userPacketId) {
+		this.userinit = init;
+		this.userPacketId = userPacketId;
+		this.internalEncoder = new InternalPacketEncoder(userPacketId);
+		this.internalDecoder = new InternalPacketDecoder(userPacketId);
+		this.internalWriteHandler = new InternalPacketWriteHandler(userPacketId);
+	}
+
+	public void start() {
+		this.children = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+		this.group = new NioEventLoopGroup(Constants.UDP_IO_THREADS);
+		this.bootstrap = new Bootstrap().group(group).channel(NioDatagramChannel.class);
+	}
+
+	//returned future is completed once connection is fully established, so user data can be written right away
+	public Future<Channel> connect(InetSocketAddress remote) {
+		if (bootstrap == null) {
+			throw new IllegalStateException("Client is not started");
+		}
+		Promise<Channel> connectPromise = group.next().newPromise();
+		ChannelFuture future = bootstrap.clone()
+		.handler(new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel channel) {
+				children.add(channel);
+				RakNetClient.this.initChannel(channel, connectPromise);
+			}
+		})
+		.connect(remote);
+		future.addListener(f -> {
+			if (!f.isSuccess()) {
+				connectPromise.tryFailure(f.cause());
+			}
+		});
+		connectPromise.addListener(f -> {
+			if (!f.isSuccess()) {
+				future.channel().close();
+			}
+		});
+		return connectPromise;
+	}
+
+	public void initChannel(Channel channel, Promise<Channel> connectPromise) {
+		channel.pipeline()
+		.addLast("rns-datagram", datagramDecoder)
+		.addLast("rns-timeout", new RakNetKeepAliveHandler(10, TimeUnit.SECONDS))
+		.addLast("rns-rn-encoder", rakNetEncoder)
+		.addLast("rns-rn-decoder", rakNetDecoder)
+		.addLast("rns-rn-connect", new RakNetClientConnectionEstablishHandler(connectPromise, Constants.CLIENT_MTU, ThreadLocalRandom.current().nextLong()))
+		.addLast("rns-rn-reliability", new RakNetPacketReliabilityHandler())
+		.addLast("rns-e-ru", Constants.STREAM_INBOUND_SPLITS ? new EncapsulatedPacketUnsplitter(userPacketId) : new EncapsulatedPacketUnsplitter())
+		.addLast("rns-e-ro", new EncapsulatedPacketInboundOrderer())
+		.addLast("rns-e-ws", new EncapsulatedPacketSplitter())
+		.addLast("rns-e-wo", new EncapsulatedPacketOutboundOrder())
+		.addLast("rns-e-wb", new EncapsulatedPacketOverloadHandler())
+		.addLast("rns-i-encoder", internalEncoder)
+		.addLast("rns-i-decoder", internalDecoder)
+		.addLast("rns-i-readh", new InternalPacketClientReadHandler(connectPromise))
+		.addLast("rns-i-writeh", internalWriteHandler);
+		userinit.init(channel);
+	}
+
+	public void stop() {
+		stop(Constants.SHUTDOWN_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	//disconnects established connections waiting (bounded by timeout) for their reliable data to be acknowledged, then releases all resources
+	public void stop(long timeout, TimeUnit unit) {
+		if (bootstrap == null) {
+			return;
+		}
+		ArrayList<Future<?>> disconnects = new ArrayList<>();
+		for (Channel channel : children) {
+			RakNetSession session = channel.attr(RakNetConstants.SESSION).get();
+			if (session != null) {
+				disconnects.add(session.disconnect(timeout, unit));
+			}
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Future<?> disconnect : disconnects) {
+			disconnect.awaitUninterruptibly(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		release();
+	}
+
+	//closes all connections immediately, without waiting for anything to be delivered
+	public void stopNow() {
+		if (bootstrap == null) {
+			return;
+		}
+		release();
+	}
+
+	protected void release() {
+		children.close().awaitUninterruptibly();
+		group.shutdownGracefully(0, Constants.SHUTDOWN_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS).awaitUninterruptibly();
+		bootstrap = null;
+		children = null;
+		group = null;
+	}
+
+}
@@ -1,27 +1,54 @@
 package raknetserver;
 
+import java.io.File;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.DefaultEventLoopGroup;
-import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.NonStickyEventExecutorGroup;
+import io.netty.util.concurrent.UnorderedThreadPoolEventExecutor;
+import raknetserver.capture.CaptureHandler;
+import raknetserver.capture.CaptureLog;
 import raknetserver.pipeline.encapsulated.EncapsulatedPacketInboundOrderer;
 import raknetserver.pipeline.encapsulated.EncapsulatedPacketOutboundOrder;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketOverloadHandler;
 import raknetserver.pipeline.encapsulated.EncapsulatedPacketSplitter;
 import raknetserver.pipeline.encapsulated.EncapsulatedPacketUnsplitter;
+import raknetserver.pipeline.fused.FusedInboundDecoder;
 import raknetserver.pipeline.internal.InternalPacketDecoder;
 import raknetserver.pipeline.internal.InternalPacketEncoder;
 import raknetserver.pipeline.internal.InternalPacketReadHandler;
 import raknetserver.pipeline.internal.InternalPacketWriteHandler;
+import raknetserver.pipeline.raknet.RakNetKeepAliveHandler;
 import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler;
 import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler.PingHandler;
 import raknetserver.pipeline.raknet.RakNetPacketDecoder;
 import raknetserver.pipeline.raknet.RakNetPacketEncoder;
 import raknetserver.pipeline.raknet.RakNetPacketReliabilityHandler;
+import raknetserver.pipeline.raknet.RakNetRateLimitHandler;
+import raknetserver.pipeline.raknet.RakNetSessionMigrationHandler;
+import raknetserver.pipeline.user.UserExecutorBackpressure;
+import raknetserver.session.LoadMonitor;
+import raknetserver.session.RakNetSessionTable;
 import raknetserver.utils.Constants;
+import raknetserver.utils.UserThreads;
 import udpserversocketchannel.channel.UdpServerChannel;
 
 public class RakNetServer {
@@ -30,48 +57,215 @@ public class RakNetServer {
 	protected final PingHandler pinghandler;
 	protected final UserChannelInitializer userinit;
 	protected final int userPacketId;
+	protected final RakNetSessionTable sessions = new RakNetSessionTable();
+	protected final LoadMonitor loadMonitor = new LoadMonitor(Constants.LOAD_PROBE_INTERVAL, Constants.OVERLOAD_LAG_THRESHOLD, Constants.OVERLOAD_PING_RATE, Constants.OVERLOAD_PING_INFO_INTERVAL);
+
+	//stateless handlers are shared by all connections
+	protected final RakNetPacketEncoder rakNetEncoder = new RakNetPacketEncoder();
+	protected final RakNetPacketDecoder rakNetDecoder = new RakNetPacketDecoder();
+	protected final InternalPacketEncoder internalEncoder;
+	protected final InternalPacketDecoder internalDecoder;
+	protected final InternalPacketWriteHandler internalWriteHandler;
+	protected final RakNetRateLimitHandler.Action rateLimitAction = RakNetRateLimitHandler.Action.parse(Constants.RATE_LIMIT_ACTION);
 
 	private ChannelFuture channel = null;
+	private EventLoopGroup group = null;
+	private ChannelGroup children = null;
+	private EventExecutorGroup userExecutor = null;
+	private CaptureLog capture = null;
 
 	public RakNetServer(InetSocketAddress local, PingHandler pinghandler, UserChannelInitializer init, int userPacketId) {
 		this.local = local;
 		this.pinghandler = pinghandler;
 		this.userinit = init;
 		this.userPacketId = userPacketId;
+		this.internalEncoder = new InternalPacketEncoder(userPacketId);
+		this.internalDecoder = new InternalPacketDecoder(userPacketId);
+		this.internalWriteHandler = new InternalPacketWriteHandler(userPacketId);
 	}
 
 	public void start() {
+		ChannelGroup children = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+		this.children = children;
+		this.group = new DefaultEventLoopGroup();
+		if (Constants.USER_EXECUTOR) {
+			this.userExecutor = createUserExecutor();
+		}
+		if (!Constants.CAPTURE_DIRECTORY.isEmpty()) {
+			this.capture = new CaptureLog(new File(Constants.CAPTURE_DIRECTORY), Constants.CAPTURE_FILE_SIZE, Constants.CAPTURE_MAX_FILES);
+		}
+		sessions.open();
+		loadMonitor.start(group);
 		ServerBootstrap bootstrap = new ServerBootstrap()
-		.group(new DefaultEventLoopGroup())
+		.group(group)
 		.channelFactory(() -> new UdpServerChannel(Constants.UDP_IO_THREADS))
 		.childHandler(new ChannelInitializer<Channel>() {
 			@Override
 			protected void initChannel(Channel channel) {
-				channel.pipeline()
-				.addLast("rns-timeout", new ReadTimeoutHandler(10))
-				.addLast("rns-rn-encoder", new RakNetPacketEncoder())
-				.addLast("rns-rn-decoder", new RakNetPacketDecoder())
-				.addLast("rns-rn-connect", new RakNetPacketConnectionEstablishHandler(pinghandler))
-				.addLast("rns-rn-reliability", new RakNetPacketReliabilityHandler())
-				.addLast("rns-e-ru", new EncapsulatedPacketUnsplitter())
-				.addLast("rns-e-ro", new EncapsulatedPacketInboundOrderer())
-				.addLast("rns-e-ws", new EncapsulatedPacketSplitter())
-				.addLast("rns-e-wo", new EncapsulatedPacketOutboundOrder())
-				.addLast("rns-i-encoder", new InternalPacketEncoder(userPacketId))
-				.addLast("rns-i-decoder", new InternalPacketDecoder(userPacketId))
-				.addLast("rns-i-readh", new InternalPacketReadHandler())
-				.addLast("rns-i-writeh", new InternalPacketWriteHandler());
-				userinit.init(channel);
+				children.add(channel);
+				RakNetServer.this.initChannel(channel);
 			}
 		});
 		channel = bootstrap.bind(local).syncUninterruptibly();
 	}
 
+	//tasks of each connection are executed in order, but not necessarily by the same thread, idle threads are stopped
+	protected static EventExecutorGroup createUserExecutor() {
+		int threads = Constants.USER_EXECUTOR_THREADS > 0 ? Constants.USER_EXECUTOR_THREADS : UserThreads.getDefaultPoolSize();
+		UnorderedThreadPoolEventExecutor pool = new UnorderedThreadPoolEventExecutor(threads, UserThreads.newThreadFactory("raknet-user"));
+		pool.setKeepAliveTime(60, TimeUnit.SECONDS);
+		pool.allowCoreThreadTimeOut(true);
+		return new NonStickyEventExecutorGroup(pool);
+	}
+
+	//fused pipeline decodes connected datagrams using single handler instead of separate raknet, encapsulated and internal decoders
+	//fused pipeline always assembles split packets, so it is not used when inbound split streaming is enabled
+	//rate limit handlers are only installed when limits are configured
+	//user executor handlers are only installed when user executor is enabled, user handlers should be added using getUserExecutor() then
+	//capture handler is only installed when capture directory is configured
+	//migration handler is only installed when session migration is allowed
+	public void initChannel(Channel channel) {
+		initChannel(channel, Constants.FUSED_PIPELINE && !Constants.STREAM_INBOUND_SPLITS);
+	}
+
+	//fused pipeline can be selected explicitly, regardless of configuration
+	//only handshake handlers are added here, handlers that hold connection state are added once connection is established
+	//so idle channels (handshake not finished yet, transports of migrated sessions) don't hold reliability, split and ordering state
+	public void initChannel(Channel channel, boolean fused) {
+		ChannelPipeline pipeline = channel.pipeline();
+		if (capture != null) {
+			pipeline.addLast("rns-capture", new CaptureHandler(capture));
+		}
+		pipeline.addLast("rns-timeout", new RakNetKeepAliveHandler(10, TimeUnit.SECONDS));
+		if (Constants.ALLOW_SESSION_MIGRATION) {
+			pipeline.addLast("rns-migrate", new RakNetSessionMigrationHandler(sessions));
+		}
+		if ((Constants.RATE_LIMIT_DATAGRAMS > 0) || (Constants.RATE_LIMIT_BYTES > 0)) {
+			pipeline.addLast("rns-rate", new RakNetRateLimitHandler.Datagrams(Constants.RATE_LIMIT_DATAGRAMS, Constants.RATE_LIMIT_BYTES, rateLimitAction));
+		}
+		pipeline
+		.addLast("rns-rn-encoder", rakNetEncoder)
+		.addLast("rns-rn-decoder", rakNetDecoder)
+		.addLast("rns-rn-connect", new RakNetPacketConnectionEstablishHandler(pinghandler, sessions, loadMonitor, connected -> initConnection(connected, fused)));
+		userinit.init(channel);
+	}
+
+	//handlers are inserted after the connection establish handler, so they stay in front of user handlers
+	protected void initConnection(Channel channel, boolean fused) {
+		ChannelPipeline pipeline = channel.pipeline();
+		UserExecutorBackpressure backpressure = null;
+		if (userExecutor != null) {
+			backpressure = new UserExecutorBackpressure(Constants.USER_EXECUTOR_HIGH_WATER_MARK, Constants.USER_EXECUTOR_LOW_WATER_MARK);
+			pipeline.addBefore(pipeline.get("rns-rate") != null ? "rns-rate" : "rns-rn-encoder", "rns-u-gate", backpressure.getGate());
+		}
+		if (fused) {
+			pipeline.addBefore("rns-rn-decoder", "rns-f-decoder", new FusedInboundDecoder(userPacketId));
+		}
+		String last = addAfter(pipeline, "rns-rn-connect", "rns-rn-reliability", new RakNetPacketReliabilityHandler());
+		if (!fused) {
+			last = addAfter(pipeline, last, "rns-e-ru", Constants.STREAM_INBOUND_SPLITS ? new EncapsulatedPacketUnsplitter(userPacketId) : new EncapsulatedPacketUnsplitter());
+			last = addAfter(pipeline, last, "rns-e-ro", new EncapsulatedPacketInboundOrderer());
+		}
+		last = addAfter(pipeline, last, "rns-e-ws", new EncapsulatedPacketSplitter());
+		last = addAfter(pipeline, last, "rns-e-wo", new EncapsulatedPacketOutboundOrder());
+		last = addAfter(pipeline, last, "rns-e-wb", new EncapsulatedPacketOverloadHandler());
+		last = addAfter(pipeline, last, "rns-i-encoder", internalEncoder);
+		if (!fused) {
+			last = addAfter(pipeline, last, "rns-i-decoder", internalDecoder);
+		}
+		last = addAfter(pipeline, last, "rns-i-readh", new InternalPacketReadHandler());
+		last = addAfter(pipeline, last, "rns-i-writeh", internalWriteHandler);
+		if (Constants.RATE_LIMIT_MESSAGES > 0) {
+			last = addAfter(pipeline, last, "rns-rate-msg", new RakNetRateLimitHandler.Messages(Constants.RATE_LIMIT_MESSAGES, rateLimitAction));
+		}
+		if (backpressure != null) {
+			last = addAfter(pipeline, last, "rns-u-enqueue", backpressure.getEnqueueHandler());
+			pipeline.addAfter(userExecutor, last, "rns-u-dequeue", backpressure.getDequeueHandler());
+		}
+	}
+
+	protected static String addAfter(ChannelPipeline pipeline, String baseName, String name, ChannelHandler handler) {
+		pipeline.addAfter(baseName, name, handler);
+		return name;
+	}
+
 	public void stop() {
-		if (channel != null) {
-			channel.channel().close();
-			channel = null;
+		stop(Constants.SHUTDOWN_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	//stops accepting new connections, disconnects established ones waiting (bounded by timeout) for their reliable data to be acknowledged, then releases all resources
+	public void stop(long timeout, TimeUnit unit) {
+		if (channel == null) {
+			return;
+		}
+		sessions.close();
+		ArrayList<Future<?>> disconnects = new ArrayList<>();
+		sessions.forEach(session -> disconnects.add(session.disconnect(timeout, unit)));
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Future<?> disconnect : disconnects) {
+			disconnect.awaitUninterruptibly(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		release();
+	}
+
+	//closes all connections immediately, without waiting for anything to be delivered
+	public void stopNow() {
+		if (channel == null) {
+			return;
+		}
+		sessions.close();
+		release();
+	}
+
+	protected void release() {
+		loadMonitor.stop();
+		channel.channel().close().awaitUninterruptibly();
+		children.close().awaitUninterruptibly();
+		group.shutdownGracefully(0, Constants.SHUTDOWN_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS).awaitUninterruptibly();
+		if (userExecutor != null) {
+			userExecutor.shutdownGracefully(0, Constants.SHUTDOWN_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS).awaitUninterruptibly();
+			userExecutor = null;
+		}
+		if (capture != null) {
+			capture.close();
+			capture = null;
 		}
+		channel = null;
+		children = null;
+		group = null;
+	}
+
+	//encodes user data only once and shares it between all channels, only per connection indexes are assigned for each channel
+	//data buffer is released after it is queued to all channels
+	public void broadcast(ByteBuf data, Collection<Channel> channels) {
+		ByteBuf encoded = ByteBufAllocator.DEFAULT.ioBuffer(data.readableBytes() + 1);
+		try {
+			encoded.writeByte(userPacketId);
+			encoded.writeBytes(data);
+			for (Channel channel : channels) {
+				ChannelHandlerContext ctx = channel.pipeline().context(InternalPacketEncoder.class);
+				if (ctx != null) {
+					ctx.writeAndFlush(encoded.retainedDuplicate());
+				}
+			}
+		} finally {
+			encoded.release();
+			data.release();
+		}
+	}
+
+	public RakNetSessionTable getSessions() {
+		return sessions;
+	}
+
+	public LoadMonitor getLoadMonitor() {
+		return loadMonitor;
+	}
+
+	//serial per connection executor for blocking user handlers (pipeline.addLast(server.getUserExecutor(), handler)) and ping handler tasks
+	//null if user executor is not enabled, in which case handlers added with it run on the event loop as usual
+	public EventExecutorGroup getUserExecutor() {
+		return userExecutor;
 	}
 
 	public interface UserChannelInitializer {
@@ -0,0 +1,59 @@
+package raknetserver.capture;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+//records raw datagrams of the connection to the capture log, should be the first handler of the pipeline, so it sees datagrams exactly as they are received and sent
+public class CaptureHandler extends ChannelDuplexHandler {
+
+	protected final CaptureLog log;
+	protected final long connectionId;
+	protected boolean opened;
+
+	public CaptureHandler(CaptureLog log) {
+		this.log = log;
+		this.connectionId = log.nextConnectionId();
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof ByteBuf) {
+			record(ctx, CaptureLog.TYPE_INBOUND, (ByteBuf) msg);
+		}
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof ByteBuf) {
+			record(ctx, CaptureLog.TYPE_OUTBOUND, (ByteBuf) msg);
+		}
+		ctx.write(msg, promise);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		if (opened) {
+			log.write(CaptureLog.TYPE_CLOSE, connectionId, System.nanoTime(), Unpooled.EMPTY_BUFFER);
+		}
+		super.channelInactive(ctx);
+	}
+
+	//connection is opened in the log on the first datagram, remote address is needed to replay connection establishment
+	protected void record(ChannelHandlerContext ctx, byte type, ByteBuf buf) {
+		long timestamp = System.nanoTime();
+		if (!opened) {
+			opened = true;
+			SocketAddress remote = ctx.channel().remoteAddress();
+			log.writeOpen(connectionId, timestamp, remote instanceof InetSocketAddress ? (InetSocketAddress) remote : new InetSocketAddress(0));
+		}
+		log.write(type, connectionId, timestamp, buf);
+	}
+
+}
@@ -0,0 +1,225 @@
+package raknetserver.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
+import raknetserver.packet.RakNetDataSerializer;
+import raknetserver.utils.Constants;
+
+//rolling binary log of raw datagrams, each file is memory mapped with fixed size, so appending a record is a copy to the mapped memory
+//when the record doesn't fit into the current file, next file is created and the oldest one is deleted if there are too many of them
+//file: magic, version, records; record: type, connection id, timestamp (nanos), data length, data
+//rest of the file is zero filled, so record with type 0 marks the end of the file
+public class CaptureLog implements AutoCloseable {
+
+	public static final int MAGIC = 0x524E4350; //RNCP
+	public static final int VERSION = 1;
+	public static final int FILE_HEADER_SIZE = 4 + 4;
+	public static final int RECORD_HEADER_SIZE = 1 + 8 + 8 + 4;
+
+	public static final byte TYPE_END = 0;
+	public static final byte TYPE_INBOUND = 1;
+	public static final byte TYPE_OUTBOUND = 2;
+	//data is the remote address of the connection
+	public static final byte TYPE_OPEN = 3;
+	public static final byte TYPE_CLOSE = 4;
+
+	protected static final long WRITER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	public static File getFile(File directory, long index) {
+		return new File(directory, String.format("capture-%08d.bin", index));
+	}
+
+	protected final File directory;
+	protected final int fileSize;
+	protected final int maxFiles;
+	protected final AtomicLong nextConnectionId = new AtomicLong();
+	//records are copied by event loops and appended to the files by a single writer thread, so i/o threads never wait for each other or for the disk
+	protected final Queue<Record> queue;
+	protected final Thread writer;
+	protected final AtomicLong droppedCount = new AtomicLong();
+
+	//writer thread only
+	protected final ArrayDeque<File> files = new ArrayDeque<>();
+	protected long fileIndex;
+	protected MappedByteBuffer buffer;
+
+	protected volatile long recordCount;
+	protected volatile IOException failure;
+	protected volatile boolean closed;
+
+	public CaptureLog(File directory, int fileSize, int maxFiles) {
+		this(directory, fileSize, maxFiles, Constants.CAPTURE_QUEUE_SIZE);
+	}
+
+	public CaptureLog(File directory, int fileSize, int maxFiles, int queueSize) {
+		if (fileSize < (FILE_HEADER_SIZE + RECORD_HEADER_SIZE)) {
+			throw new IllegalArgumentException("Capture file size is too small: " + fileSize);
+		}
+		this.directory = directory;
+		this.fileSize = fileSize;
+		this.maxFiles = maxFiles;
+		this.queue = PlatformDependent.newMpscQueue(queueSize);
+		directory.mkdirs();
+		//continue numbering after files left by previous captures
+		File[] existing = directory.listFiles((dir, name) -> name.startsWith("capture-") && name.endsWith(".bin"));
+		if (existing != null) {
+			for (File file : existing) {
+				String name = file.getName();
+				fileIndex = Math.max(fileIndex, Long.parseLong(name.substring(8, name.length() - 4)) + 1);
+			}
+		}
+		writer = new Thread(this::runWriter, "raknetserver-capture");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public long nextConnectionId() {
+		return nextConnectionId.getAndIncrement();
+	}
+
+	//records written to the files, records that are still queued are not counted
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	//records that were discarded because writer thread couldn't keep up
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	//error that stopped the capture, null if capture is working
+	public IOException getFailure() {
+		return failure;
+	}
+
+	public void writeOpen(long connectionId, long timestamp, InetSocketAddress address) {
+		ByteBuf data = Unpooled.buffer(RakNetDataSerializer.IPV6_ADDRESS_LENGTH);
+		RakNetDataSerializer.writeAddress(data, address);
+		write(TYPE_OPEN, connectionId, timestamp, data);
+	}
+
+	//doesn't take ownership of the data, records that are bigger than a file are skipped
+	//if the queue is full record is dropped instead of blocking the event loop
+	public void write(byte type, long connectionId, long timestamp, ByteBuf data) {
+		if (closed || (failure != null)) {
+			return;
+		}
+		int length = data.readableBytes();
+		if ((RECORD_HEADER_SIZE + length) > (fileSize - FILE_HEADER_SIZE)) {
+			return;
+		}
+		byte[] copy = new byte[length];
+		data.getBytes(data.readerIndex(), copy);
+		if (!queue.offer(new Record(type, connectionId, timestamp, copy))) {
+			droppedCount.incrementAndGet();
+		}
+	}
+
+	protected void runWriter() {
+		while (true) {
+			Record record = queue.poll();
+			if (record == null) {
+				if (closed) {
+					break;
+				}
+				LockSupport.parkNanos(WRITER_IDLE_NANOS);
+				continue;
+			}
+			if (failure == null) {
+				try {
+					append(record);
+				} catch (IOException e) {
+					//capture is stopped, connections are not affected by it
+					failure = e;
+					unmap();
+				}
+			}
+		}
+		unmap();
+	}
+
+	protected void append(Record record) throws IOException {
+		int size = RECORD_HEADER_SIZE + record.data.length;
+		if ((buffer == null) || (buffer.remaining() < size)) {
+			roll();
+		}
+		buffer.put(record.type);
+		buffer.putLong(record.connectionId);
+		buffer.putLong(record.timestamp);
+		buffer.putInt(record.data.length);
+		buffer.put(record.data);
+		recordCount++;
+	}
+
+	protected void roll() throws IOException {
+		unmap();
+		File file = getFile(directory, fileIndex++);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+			raf.setLength(fileSize);
+			buffer = channel.map(MapMode.READ_WRITE, 0, fileSize);
+		}
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		files.add(file);
+		while (files.size() > maxFiles) {
+			files.poll().delete();
+		}
+	}
+
+	//unmapping doesn't lose data, dirty pages are written by the os, so the file isn't synced
+	protected void unmap() {
+		if (buffer != null) {
+			PlatformDependent.freeDirectBuffer(buffer);
+			buffer = null;
+		}
+	}
+
+	//waits for the queued records to be written
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(writer);
+		boolean interrupted = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	protected static final class Record {
+		protected final byte type;
+		protected final long connectionId;
+		protected final long timestamp;
+		protected final byte[] data;
+
+		protected Record(byte type, long connectionId, long timestamp, byte[] data) {
+			this.type = type;
+			this.connectionId = connectionId;
+			this.timestamp = timestamp;
+			this.data = data;
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package raknetserver.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.internal.PlatformDependent;
+import raknetserver.packet.RakNetDataSerializer;
+
+//reads records of all capture files in the directory in the order they were written
+//record data is a view of the mapped file, it is valid only until the next record is read
+public class CaptureReader implements AutoCloseable {
+
+	protected final File[] files;
+	protected int nextFile;
+	protected MappedByteBuffer buffer;
+
+	protected byte type;
+	protected long connectionId;
+	protected long timestamp;
+	protected ByteBuf data;
+
+	public CaptureReader(File directory) {
+		File[] files = directory.listFiles((dir, name) -> name.startsWith("capture-") && name.endsWith(".bin"));
+		if (files == null) {
+			throw new UncheckedIOException(new IOException("Can't list capture directory " + directory));
+		}
+		//file names have fixed width index, so name order is write order
+		Arrays.sort(files);
+		this.files = files;
+	}
+
+	public boolean next() {
+		while (true) {
+			if ((buffer != null) && (buffer.remaining() >= CaptureLog.RECORD_HEADER_SIZE)) {
+				type = buffer.get();
+				if (type != CaptureLog.TYPE_END) {
+					connectionId = buffer.getLong();
+					timestamp = buffer.getLong();
+					int length = buffer.getInt();
+					ByteBuffer slice = buffer.slice();
+					slice.limit(length);
+					buffer.position(buffer.position() + length);
+					data = Unpooled.wrappedBuffer(slice);
+					return true;
+				}
+			}
+			if (nextFile >= files.length) {
+				unmap();
+				return false;
+			}
+			open(files[nextFile++]);
+		}
+	}
+
+	protected void open(File file) {
+		unmap();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if ((buffer.remaining() < CaptureLog.FILE_HEADER_SIZE) || (buffer.getInt() != CaptureLog.MAGIC) || (buffer.getInt() != CaptureLog.VERSION)) {
+			throw new DecoderException("Not a capture file or unsupported version: " + file);
+		}
+	}
+
+	protected void unmap() {
+		data = null;
+		if (buffer != null) {
+			PlatformDependent.freeDirectBuffer(buffer);
+			buffer = null;
+		}
+	}
+
+	public byte getType() {
+		return type;
+	}
+
+	public long getConnectionId() {
+		return connectionId;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public ByteBuf getData() {
+		return data;
+	}
+
+	public InetSocketAddress getAddress() {
+		return RakNetDataSerializer.readAddress(data.duplicate());
+	}
+
+	@Override
+	public void close() {
+		unmap();
+	}
+
+}
@@ -0,0 +1,215 @@
+package raknetserver.capture;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import raknetserver.RakNetServer;
+import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler.PingHandler;
+import raknetserver.utils.Clock;
+import raknetserver.utils.VirtualClock;
+
+//feeds captured inbound datagrams through server pipelines, each captured connection gets its own embedded channel with the captured remote address
+//captured outbound datagrams are not used, pipelines produce their own, which are counted and released
+//speed is relative to the original timing, 0 replays as fast as possible
+//when replaying as fast as possible pipelines use virtual clock that follows captured timestamps, so scheduled tasks (nack, keep alive) run as they did originally
+public class CaptureReplay {
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: CaptureReplay <capture directory> [speed, 0 = as fast as possible] [user packet id]");
+			return;
+		}
+		File directory = new File(args[0]);
+		double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+		int userPacketId = args.length > 2 ? Integer.decode(args[2]) : 0xFE;
+		long[] userMessages = new long[1];
+		RakNetServer server = new RakNetServer(new InetSocketAddress(0), new PingHandler() {
+			@Override
+			public void executeHandler(Runnable runnable) {
+				runnable.run();
+			}
+			@Override
+			public String getServerInfo(Channel channel) {
+				return "replay";
+			}
+		}, channel -> channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+			@Override
+			public void channelRead(ChannelHandlerContext ctx, Object msg) {
+				userMessages[0]++;
+				ReferenceCountUtil.release(msg);
+			}
+		}), userPacketId);
+		CaptureReplay replay = new CaptureReplay(server, speed);
+		try (CaptureReader reader = new CaptureReader(directory)) {
+			replay.replay(reader);
+		}
+		System.out.println(replay.getSummary() + ", user messages: " + userMessages[0]);
+	}
+
+	protected final RakNetServer server;
+	protected final double speed;
+	protected final Long2ObjectOpenHashMap<ReplayChannel> channels = new Long2ObjectOpenHashMap<>();
+	protected VirtualClock clock;
+
+	protected long connections;
+	protected long inboundDatagrams;
+	protected long inboundBytes;
+	protected long outboundDatagrams;
+	protected long outboundBytes;
+	protected long errors;
+	protected long elapsed;
+
+	public CaptureReplay(RakNetServer server, double speed) {
+		this.server = server;
+		this.speed = speed;
+	}
+
+	public void replay(CaptureReader reader) {
+		long start = System.nanoTime();
+		long first = Long.MIN_VALUE;
+		while (reader.next()) {
+			if (first == Long.MIN_VALUE) {
+				first = reader.getTimestamp();
+				clock = speed > 0 ? null : new VirtualClock(System.currentTimeMillis());
+			}
+			if (clock != null) {
+				try {
+					clock.advanceTo(reader.getTimestamp() - first);
+				} catch (RuntimeException e) {
+					errors++;
+				}
+			} else {
+				long deadline = start + (long) ((reader.getTimestamp() - first) / speed);
+				long wait;
+				while ((wait = deadline - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+			switch (reader.getType()) {
+				case CaptureLog.TYPE_OPEN: {
+					open(reader.getConnectionId(), reader.getAddress());
+					break;
+				}
+				case CaptureLog.TYPE_INBOUND: {
+					ReplayChannel channel = channels.get(reader.getConnectionId());
+					if (channel != null) {
+						inboundDatagrams++;
+						inboundBytes += reader.getData().readableBytes();
+						try {
+							channel.writeInbound(Unpooled.copiedBuffer(reader.getData()));
+						} catch (RuntimeException e) {
+							errors++;
+						}
+						drain(channel);
+					}
+					break;
+				}
+				case CaptureLog.TYPE_CLOSE: {
+					ReplayChannel channel = channels.remove(reader.getConnectionId());
+					if (channel != null) {
+						close(channel);
+					}
+					break;
+				}
+				default: {
+					break;
+				}
+			}
+		}
+		for (ReplayChannel channel : channels.values()) {
+			close(channel);
+		}
+		channels.clear();
+		elapsed += System.nanoTime() - start;
+	}
+
+	protected void open(long connectionId, InetSocketAddress address) {
+		ReplayChannel prev = channels.remove(connectionId);
+		if (prev != null) {
+			close(prev);
+		}
+		ReplayChannel channel = new ReplayChannel(address);
+		if (clock != null) {
+			channel.attr(Clock.KEY).set(clock);
+		}
+		server.initChannel(channel);
+		channels.put(connectionId, channel);
+		connections++;
+	}
+
+	protected void drain(ReplayChannel channel) {
+		try {
+			channel.runPendingTasks();
+		} catch (RuntimeException e) {
+			errors++;
+		}
+		Object msg;
+		while ((msg = channel.readOutbound()) != null) {
+			if (msg instanceof ByteBuf) {
+				outboundDatagrams++;
+				outboundBytes += ((ByteBuf) msg).readableBytes();
+			}
+			ReferenceCountUtil.release(msg);
+		}
+	}
+
+	protected void close(ReplayChannel channel) {
+		drain(channel);
+		try {
+			channel.finishAndReleaseAll();
+		} catch (RuntimeException e) {
+			errors++;
+		}
+	}
+
+	public long getElapsed(TimeUnit unit) {
+		return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+	}
+
+	public long getInboundDatagrams() {
+		return inboundDatagrams;
+	}
+
+	public long getOutboundDatagrams() {
+		return outboundDatagrams;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	public String getSummary() {
+		double seconds = Math.max(1, elapsed) / (double) TimeUnit.SECONDS.toNanos(1);
+		return String.format(
+			"connections: %d, inbound: %d datagrams %d bytes, outbound: %d datagrams %d bytes, errors: %d, elapsed: %.3f s, %.0f datagrams/s",
+			connections, inboundDatagrams, inboundBytes, outboundDatagrams, outboundBytes, errors, seconds, inboundDatagrams / seconds
+		);
+	}
+
+	protected static class ReplayChannel extends EmbeddedChannel {
+
+		protected final InetSocketAddress remote;
+
+		protected ReplayChannel(InetSocketAddress remote) {
+			this.remote = remote;
+		}
+
+		@Override
+		protected SocketAddress remoteAddress0() {
+			return remote;
+		}
+
+	}
+
+}
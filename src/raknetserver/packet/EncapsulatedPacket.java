@@ -1,9 +1,15 @@
 package raknetserver.packet;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
 import raknetserver.utils.Utils;
 
-public class EncapsulatedPacket {
+//reference counting is delegated to the packet data
+public class EncapsulatedPacket implements ReferenceCounted {
+
+	public static final int UNRELIABLE = 0;
+	public static final int RELIABLE_ORDERED = 3;
 
 	protected int reliability;
 	protected boolean hasSplit;
@@ -17,20 +23,23 @@ public class EncapsulatedPacket {
 	protected int splitID;
 	protected int splitIndex;
 
-	protected byte[] data;
+	protected ByteBuf data;
+
+	//not sent, used only to schedule outbound packets
+	protected RakNetPriority priority = RakNetPriority.MEDIUM;
 
 	public EncapsulatedPacket() {
 	}
 
-	public EncapsulatedPacket(byte[] data, int messageIndex, int orderChannel, int orderIndex) {
-		this.data = data.clone();
-		this.reliability = 3;
+	public EncapsulatedPacket(ByteBuf data, int messageIndex, int orderChannel, int orderIndex) {
+		this.data = data;
+		this.reliability = RELIABLE_ORDERED;
 		this.messageIndex = messageIndex;
 		this.orderChannel = orderChannel;
 		this.orderIndex = orderIndex;
 	}
 
-	public EncapsulatedPacket(byte[] data, int messageIndex, int orderChannel, int orderIndex, int splitID, int splitCount, int splitIndex) {
+	public EncapsulatedPacket(ByteBuf data, int messageIndex, int orderChannel, int orderIndex, int splitID, int splitCount, int splitIndex) {
 		this(data, messageIndex, orderChannel, orderIndex);
 		this.hasSplit = true;
 		this.splitID = splitID;
@@ -38,7 +47,33 @@ public class EncapsulatedPacket {
 		this.splitIndex = splitIndex;
 	}
 
+	//copy of this packet that has different data
+	public EncapsulatedPacket replaceData(ByteBuf data) {
+		EncapsulatedPacket packet = new EncapsulatedPacket();
+		packet.reliability = reliability;
+		packet.hasSplit = hasSplit;
+		packet.messageIndex = messageIndex;
+		packet.orderChannel = orderChannel;
+		packet.orderIndex = orderIndex;
+		packet.splitCount = splitCount;
+		packet.splitID = splitID;
+		packet.splitIndex = splitIndex;
+		packet.priority = priority;
+		packet.data = data;
+		return packet;
+	}
+
 	public void decode(ByteBuf buf) {
+		data = Unpooled.wrappedBuffer(Utils.readBytes(buf, decodeHeader(buf)));
+	}
+
+	//packet data is a retained slice of the buffer instead of a copy
+	public void decodeRetained(ByteBuf buf) {
+		data = buf.readRetainedSlice(decodeHeader(buf));
+	}
+
+	//returns data length
+	protected int decodeHeader(ByteBuf buf) {
 		int flags = buf.readUnsignedByte();
 		reliability = (flags & 0b11100000) >> 5;
 		hasSplit = (flags & 0b00010000) > 0;
@@ -61,7 +96,7 @@ public class EncapsulatedPacket {
 			splitIndex = buf.readInt();
 		}
 
-		data = Utils.readBytes(buf, length);
+		return length;
 	}
 
 	public void encode(ByteBuf buf) {
@@ -72,7 +107,7 @@ public class EncapsulatedPacket {
 		}
 		buf.writeByte(flag);
 
-		buf.writeShort((data.length << 3) & 0xFFFF);
+		buf.writeShort((data.readableBytes() << 3) & 0xFFFF);
 
 		if (reliability > 0) {
 			if ((reliability >= 2) && (reliability != 5)) {
@@ -90,13 +125,34 @@ public class EncapsulatedPacket {
 			buf.writeInt(splitIndex);
 		}
 
-		buf.writeBytes(data);
+		buf.writeBytes(data, data.readerIndex(), data.readableBytes());
+	}
+
+	public int getEncodedSize() {
+		int size = 1 + 2; //flags + length
+		if (reliability > 0) {
+			if ((reliability >= 2) && (reliability != 5)) {
+				size += 3; //message index
+			}
+			if ((reliability <= 4) && (reliability != 2)) {
+				size += 3 + 1; //order index + order channel
+			}
+		}
+		if (hasSplit) {
+			size += 4 + 2 + 4; //split count + split id + split index
+		}
+		return size + data.readableBytes();
 	}
 
 	public int getReliability() {
 		return reliability;
 	}
 
+	//only unreliable and reliable ordered packets are sent, unreliable packets are not resent and not ordered
+	public void setReliability(int reliability) {
+		this.reliability = reliability;
+	}
+
 	public int getMessageIndex() {
 		return messageIndex;
 	}
@@ -125,12 +181,60 @@ public class EncapsulatedPacket {
 		return splitCount;
 	}
 
+	public RakNetPriority getPriority() {
+		return priority;
+	}
+
+	public void setPriority(RakNetPriority priority) {
+		this.priority = priority;
+	}
+
 	public int getDataSize() {
-		return data.length;
+		return data.readableBytes();
+	}
+
+	//data is owned by the packet, so it should be retained if it needs to outlive the packet
+	public ByteBuf getData() {
+		return data;
+	}
+
+	@Override
+	public int refCnt() {
+		return data.refCnt();
+	}
+
+	@Override
+	public EncapsulatedPacket retain() {
+		data.retain();
+		return this;
+	}
+
+	@Override
+	public EncapsulatedPacket retain(int increment) {
+		data.retain(increment);
+		return this;
+	}
+
+	@Override
+	public EncapsulatedPacket touch() {
+		data.touch();
+		return this;
+	}
+
+	@Override
+	public EncapsulatedPacket touch(Object hint) {
+		data.touch(hint);
+		return this;
+	}
+
+	@Override
+	public boolean release() {
+		return data.release();
 	}
 
-	public byte[] getData() {
-		return data.clone();
+	@Override
+	public boolean release(int decrement) {
+		return data.release(decrement);
 	}
 
 }
@@ -0,0 +1,113 @@
+package raknetserver.packet;
+
+import java.io.IOException;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.ReferenceCounted;
+import raknetserver.utils.Constants;
+import raknetserver.utils.UINT;
+
+//creates split packets of a stream message one by one, reference counting is delegated to the message
+public class EncapsulatedPacketStream implements ReferenceCounted {
+
+	protected final RakNetStreamMessage message;
+	protected final int orderIndex;
+
+	protected int splitSize;
+	protected int splitCount;
+	protected int splitID;
+	protected int firstMessageIndex;
+
+	protected int splitIndex;
+
+	public EncapsulatedPacketStream(RakNetStreamMessage message, int orderIndex) {
+		this.message = message;
+		this.orderIndex = orderIndex;
+	}
+
+	public int getSplitCount(int splitSize) {
+		long splitCount = Math.max((message.getLength() + splitSize - 1) / splitSize, 1);
+		//streams have their own limit, receiver that assembles split packets in memory accepts only max packet splits, receiver that streams them accepts any count
+		if (splitCount > Constants.MAX_STREAM_SPLITS) {
+			throw new EncoderException("Stream message is too big: " + message.getLength() + ", max split packets: " + Constants.MAX_STREAM_SPLITS);
+		}
+		return (int) splitCount;
+	}
+
+	public void setSplit(int splitSize, int splitCount, int splitID, int firstMessageIndex) {
+		this.splitSize = splitSize;
+		this.splitCount = splitCount;
+		this.splitID = splitID;
+		this.firstMessageIndex = firstMessageIndex;
+	}
+
+	public boolean hasNext() {
+		return splitIndex < splitCount;
+	}
+
+	public EncapsulatedPacket next(ByteBufAllocator alloc) {
+		int length = (int) Math.min(splitSize, message.getLength() - ((long) splitIndex * splitSize));
+		EncapsulatedPacket packet;
+		try {
+			packet = new EncapsulatedPacket(
+				message.read(alloc, length),
+				UINT.B3.plus(firstMessageIndex, splitIndex), message.getOrderChannel(), orderIndex,
+				splitID, splitCount, splitIndex
+			);
+		} catch (IOException e) {
+			throw new EncoderException("Unable to read stream message", e);
+		}
+		packet.setPriority(message.getPriority());
+		splitIndex++;
+		return packet;
+	}
+
+	public RakNetPriority getPriority() {
+		return message.getPriority();
+	}
+
+	public int getOrderChannel() {
+		return message.getOrderChannel();
+	}
+
+	@Override
+	public int refCnt() {
+		return message.refCnt();
+	}
+
+	@Override
+	public EncapsulatedPacketStream retain() {
+		message.retain();
+		return this;
+	}
+
+	@Override
+	public EncapsulatedPacketStream retain(int increment) {
+		message.retain(increment);
+		return this;
+	}
+
+	@Override
+	public EncapsulatedPacketStream touch() {
+		message.touch();
+		return this;
+	}
+
+	@Override
+	public EncapsulatedPacketStream touch(Object hint) {
+		message.touch(hint);
+		return this;
+	}
+
+	@Override
+	public boolean release() {
+		return message.release();
+	}
+
+	@Override
+	public boolean release(int decrement) {
+		return message.release(decrement);
+	}
+
+}
@@ -5,28 +5,38 @@ import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.EncoderException;
+import raknetserver.utils.PackedAddress;
 
 public class RakNetDataSerializer {
 
+	public static final int IPV4_ADDRESS_LENGTH = 1 + 4 + 2; //type + address + port
+	public static final int IPV6_ADDRESS_LENGTH = 1 + 2 + 2 + 4 + 16 + 4; //type + sockaddr_in6 structure
+
 	public static void writeString(ByteBuf buf, String str) {
 		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
 		buf.writeShort(bytes.length);
 		buf.writeBytes(bytes);
 	}
 
+	public static String readString(ByteBuf buf) {
+		int length = buf.readUnsignedShort();
+		String str = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+		buf.skipBytes(length);
+		return str;
+	}
+
 	public static InetSocketAddress readAddress(ByteBuf buf) {
 		byte[] addr = null;
 		int port = -1;
 		int type = buf.readByte();
 		if (type == 4) {
-			int addri = ~buf.readInt();
-			addr = ByteBuffer.allocate(4).putInt(addri).array();
+			addr = new byte[] { (byte) ~buf.readByte(), (byte) ~buf.readByte(), (byte) ~buf.readByte(), (byte) ~buf.readByte() };
 			port = buf.readUnsignedShort();
 		} else if (type == 6) {
 			//sockaddr_in6 structure
@@ -46,14 +56,46 @@ public class RakNetDataSerializer {
 		}
 	}
 
+	public static PackedAddress readPackedAddress(ByteBuf buf) {
+		int type = buf.readByte();
+		if (type == 4) {
+			int addr = ~buf.readInt();
+			return PackedAddress.ofIPv4(addr, buf.readUnsignedShort());
+		} else if (type == 6) {
+			//sockaddr_in6 structure
+			buf.skipBytes(2); //family
+			int port = buf.readUnsignedShort();
+			buf.skipBytes(4); //flow info
+			long high = buf.readLong();
+			long low = buf.readLong();
+			buf.skipBytes(4); //scope id
+			return new PackedAddress(high, low, port);
+		} else {
+			throw new DecoderException("Unknown inet addr version: " + type);
+		}
+	}
+
+	//only advances reader index, used when address value is not needed
+	public static void skipAddress(ByteBuf buf) {
+		int type = buf.readByte();
+		if (type == 4) {
+			buf.skipBytes(IPV4_ADDRESS_LENGTH - 1);
+		} else if (type == 6) {
+			buf.skipBytes(IPV6_ADDRESS_LENGTH - 1);
+		} else {
+			throw new DecoderException("Unknown inet addr version: " + type);
+		}
+	}
+
 	public static void writeAddress(ByteBuf buf, InetSocketAddress address) {
 		InetAddress addr = address.getAddress();
 		if (addr instanceof Inet4Address) {
-			buf.writeByte((byte) 4);
-			int addri = ByteBuffer.wrap(addr.getAddress()).getInt();
-			buf.writeInt(~addri);
+			//hash code of ipv4 address is the address itself in big endian order, unlike getAddress() it doesn't allocate a copy
+			buf.writeByte(4);
+			buf.writeInt(~addr.hashCode());
 			buf.writeShort(address.getPort());
 		} else if (addr instanceof Inet6Address) {
+			buf.writeByte(6);
 			//socaddr_in6 structure
 			buf.writeShort(10); //family AF_INET6
 			buf.writeShort(address.getPort());
@@ -65,4 +107,22 @@ public class RakNetDataSerializer {
 		}
 	}
 
+	//writes address previously encoded using encodeAddress, doesn't touch encoded address indexes, so it can be safely shared between threads
+	public static void writeAddress(ByteBuf buf, ByteBuf encodedAddress) {
+		buf.writeBytes(encodedAddress, encodedAddress.readerIndex(), encodedAddress.readableBytes());
+	}
+
+	public static ByteBuf encodeAddress(InetSocketAddress address) {
+		return encodeAddresses(address, 1);
+	}
+
+	public static ByteBuf encodeAddresses(InetSocketAddress address, int count) {
+		int length = address.getAddress() instanceof Inet4Address ? IPV4_ADDRESS_LENGTH : IPV6_ADDRESS_LENGTH;
+		ByteBuf buf = Unpooled.buffer(length * count, length * count);
+		for (int i = 0; i < count; i++) {
+			writeAddress(buf, address);
+		}
+		return Unpooled.unreleasableBuffer(buf.asReadOnly());
+	}
+
 }
@@ -0,0 +1,51 @@
+package raknetserver.packet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+//user data with send options, plain ByteBuf writes use medium priority and order channel 0
+//messages with coalesce key are state updates, while connection is not writable only the latest message with the same key is kept
+public class RakNetMessage extends DefaultByteBufHolder {
+
+	public static final int NO_COALESCE_KEY = -1;
+
+	protected final RakNetPriority priority;
+	protected final int orderChannel;
+	protected final int coalesceKey;
+
+	public RakNetMessage(ByteBuf data, RakNetPriority priority) {
+		this(data, priority, 0);
+	}
+
+	public RakNetMessage(ByteBuf data, RakNetPriority priority, int orderChannel) {
+		this(data, priority, orderChannel, NO_COALESCE_KEY);
+	}
+
+	public RakNetMessage(ByteBuf data, RakNetPriority priority, int orderChannel, int coalesceKey) {
+		super(data);
+		if ((orderChannel < 0) || (orderChannel >= RakNetConstants.MAX_ORDER_CHANNELS)) {
+			throw new IllegalArgumentException("Invalid order channel " + orderChannel);
+		}
+		this.priority = priority;
+		this.orderChannel = orderChannel;
+		this.coalesceKey = coalesceKey;
+	}
+
+	public RakNetPriority getPriority() {
+		return priority;
+	}
+
+	public int getOrderChannel() {
+		return orderChannel;
+	}
+
+	public int getCoalesceKey() {
+		return coalesceKey;
+	}
+
+	@Override
+	public RakNetMessage replace(ByteBuf content) {
+		return new RakNetMessage(content, priority, orderChannel, coalesceKey);
+	}
+
+}
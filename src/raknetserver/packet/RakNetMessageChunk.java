@@ -0,0 +1,32 @@
+package raknetserver.packet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+//part of a big user message, delivered instead of the full message when inbound split streaming is enabled
+//chunks of a message are delivered in order, first chunk is marked as start, last one as end
+public class RakNetMessageChunk extends DefaultByteBufHolder {
+
+	protected final boolean start;
+	protected final boolean end;
+
+	public RakNetMessageChunk(ByteBuf data, boolean start, boolean end) {
+		super(data);
+		this.start = start;
+		this.end = end;
+	}
+
+	public boolean isStart() {
+		return start;
+	}
+
+	public boolean isEnd() {
+		return end;
+	}
+
+	@Override
+	public RakNetMessageChunk replace(ByteBuf content) {
+		return new RakNetMessageChunk(content, start, end);
+	}
+
+}
@@ -0,0 +1,19 @@
+package raknetserver.packet;
+
+public enum RakNetPriority {
+
+	//immediate packets are not limited by send window
+	IMMEDIATE(0), HIGH(4), MEDIUM(2), LOW(1);
+
+	//share of the datagrams slots when multiple priorities have queued packets
+	private final int weight;
+
+	RakNetPriority(int weight) {
+		this.weight = weight;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+}
@@ -0,0 +1,197 @@
+package raknetserver.packet;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+//user data of known length that is read only when its split packets are about to be sent, so big payloads are never fully kept in memory
+//data is read from the channel event loop, so source should not block for long (files, in memory channels)
+//source is closed when message is released
+public abstract class RakNetStreamMessage extends AbstractReferenceCounted {
+
+	protected static final InternalLogger logger = InternalLoggerFactory.getInstance(RakNetStreamMessage.class);
+
+	public static RakNetStreamMessage of(ReadableByteChannel channel, long length, RakNetPriority priority, int orderChannel) {
+		return new ChannelStreamMessage(channel, length, priority, orderChannel);
+	}
+
+	//file region is memory mapped, so data doesn't go through heap at all
+	public static RakNetStreamMessage ofFile(FileChannel channel, long position, long length, RakNetPriority priority, int orderChannel) {
+		return new MappedFileStreamMessage(channel, position, length, priority, orderChannel);
+	}
+
+	protected final long length;
+	protected final RakNetPriority priority;
+	protected final int orderChannel;
+	protected ByteBuf header = Unpooled.EMPTY_BUFFER;
+	protected int headerLength;
+
+	protected RakNetStreamMessage(long length, RakNetPriority priority, int orderChannel) {
+		if (length < 0) {
+			throw new IllegalArgumentException("Invalid length " + length);
+		}
+		if ((orderChannel < 0) || (orderChannel >= RakNetConstants.MAX_ORDER_CHANNELS)) {
+			throw new IllegalArgumentException("Invalid order channel " + orderChannel);
+		}
+		this.length = length;
+		this.priority = priority;
+		this.orderChannel = orderChannel;
+	}
+
+	public RakNetPriority getPriority() {
+		return priority;
+	}
+
+	public int getOrderChannel() {
+		return orderChannel;
+	}
+
+	//data is prefixed by header, used to add packet id
+	public RakNetStreamMessage setHeader(ByteBuf header) {
+		this.header.release();
+		this.header = header;
+		this.headerLength = header.readableBytes();
+		return this;
+	}
+
+	//total length including header
+	public long getLength() {
+		return headerLength + length;
+	}
+
+	public ByteBuf read(ByteBufAllocator alloc, int length) throws IOException {
+		if (!header.isReadable()) {
+			return readData(alloc, length);
+		}
+		ByteBuf headerPart = header.readRetainedSlice(Math.min(header.readableBytes(), length));
+		if (headerPart.readableBytes() == length) {
+			return headerPart;
+		}
+		try {
+			return Unpooled.wrappedBuffer(headerPart, readData(alloc, length - headerPart.readableBytes()));
+		} catch (Throwable t) {
+			headerPart.release();
+			throw t;
+		}
+	}
+
+	protected abstract ByteBuf readData(ByteBufAllocator alloc, int length) throws IOException;
+
+	protected abstract void close() throws IOException;
+
+	@Override
+	protected void deallocate() {
+		header.release();
+		try {
+			close();
+		} catch (IOException e) {
+			//message can be released anywhere (after last split packet is sent, on channel close), so there is no pipeline to fire it to
+			logger.warn("Failed to close stream message source", e);
+		}
+	}
+
+	@Override
+	public RakNetStreamMessage retain() {
+		super.retain();
+		return this;
+	}
+
+	@Override
+	public RakNetStreamMessage retain(int increment) {
+		super.retain(increment);
+		return this;
+	}
+
+	@Override
+	public RakNetStreamMessage touch() {
+		super.touch();
+		return this;
+	}
+
+	@Override
+	public RakNetStreamMessage touch(Object hint) {
+		return this;
+	}
+
+	protected static class ChannelStreamMessage extends RakNetStreamMessage {
+
+		protected final ReadableByteChannel channel;
+
+		protected ChannelStreamMessage(ReadableByteChannel channel, long length, RakNetPriority priority, int orderChannel) {
+			super(length, priority, orderChannel);
+			this.channel = channel;
+		}
+
+		@Override
+		protected ByteBuf readData(ByteBufAllocator alloc, int length) throws IOException {
+			ByteBuf buf = alloc.ioBuffer(length, length);
+			try {
+				ByteBuffer nioBuffer = buf.nioBuffer(0, length);
+				while (nioBuffer.hasRemaining()) {
+					if (channel.read(nioBuffer) < 0) {
+						throw new EOFException("Stream ended before declared length");
+					}
+				}
+				return buf.writerIndex(length);
+			} catch (Throwable t) {
+				buf.release();
+				throw t;
+			}
+		}
+
+		@Override
+		protected void close() throws IOException {
+			channel.close();
+		}
+
+	}
+
+	protected static class MappedFileStreamMessage extends RakNetStreamMessage {
+
+		protected static final int MAP_REGION_SIZE = 16 * 1024 * 1024;
+
+		protected final FileChannel channel;
+		protected final long end;
+		protected long position;
+		protected ByteBuf region = Unpooled.EMPTY_BUFFER;
+
+		protected MappedFileStreamMessage(FileChannel channel, long position, long length, RakNetPriority priority, int orderChannel) {
+			super(length, priority, orderChannel);
+			this.channel = channel;
+			this.position = position;
+			this.end = position + length;
+		}
+
+		@Override
+		protected ByteBuf readData(ByteBufAllocator alloc, int length) throws IOException {
+			if (region.readableBytes() < length) {
+				//already sent split packets still reference old region, so it is just dropped
+				region.release();
+				region = Unpooled.EMPTY_BUFFER;
+				region = Unpooled.wrappedBuffer(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.max(MAP_REGION_SIZE, length), end - position)));
+				if (region.readableBytes() < length) {
+					throw new EOFException("File region ended before declared length");
+				}
+			}
+			position += length;
+			return region.readRetainedSlice(length);
+		}
+
+		@Override
+		protected void close() throws IOException {
+			region.release();
+			channel.close();
+		}
+
+	}
+
+}
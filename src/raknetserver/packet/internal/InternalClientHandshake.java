@@ -1,14 +1,37 @@
 package raknetserver.packet.internal;
 
+import java.net.InetSocketAddress;
+
 import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetConstants;
 import raknetserver.packet.RakNetDataSerializer;
 
 public class InternalClientHandshake implements InternalPacket {
 
+	//system addresses block is always the same, so it is encoded only once
+	private static final ByteBuf SYSTEM_ADDRESSES = RakNetDataSerializer.encodeAddresses(RakNetConstants.NULL_ADDR, 20);
+
+	private ByteBuf serverAddr;
+	private long pongTimestamp;
+	private long timestamp;
+
+	public InternalClientHandshake() {
+	}
+
+	public InternalClientHandshake(InetSocketAddress serverAddr, long pongTimestamp, long timestamp) {
+		this(RakNetDataSerializer.encodeAddress(serverAddr), pongTimestamp, timestamp);
+	}
+
+	public InternalClientHandshake(ByteBuf encodedServerAddr, long pongTimestamp, long timestamp) {
+		this.serverAddr = encodedServerAddr;
+		this.pongTimestamp = pongTimestamp;
+		this.timestamp = timestamp;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		for (int i = 0; i < 21; i++) {
-			RakNetDataSerializer.readAddress(buf);
+			RakNetDataSerializer.skipAddress(buf);
 		}
 		buf.skipBytes(8); //pong time
 		buf.skipBytes(8); //timestamp
@@ -16,7 +39,10 @@ public class InternalClientHandshake implements InternalPacket {
 
 	@Override
 	public void encode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		RakNetDataSerializer.writeAddress(buf, serverAddr);
+		RakNetDataSerializer.writeAddress(buf, SYSTEM_ADDRESSES);
+		buf.writeLong(pongTimestamp);
+		buf.writeLong(timestamp);
 	}
 
 }
@@ -4,18 +4,29 @@ import io.netty.buffer.ByteBuf;
 
 public class InternalConnectionRequest implements InternalPacket {
 
+	private long clientId;
 	private long timestamp;
 
+	public InternalConnectionRequest() {
+	}
+
+	public InternalConnectionRequest(long clientId, long timestamp) {
+		this.clientId = clientId;
+		this.timestamp = timestamp;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
-		buf.skipBytes(8); //client id
+		clientId = buf.readLong();
 		timestamp = buf.readLong();
 		buf.skipBytes(1); //use security
 	}
 
 	@Override
 	public void encode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		buf.writeLong(clientId);
+		buf.writeLong(timestamp);
+		buf.writeBoolean(false);
 	}
 
 	public long getTimeStamp() {
@@ -0,0 +1,42 @@
+package raknetserver.packet.internal;
+
+import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetPriority;
+
+//sent by server to the new address of a session, client answers it with a proof that it knows the session token
+public class InternalMigrationChallenge implements InternalPacket {
+
+	private long nonce;
+
+	public InternalMigrationChallenge() {
+	}
+
+	public InternalMigrationChallenge(long nonce) {
+		this.nonce = nonce;
+	}
+
+	@Override
+	public void decode(ByteBuf buf) {
+		nonce = buf.readLong();
+	}
+
+	@Override
+	public void encode(ByteBuf buf) {
+		buf.writeLong(nonce);
+	}
+
+	public long getNonce() {
+		return nonce;
+	}
+
+	@Override
+	public RakNetPriority getPriority() {
+		return RakNetPriority.IMMEDIATE;
+	}
+
+	@Override
+	public boolean isReliable() {
+		return false;
+	}
+
+}
@@ -0,0 +1,66 @@
+package raknetserver.packet.internal;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetPriority;
+
+//answer to the migration challenge, session token itself is never sent after the handshake, only its mac of the challenge nonce
+public class InternalMigrationProof implements InternalPacket {
+
+	public static long sign(long token, long nonce) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(ByteBuffer.allocate(Long.BYTES).putLong(token).array(), "HmacSHA256"));
+			return ByteBuffer.wrap(mac.doFinal(ByteBuffer.allocate(Long.BYTES).putLong(nonce).array())).getLong();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 is not available", e);
+		}
+	}
+
+	private long nonce;
+	private long proof;
+
+	public InternalMigrationProof() {
+	}
+
+	public InternalMigrationProof(long nonce, long proof) {
+		this.nonce = nonce;
+		this.proof = proof;
+	}
+
+	@Override
+	public void decode(ByteBuf buf) {
+		nonce = buf.readLong();
+		proof = buf.readLong();
+	}
+
+	@Override
+	public void encode(ByteBuf buf) {
+		buf.writeLong(nonce);
+		buf.writeLong(proof);
+	}
+
+	public long getNonce() {
+		return nonce;
+	}
+
+	public long getProof() {
+		return proof;
+	}
+
+	@Override
+	public RakNetPriority getPriority() {
+		return RakNetPriority.IMMEDIATE;
+	}
+
+	@Override
+	public boolean isReliable() {
+		return false;
+	}
+
+}
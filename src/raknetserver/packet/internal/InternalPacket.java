@@ -1,6 +1,7 @@
 package raknetserver.packet.internal;
 
 import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetPriority;
 
 public interface InternalPacket {
 
@@ -8,4 +9,13 @@ public interface InternalPacket {
 
 	public void encode(ByteBuf buf);
 
+	public default RakNetPriority getPriority() {
+		return RakNetPriority.MEDIUM;
+	}
+
+	//unreliable packets are not resent and not ordered
+	public default boolean isReliable() {
+		return true;
+	}
+
 }
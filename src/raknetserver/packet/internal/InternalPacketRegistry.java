@@ -27,6 +27,8 @@ public class InternalPacketRegistry {
 		register(RakNetConstants.ID_I_CLIENT_DISCONNECT, InternalDisconnect.class);
 		register(RakNetConstants.ID_I_PING, InternalPing.class);
 		register(RakNetConstants.ID_I_PONG, InternalPong.class);
+		register(RakNetConstants.ID_I_MIGRATION_CHALLENGE, InternalMigrationChallenge.class);
+		register(RakNetConstants.ID_I_MIGRATION_PROOF, InternalMigrationProof.class);
 	}
 
 	public static int getId(InternalPacket packet) {
@@ -1,13 +1,18 @@
 package raknetserver.packet.internal;
 
 import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetPriority;
 
 public class InternalPing implements InternalPacket {
 
 	private long timestamp;
 
 	public InternalPing() {
-		timestamp = System.currentTimeMillis();
+		this(System.currentTimeMillis());
+	}
+
+	public InternalPing(long timestamp) {
+		this.timestamp = timestamp;
 	}
 
 	@Override
@@ -24,4 +29,15 @@ public class InternalPing implements InternalPacket {
 		return timestamp;
 	}
 
-}
\ No newline at end of file
+	//latency probes shouldn't wait behind queued data, neither in the send queue nor in the receiver order queue, lost probe is just not answered
+	@Override
+	public RakNetPriority getPriority() {
+		return RakNetPriority.IMMEDIATE;
+	}
+
+	@Override
+	public boolean isReliable() {
+		return false;
+	}
+
+}
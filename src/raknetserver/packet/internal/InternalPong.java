@@ -1,6 +1,7 @@
 package raknetserver.packet.internal;
 
 import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetPriority;
 
 public class InternalPong implements InternalPacket{
 
@@ -11,8 +12,12 @@ public class InternalPong implements InternalPacket{
 	}
 
 	public InternalPong(long pingTimestamp) {
+		this(pingTimestamp, System.currentTimeMillis());
+	}
+
+	public InternalPong(long pingTimestamp, long pongTimestamp) {
 		this.pingTimestamp = pingTimestamp;
-		this.pongTimestamp = System.currentTimeMillis();
+		this.pongTimestamp = pongTimestamp;
 	}
 
 	@Override
@@ -24,6 +29,7 @@ public class InternalPong implements InternalPacket{
 	@Override
 	public void encode(ByteBuf buf) {
 		buf.writeLong(pingTimestamp);
+		buf.writeLong(pongTimestamp);
 	}
 
 	public long getPingTimestamp() {
@@ -34,4 +40,15 @@ public class InternalPong implements InternalPacket{
 		return pongTimestamp;
 	}
 
-}
\ No newline at end of file
+	//latency probes shouldn't wait behind queued data, neither in the send queue nor in the receiver order queue, lost probe is just not answered
+	@Override
+	public RakNetPriority getPriority() {
+		return RakNetPriority.IMMEDIATE;
+	}
+
+	@Override
+	public boolean isReliable() {
+		return false;
+	}
+
+}
@@ -8,28 +8,57 @@ import raknetserver.packet.RakNetDataSerializer;
 
 public class InternalServerHandshake implements InternalPacket {
 
-	private final InetSocketAddress clientAddr;
-	private final long timestamp;
+	//system addresses block is always the same, so it is encoded only once
+	private static final ByteBuf SYSTEM_ADDRESSES = RakNetDataSerializer.encodeAddresses(RakNetConstants.NULL_ADDR, 20);
+
+	private ByteBuf clientAddr;
+	private long timestamp;
+	private long serverTimestamp;
+
+	public InternalServerHandshake() {
+	}
 
 	public InternalServerHandshake(InetSocketAddress clientAddr, long timestamp) {
-		this.clientAddr = clientAddr;
+		this(RakNetDataSerializer.encodeAddress(clientAddr), timestamp);
+	}
+
+	public InternalServerHandshake(ByteBuf encodedClientAddr, long timestamp) {
+		this(encodedClientAddr, timestamp, System.currentTimeMillis());
+	}
+
+	public InternalServerHandshake(ByteBuf encodedClientAddr, long timestamp, long serverTimestamp) {
+		this.clientAddr = encodedClientAddr;
 		this.timestamp = timestamp;
+		this.serverTimestamp = serverTimestamp;
 	}
 
+	//system addresses count differs between implementations, so everything before timestamps is skipped
 	@Override
 	public void decode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		RakNetDataSerializer.skipAddress(buf);
+		buf.skipBytes(2); //system index
+		while (buf.readableBytes() > 16) {
+			RakNetDataSerializer.skipAddress(buf);
+		}
+		timestamp = buf.readLong();
+		serverTimestamp = buf.readLong();
 	}
 
 	@Override
 	public void encode(ByteBuf buf) {
 		RakNetDataSerializer.writeAddress(buf, clientAddr);
 		buf.writeShort(0);
-		for (int i = 0; i < 20; i++) {
-			RakNetDataSerializer.writeAddress(buf, RakNetConstants.NULL_ADDR);
-		}
+		RakNetDataSerializer.writeAddress(buf, SYSTEM_ADDRESSES);
 		buf.writeLong(timestamp);
-		buf.writeLong(System.currentTimeMillis());
+		buf.writeLong(serverTimestamp);
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getServerTimestamp() {
+		return serverTimestamp;
 	}
 
 }
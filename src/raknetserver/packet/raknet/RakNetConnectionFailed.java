@@ -7,6 +7,8 @@ public class RakNetConnectionFailed implements RakNetPacket {
 
 	@Override
 	public void decode(ByteBuf buf) {
+		buf.skipBytes(RakNetConstants.MAGIC.length);
+		buf.skipBytes(8); //server id
 	}
 
 	@Override
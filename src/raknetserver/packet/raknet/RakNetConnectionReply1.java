@@ -7,7 +7,10 @@ public class RakNetConnectionReply1 implements RakNetPacket {
 
 	private static final boolean hasSecurity = false;
 
-	private final int mtu;
+	private int mtu;
+
+	public RakNetConnectionReply1() {
+	}
 
 	public RakNetConnectionReply1(int mtu) {
 		this.mtu = mtu;
@@ -15,7 +18,10 @@ public class RakNetConnectionReply1 implements RakNetPacket {
 
 	@Override
 	public void decode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		buf.skipBytes(RakNetConstants.MAGIC.length);
+		buf.skipBytes(8); //server id
+		buf.skipBytes(1); //security
+		mtu = buf.readUnsignedShort();
 	}
 
 	@Override
@@ -26,4 +32,8 @@ public class RakNetConnectionReply1 implements RakNetPacket {
 		buf.writeShort(mtu);
 	}
 
+	public int getMtu() {
+		return mtu;
+	}
+
 }
@@ -8,23 +8,35 @@ public class RakNetConnectionReply2 implements RakNetPacket {
 
 	private static final boolean needsSecurity = false;
 
-	private final int mtu;
+	private int mtu;
+
+	public RakNetConnectionReply2() {
+	}
+
 	public RakNetConnectionReply2(int mtu) {
 		this.mtu = mtu;
 	}
 
 	@Override
 	public void decode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		buf.skipBytes(RakNetConstants.MAGIC.length);
+		buf.skipBytes(8); //server id
+		RakNetDataSerializer.skipAddress(buf);
+		mtu = buf.readUnsignedShort();
+		buf.skipBytes(1); //security
 	}
 
 	@Override
 	public void encode(ByteBuf buf) {
 		buf.writeBytes(RakNetConstants.MAGIC);
 		buf.writeLong(RakNetConstants.SERVER_ID);
-		RakNetDataSerializer.writeAddress(buf, RakNetConstants.NULL_ADDR);
+		RakNetDataSerializer.writeAddress(buf, RakNetConstants.NULL_ADDR_ENCODED);
 		buf.writeShort(mtu);
 		buf.writeBoolean(needsSecurity);
 	}
 
+	public int getMtu() {
+		return mtu;
+	}
+
 }
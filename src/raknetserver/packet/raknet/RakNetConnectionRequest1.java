@@ -5,20 +5,34 @@ import raknetserver.packet.RakNetConstants;
 
 public class RakNetConnectionRequest1 implements RakNetPacket {
 
+	//whole datagram is padded up to the mtu: ip header, udp header, packet id, magic and protocol version
+	protected static final int HEADERS_SIZE = 20 + 8 + 1 + RakNetConstants.MAGIC.length + 1;
+
 	private int rakNetProtocolVersion;
 	private int mtu;
 
+	public RakNetConnectionRequest1() {
+	}
+
+	public RakNetConnectionRequest1(int rakNetProtocolVersion, int mtu) {
+		this.rakNetProtocolVersion = rakNetProtocolVersion;
+		this.mtu = mtu;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		buf.skipBytes(RakNetConstants.MAGIC.length);
 		rakNetProtocolVersion = buf.readByte();
-		mtu = buf.readableBytes();
-		buf.skipBytes(mtu);
+		int padding = buf.readableBytes();
+		buf.skipBytes(padding);
+		mtu = padding + HEADERS_SIZE;
 	}
 
 	@Override
 	public void encode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		buf.writeBytes(RakNetConstants.MAGIC);
+		buf.writeByte(rakNetProtocolVersion);
+		buf.writeZero(mtu - HEADERS_SIZE);
 	}
 
 	public int getRakNetProtocolVersion() {
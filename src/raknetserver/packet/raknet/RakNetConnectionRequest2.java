@@ -1,25 +1,40 @@
 package raknetserver.packet.raknet;
 
+import java.net.InetSocketAddress;
+
 import io.netty.buffer.ByteBuf;
 import raknetserver.packet.RakNetConstants;
 import raknetserver.packet.RakNetDataSerializer;
 
 public class RakNetConnectionRequest2 implements RakNetPacket {
 
+	private InetSocketAddress serverAddress;
 	private int mtu;
 	private long guid;
 
+	public RakNetConnectionRequest2() {
+	}
+
+	public RakNetConnectionRequest2(InetSocketAddress serverAddress, int mtu, long guid) {
+		this.serverAddress = serverAddress;
+		this.mtu = mtu;
+		this.guid = guid;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		buf.skipBytes(RakNetConstants.MAGIC.length);
-		RakNetDataSerializer.readAddress(buf);
+		RakNetDataSerializer.skipAddress(buf);
 		mtu = buf.readShort();
 		guid = buf.readLong();
 	}
 
 	@Override
 	public void encode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		buf.writeBytes(RakNetConstants.MAGIC);
+		RakNetDataSerializer.writeAddress(buf, serverAddress);
+		buf.writeShort(mtu);
+		buf.writeLong(guid);
 	}
 
 	public int getMtu() {
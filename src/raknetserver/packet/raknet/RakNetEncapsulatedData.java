@@ -35,6 +35,14 @@ public class RakNetEncapsulatedData implements RakNetPacket {
 		}
 	}
 
+	public int getEncodedSize() {
+		int size = 3; //seq id
+		for (EncapsulatedPacket packet : packets) {
+			size += packet.getEncodedSize();
+		}
+		return size;
+	}
+
 	public int getSeqId() {
 		return seqId;
 	}
@@ -47,4 +55,10 @@ public class RakNetEncapsulatedData implements RakNetPacket {
 		return packets;
 	}
 
+	public void release() {
+		for (EncapsulatedPacket packet : packets) {
+			packet.release();
+		}
+	}
+
 }
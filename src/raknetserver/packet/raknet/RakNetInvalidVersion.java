@@ -7,16 +7,24 @@ public class RakNetInvalidVersion implements RakNetPacket {
 
 	public static final int VALID_VERSION = 10;
 
+	private int version = VALID_VERSION;
+
 	@Override
 	public void decode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		version = buf.readUnsignedByte();
+		buf.skipBytes(RakNetConstants.MAGIC.length);
+		buf.skipBytes(8); //server id
 	}
 
 	@Override
 	public void encode(ByteBuf buf) {
-		buf.writeByte(VALID_VERSION);
+		buf.writeByte(version);
 		buf.writeBytes(RakNetConstants.MAGIC);
 		buf.writeLong(RakNetConstants.SERVER_ID);
 	}
 
+	public int getVersion() {
+		return version;
+	}
+
 }
@@ -0,0 +1,20 @@
+package raknetserver.packet.raknet;
+
+import io.netty.buffer.ByteBuf;
+import raknetserver.packet.RakNetConstants;
+
+public class RakNetNoFreeIncomingConnections implements RakNetPacket {
+
+	@Override
+	public void decode(ByteBuf buf) {
+		buf.skipBytes(RakNetConstants.MAGIC.length);
+		buf.skipBytes(8); //server id
+	}
+
+	@Override
+	public void encode(ByteBuf buf) {
+		buf.writeBytes(RakNetConstants.MAGIC);
+		buf.writeLong(RakNetConstants.SERVER_ID);
+	}
+
+}
@@ -29,6 +29,7 @@ public class RakNetPacketRegistry {
 		register(RakNetConstants.ID_RN_OPEN_CONNECTION_REPLY_1, RakNetConnectionReply1.class);
 		register(RakNetConstants.ID_RN_INVALID_VERSION, RakNetInvalidVersion.class);
 		register(RakNetConstants.ID_RN_CONNECTION_FAILED, RakNetConnectionFailed.class);
+		register(RakNetConstants.ID_RN_NO_FREE_INCOMING_CONNECTIONS, RakNetNoFreeIncomingConnections.class);
 		register(RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_2, RakNetConnectionRequest2.class);
 		register(RakNetConstants.ID_RN_OPEN_CONNECTION_REPLY_2, RakNetConnectionReply2.class);
 		register(RakNetConstants.ID_RN_ACK, RakNetACK.class);
@@ -17,6 +17,10 @@ public class RakNetReliability implements RakNetPacket {
 		entries = new REntry[] { new REntry(idstart, idfinish) };
 	}
 
+	public RakNetReliability(REntry[] entries) {
+		this.entries = entries;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		entries = new REntry[buf.readUnsignedShort()];
@@ -80,6 +84,9 @@ public class RakNetReliability implements RakNetPacket {
 		public RakNetNACK(int idstart, int idfinish) {
 			super(idstart, idfinish);
 		}
+		public RakNetNACK(REntry[] entries) {
+			super(entries);
+		}
 	}
 
 }
@@ -7,6 +7,13 @@ public class RakNetUnconnectedPing implements RakNetPacket {
 
 	private long clientTime;
 
+	public RakNetUnconnectedPing() {
+	}
+
+	public RakNetUnconnectedPing(long clientTime) {
+		this.clientTime = clientTime;
+	}
+
 	@Override
 	public void decode(ByteBuf buf) {
 		this.clientTime = buf.readLong();
@@ -16,7 +23,9 @@ public class RakNetUnconnectedPing implements RakNetPacket {
 
 	@Override
 	public void encode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		buf.writeLong(clientTime);
+		buf.writeBytes(RakNetConstants.MAGIC);
+		buf.writeLong(RakNetConstants.SERVER_ID);
 	}
 
 	public long getClientTime() {
@@ -6,8 +6,11 @@ import raknetserver.packet.RakNetDataSerializer;
 
 public class RakNetUnconnectedPong implements RakNetPacket {
 
-	private final long clientTime;
-	private final String info;
+	private long clientTime;
+	private String info;
+
+	public RakNetUnconnectedPong() {
+	}
 
 	public RakNetUnconnectedPong(long clientTime, String info) {
 		this.clientTime = clientTime;
@@ -16,7 +19,10 @@ public class RakNetUnconnectedPong implements RakNetPacket {
 
 	@Override
 	public void decode(ByteBuf buf) {
-		throw new UnsupportedOperationException();
+		clientTime = buf.readLong();
+		buf.skipBytes(8); //server id
+		buf.skipBytes(RakNetConstants.MAGIC.length);
+		info = RakNetDataSerializer.readString(buf);
 	}
 
 	@Override
@@ -27,4 +33,12 @@ public class RakNetUnconnectedPong implements RakNetPacket {
 		RakNetDataSerializer.writeString(buf, info);
 	}
 
+	public long getClientTime() {
+		return clientTime;
+	}
+
+	public String getInfo() {
+		return info;
+	}
+
 }
@@ -1,25 +1,48 @@
 package raknetserver.pipeline.encapsulated;
 
+import java.util.Arrays;
 import java.util.List;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.EncapsulatedPacketStream;
+import raknetserver.packet.RakNetMessage;
+import raknetserver.packet.RakNetStreamMessage;
 import raknetserver.utils.UINT;
-import raknetserver.utils.Utils;
 
-public class EncapsulatedPacketOutboundOrder extends MessageToMessageEncoder<ByteBuf> {
+public class EncapsulatedPacketOutboundOrder extends MessageToMessageEncoder<Object> {
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, ByteBuf buffer, List<Object> list) throws Exception {
-		list.add(new EncapsulatedPacket(Utils.readBytes(buffer), 0, 0, getNextOrderIndex()));
+	public boolean acceptOutboundMessage(Object msg) {
+		return (msg instanceof ByteBuf) || (msg instanceof RakNetMessage) || (msg instanceof RakNetStreamMessage);
 	}
 
-	protected int nextOrderIndex = 0;
-	protected int getNextOrderIndex() {
-		int orderIndex = nextOrderIndex;
-		nextOrderIndex = UINT.B3.plus(nextOrderIndex, 1);
+	@Override
+	protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> list) throws Exception {
+		if (msg instanceof RakNetMessage) {
+			RakNetMessage message = (RakNetMessage) msg;
+			int orderChannel = message.getOrderChannel();
+			EncapsulatedPacket packet = new EncapsulatedPacket(message.content().retain(), 0, orderChannel, getNextOrderIndex(orderChannel));
+			packet.setPriority(message.getPriority());
+			list.add(packet);
+		} else if (msg instanceof RakNetStreamMessage) {
+			RakNetStreamMessage message = (RakNetStreamMessage) msg;
+			list.add(new EncapsulatedPacketStream(message.retain(), getNextOrderIndex(message.getOrderChannel())));
+		} else {
+			list.add(new EncapsulatedPacket(((ByteBuf) msg).retain(), 0, 0, getNextOrderIndex(0)));
+		}
+	}
+
+	//grows only up to the highest used order channel
+	protected int[] nextOrderIndexes = new int[1];
+	protected int getNextOrderIndex(int orderChannel) {
+		if (orderChannel >= nextOrderIndexes.length) {
+			nextOrderIndexes = Arrays.copyOf(nextOrderIndexes, orderChannel + 1);
+		}
+		int orderIndex = nextOrderIndexes[orderChannel];
+		nextOrderIndexes[orderChannel] = UINT.B3.plus(orderIndex, 1);
 		return orderIndex;
 	}
 
@@ -0,0 +1,92 @@
+package raknetserver.pipeline.encapsulated;
+
+import java.nio.channels.ClosedChannelException;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import raknetserver.packet.RakNetMessage;
+import raknetserver.packet.RakNetPriority;
+import raknetserver.utils.Constants;
+
+//slow consumer policies, applied only while channel is not writable
+//low priority messages are dropped, messages with coalesce key are held until channel is writable again and only the latest one for each key is sent
+//it works before order indexes are assigned, so dropped and replaced messages don't leave gaps in order channels
+public class EncapsulatedPacketOverloadHandler extends ChannelDuplexHandler {
+
+	protected Int2ObjectLinkedOpenHashMap<HeldMessage> held;
+	protected long droppedMessages;
+	protected long coalescedMessages;
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (ctx.channel().isWritable() || !(msg instanceof RakNetMessage)) {
+			ctx.write(msg, promise);
+			return;
+		}
+		RakNetMessage message = (RakNetMessage) msg;
+		if (message.getCoalesceKey() != RakNetMessage.NO_COALESCE_KEY) {
+			if (held == null) {
+				held = new Int2ObjectLinkedOpenHashMap<>();
+			}
+			HeldMessage prev = held.put(message.getCoalesceKey(), new HeldMessage(message, promise));
+			if (prev != null) {
+				coalescedMessages++;
+				prev.message.release();
+				prev.promise.trySuccess();
+			}
+		} else if (Constants.DROP_LOW_PRIORITY_WHEN_UNWRITABLE && (message.getPriority() == RakNetPriority.LOW)) {
+			droppedMessages++;
+			message.release();
+			promise.trySuccess();
+		} else {
+			ctx.write(msg, promise);
+		}
+	}
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.channel().isWritable() && (held != null) && !held.isEmpty()) {
+			for (HeldMessage message : held.values()) {
+				ctx.write(message.message, message.promise);
+			}
+			held = null;
+			ctx.flush();
+		}
+		super.channelWritabilityChanged(ctx);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		if (held != null) {
+			for (HeldMessage message : held.values()) {
+				message.message.release();
+				message.promise.tryFailure(new ClosedChannelException());
+			}
+			held = null;
+		}
+		super.handlerRemoved(ctx);
+	}
+
+	public long getDroppedMessages() {
+		return droppedMessages;
+	}
+
+	public long getCoalescedMessages() {
+		return coalescedMessages;
+	}
+
+	protected static final class HeldMessage {
+
+		protected final RakNetMessage message;
+		protected final ChannelPromise promise;
+
+		protected HeldMessage(RakNetMessage message, ChannelPromise promise) {
+			this.message = message;
+			this.promise = promise;
+		}
+
+	}
+
+}
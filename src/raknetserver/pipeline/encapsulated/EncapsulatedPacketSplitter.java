@@ -1,38 +1,64 @@
 package raknetserver.pipeline.encapsulated;
 
-import java.util.Arrays;
 import java.util.List;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.EncapsulatedPacketStream;
 import raknetserver.packet.RakNetConstants;
+import raknetserver.utils.Constants;
 import raknetserver.utils.UINT;
 import raknetserver.utils.Utils;
 
-public class EncapsulatedPacketSplitter extends MessageToMessageEncoder<EncapsulatedPacket> {
+public class EncapsulatedPacketSplitter extends MessageToMessageEncoder<Object> {
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, EncapsulatedPacket packet, List<Object> list) throws Exception {
+	public boolean acceptOutboundMessage(Object msg) {
+		return (msg instanceof EncapsulatedPacket) || (msg instanceof EncapsulatedPacketStream);
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> list) throws Exception {
 		int mtu = ctx.channel().attr(RakNetConstants.MTU).get();
 		int splitSize = mtu - 200;
+		if (msg instanceof EncapsulatedPacketStream) {
+			//stream split packets are created only when they are sent, so message indexes for them are reserved now
+			EncapsulatedPacketStream stream = (EncapsulatedPacketStream) msg;
+			int splitCount = stream.getSplitCount(splitSize);
+			stream.setSplit(splitSize, splitCount, getNextSplitID(), reserveMessageIndexes(splitCount));
+			list.add(stream.retain());
+			return;
+		}
+		EncapsulatedPacket packet = (EncapsulatedPacket) msg;
+		ByteBuf data = packet.getData();
 		if (packet.getDataSize() > (mtu - 100)) {
-			EncapsulatedPacket[] epackets = new EncapsulatedPacket[Utils.getSplitCount(packet.getDataSize(), splitSize)];
+			int splitCount = Utils.getSplitCount(packet.getDataSize(), splitSize);
+			if (splitCount > Constants.MAX_PACKET_SPLITS) {
+				throw new EncoderException("Packet is too big: " + packet.getDataSize() + ", max split packets: " + Constants.MAX_PACKET_SPLITS);
+			}
 			int splitID = getNextSplitID();
-			//TODO: direct array split
-			ByteBuf buffer = Unpooled.wrappedBuffer(packet.getData());
-			for (int splitIndex = 0; splitIndex < epackets.length; splitIndex++) {
-				epackets[splitIndex] = new EncapsulatedPacket(
-					Utils.readBytes(buffer, buffer.readableBytes() < splitSize ? buffer.readableBytes() : splitSize),
+			//split packets are slices of the original data, so no data is copied
+			int offset = data.readerIndex();
+			for (int splitIndex = 0; splitIndex < splitCount; splitIndex++) {
+				int length = Math.min(splitSize, data.writerIndex() - offset);
+				EncapsulatedPacket split = new EncapsulatedPacket(
+					data.retainedSlice(offset, length),
 					getNextMessageIndex(), packet.getOrderChannel(), packet.getOrderIndex(),
-					splitID, epackets.length, splitIndex
+					splitID, splitCount, splitIndex
 				);
+				split.setReliability(packet.getReliability());
+				split.setPriority(packet.getPriority());
+				list.add(split);
+				offset += length;
 			}
-			list.addAll(Arrays.asList(epackets));
 		} else {
-			list.add(new EncapsulatedPacket(packet.getData(), getNextMessageIndex(), packet.getOrderChannel(), packet.getOrderIndex()));
+			EncapsulatedPacket full = new EncapsulatedPacket(data.retain(), getNextMessageIndex(), packet.getOrderChannel(), packet.getOrderIndex());
+			full.setReliability(packet.getReliability());
+			full.setPriority(packet.getPriority());
+			list.add(full);
 		}
 	}
 
@@ -43,6 +69,12 @@ public class EncapsulatedPacketSplitter extends MessageToMessageEncoder<Encapsul
 		return messageIndex;
 	}
 
+	protected int reserveMessageIndexes(int count) {
+		int messageIndex = nextMessageIndex;
+		nextMessageIndex = UINT.B3.plus(nextMessageIndex, count);
+		return messageIndex;
+	}
+
 	protected int nextSplitId = 0;
 	protected int getNextSplitID() {
 		int splitId = nextSplitId;
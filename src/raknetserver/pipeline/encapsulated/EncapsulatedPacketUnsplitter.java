@@ -2,68 +2,59 @@ package raknetserver.pipeline.encapsulated;
 
 import java.util.List;
 
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageDecoder;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import raknetserver.packet.EncapsulatedPacket;
-import raknetserver.utils.Constants;
-import raknetserver.utils.Utils;
+import raknetserver.session.MemoryGovernor;
 
 public class EncapsulatedPacketUnsplitter extends MessageToMessageDecoder<EncapsulatedPacket> {
 
-	private final Int2ObjectOpenHashMap<SplittedPacket> notFullPackets = new Int2ObjectOpenHashMap<>();
+	private final SplitPacketAssembler assembler;
+	private final SplitPacketSequencer sequencer;
+	private long charged;
+
+	public EncapsulatedPacketUnsplitter() {
+		this.assembler = new SplitPacketAssembler();
+		this.sequencer = null;
+	}
+
+	//user data split packets parts are passed in order instead of being assembled
+	public EncapsulatedPacketUnsplitter(int userPacketId) {
+		this.assembler = null;
+		this.sequencer = new SplitPacketSequencer(userPacketId);
+	}
 
 	@Override
 	protected void decode(ChannelHandlerContext ctx, EncapsulatedPacket packet, List<Object> list) throws Exception {
 		if (!packet.hasSplit()) {
-			list.add(packet);
+			list.add(packet.retain());
+		} else if (sequencer != null) {
+			sequencer.add(packet, list);
 		} else {
-			int splitID = packet.getSplitId();
-			SplittedPacket partial = notFullPackets.get(splitID);
-			if (partial == null) {
-				notFullPackets.put(splitID, new SplittedPacket(packet));
-			} else {
-				partial.appendData(packet);
-				if (partial.isComplete()) {
-					notFullPackets.remove(splitID);
-					list.add(partial.getFullPacket());
-				}
+			EncapsulatedPacket full = assembler.add(packet);
+			if (full != null) {
+				list.add(full);
 			}
 		}
-	}
-
-	private static final class SplittedPacket {
-
-		private int receivedSplits = 0;
-		private final EncapsulatedPacket startpacket;
-		private final byte[][] packets;
-
-		public SplittedPacket(EncapsulatedPacket startpacket) {
-			if (startpacket.getSplitCount() > Constants.MAX_PACKET_SPLITS) {
-				throw new IllegalStateException("Too many splits for single packet, max: " + Constants.MAX_PACKET_SPLITS + ", packet: " + startpacket.getSplitCount());
-			}
-			this.startpacket = startpacket;
-			this.packets = new byte[startpacket.getSplitCount()][];
-			this.packets[0] = startpacket.getData();
-		}
-
-		public void appendData(EncapsulatedPacket packet) {
-			if (packets[packet.getSplitIndex()] != null) {
-				return;
-			}
-			receivedSplits++;
-			packets[packet.getSplitIndex()] = packet.getData();
+		long bytes = sequencer != null ? sequencer.getBytes() : assembler.getBytes();
+		if (bytes != charged) {
+			MemoryGovernor.getAccount(ctx.channel()).charge(bytes - charged);
+			charged = bytes;
 		}
+	}
 
-		public boolean isComplete() {
-			return (packets.length - receivedSplits) == 1;
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		if (sequencer != null) {
+			sequencer.release();
+		} else {
+			assembler.release();
 		}
-
-		public EncapsulatedPacket getFullPacket() {
-			return new EncapsulatedPacket(Utils.readBytes(Unpooled.wrappedBuffer(packets)), 0, startpacket.getOrderChannel(), startpacket.getOrderIndex());
+		if (charged != 0) {
+			MemoryGovernor.getAccount(ctx.channel()).charge(-charged);
+			charged = 0;
 		}
-
+		super.handlerRemoved(ctx);
 	}
 
 }
@@ -0,0 +1,233 @@
+package raknetserver.pipeline.encapsulated;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.netty.handler.codec.DecoderException;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetMessageChunk;
+import raknetserver.utils.Constants;
+import raknetserver.utils.UINT;
+
+//orders received packets, doesn't take ownership of packets, adds retained packets data to the output list in order
+//split packets parts passed by SplitPacketSequencer are added as message chunks, next ordered packet is added only after the last chunk
+public class OrderedChannels {
+
+	//channels are created on first use, most clients use only the first one
+	protected OrderedChannelPacketQueue[] channels = new OrderedChannelPacketQueue[0];
+
+	public void decode(EncapsulatedPacket packet, List<Object> list) {
+		if (packet.getReliability() == 3) {
+			getChannel(packet.getOrderChannel()).decodeOrdered(packet, list);
+		} else {
+			output(packet.retain(), list);
+		}
+	}
+
+	protected OrderedChannelPacketQueue getChannel(int orderChannel) {
+		if (orderChannel >= channels.length) {
+			channels = Arrays.copyOf(channels, orderChannel + 1);
+		}
+		OrderedChannelPacketQueue channel = channels[orderChannel];
+		if (channel == null) {
+			channel = new OrderedChannelPacketQueue();
+			channels[orderChannel] = channel;
+		}
+		return channel;
+	}
+
+	public long getQueuedBytes() {
+		long bytes = 0;
+		for (OrderedChannelPacketQueue channel : channels) {
+			if (channel != null) {
+				bytes += channel.queuedBytes;
+			}
+		}
+		return bytes;
+	}
+
+	public void release() {
+		for (OrderedChannelPacketQueue channel : channels) {
+			if (channel != null) {
+				channel.release();
+			}
+		}
+	}
+
+	//takes ownership of the packet, returns true if packet was the last part of the message
+	protected static boolean output(EncapsulatedPacket packet, List<Object> list) {
+		if (!packet.hasSplit()) {
+			list.add(packet.getData());
+			return true;
+		}
+		boolean end = packet.getSplitIndex() == (packet.getSplitCount() - 1);
+		list.add(new RakNetMessageChunk(packet.getData(), packet.getSplitIndex() == 0, end));
+		return end;
+	}
+
+	protected static class OrderedChannelPacketQueue {
+
+		protected static final Object[] EMPTY_QUEUE = new Object[0];
+		protected static final int INITIAL_CAPACITY = 8;
+		protected static final int REFERENCE_SIZE = 8;
+
+		//ring buffer of future packets, slot at head is for the next expected order index, so slot is selected using distance from the last received index
+		//values are either packets or lists of message chunks
+		protected Object[] queue = EMPTY_QUEUE;
+		protected int head;
+		protected int queuedCount;
+		//queued packets data and ring buffer size, limited by MAX_ORDER_QUEUE_BYTES
+		protected long queuedBytes;
+		protected int lastReceivedIndex = -1;
+		//next expected chunk of the message that is currently delivered, late duplicates of already completed split packets are dropped using it
+		protected int nextChunkIndex = 0;
+
+		protected void decodeOrdered(EncapsulatedPacket packet, List<Object> list) {
+			final int indexDiff = UINT.B3.minusWrap(packet.getOrderIndex(), lastReceivedIndex);
+			if (indexDiff == 1) { //got next packet in line
+				if (packet.hasSplit() && (packet.getSplitIndex() != nextChunkIndex)) {
+					return;
+				}
+				if (!output(packet.retain(), list)) {
+					nextChunkIndex++;
+					return;
+				}
+				nextChunkIndex = 0;
+				advance();
+				//process any queued packets following in sequence, they were already retained when queued
+				Object queued;
+				while ((queued = pollHead()) != null) {
+					if (!outputQueued(queued, list)) {
+						nextChunkIndex = ((List<?>) queued).size();
+						break;
+					}
+					advance();
+				}
+			} else if (indexDiff > 1) { // only future data goes in the queue
+				int offset = indexDiff - 1;
+				if (offset >= queue.length) {
+					grow(offset + 1);
+				}
+				int slot = (head + offset) & (queue.length - 1);
+				Object prev = queue[slot];
+				if (packet.hasSplit()) {
+					@SuppressWarnings("unchecked")
+					ArrayList<EncapsulatedPacket> chunks = (ArrayList<EncapsulatedPacket>) prev;
+					if (chunks == null) {
+						chunks = new ArrayList<>();
+						queue[slot] = chunks;
+						queuedCount++;
+					}
+					if (packet.getSplitIndex() != chunks.size()) {
+						return;
+					}
+					chunks.add(packet.retain());
+				} else {
+					if (prev != null) {
+						queuedBytes -= getSize(prev);
+						release(prev);
+					} else {
+						queuedCount++;
+					}
+					queue[slot] = packet.retain();
+				}
+				queuedBytes += packet.getDataSize();
+				checkBudget();
+			}
+		}
+
+		protected void advance() {
+			lastReceivedIndex = UINT.B3.plus(lastReceivedIndex, 1);
+			if (queue.length != 0) {
+				head = (head + 1) & (queue.length - 1);
+			}
+		}
+
+		protected Object pollHead() {
+			if (queuedCount == 0) {
+				return null;
+			}
+			Object queued = queue[head];
+			if (queued != null) {
+				queue[head] = null;
+				queuedBytes -= getSize(queued);
+				if (--queuedCount == 0) {
+					//loss burst is over, don't keep big ring buffer
+					if (queue.length > INITIAL_CAPACITY) {
+						queuedBytes -= (long) (queue.length - INITIAL_CAPACITY) * REFERENCE_SIZE;
+						queue = new Object[INITIAL_CAPACITY];
+						head = 0;
+					}
+				}
+			}
+			return queued;
+		}
+
+		protected void grow(int minCapacity) {
+			int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(minCapacity - 1) << 1);
+			queuedBytes += (long) (capacity - queue.length) * REFERENCE_SIZE;
+			checkBudget();
+			Object[] nqueue = new Object[capacity];
+			for (int i = 0; i < queue.length; i++) {
+				nqueue[i] = queue[(head + i) & (queue.length - 1)];
+			}
+			queue = nqueue;
+			head = 0;
+		}
+
+		protected void checkBudget() {
+			if (queuedBytes > Constants.MAX_ORDER_QUEUE_BYTES) {
+				throw new DecoderException("Too big packet loss (missed ordered packets)");
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		protected static int getSize(Object queued) {
+			if (queued instanceof EncapsulatedPacket) {
+				return ((EncapsulatedPacket) queued).getDataSize();
+			}
+			int size = 0;
+			for (EncapsulatedPacket chunk : (ArrayList<EncapsulatedPacket>) queued) {
+				size += chunk.getDataSize();
+			}
+			return size;
+		}
+
+		@SuppressWarnings("unchecked")
+		protected static boolean outputQueued(Object queued, List<Object> list) {
+			if (queued instanceof EncapsulatedPacket) {
+				return output((EncapsulatedPacket) queued, list);
+			}
+			boolean end = false;
+			for (EncapsulatedPacket chunk : (ArrayList<EncapsulatedPacket>) queued) {
+				end = output(chunk, list);
+			}
+			return end;
+		}
+
+		@SuppressWarnings("unchecked")
+		protected static void release(Object queued) {
+			if (queued instanceof EncapsulatedPacket) {
+				((EncapsulatedPacket) queued).release();
+			} else {
+				for (EncapsulatedPacket chunk : (ArrayList<EncapsulatedPacket>) queued) {
+					chunk.release();
+				}
+			}
+		}
+
+		protected void release() {
+			for (Object queued : queue) {
+				if (queued != null) {
+					release(queued);
+				}
+			}
+			queue = EMPTY_QUEUE;
+			queuedCount = 0;
+			queuedBytes = 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+package raknetserver.pipeline.encapsulated;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.utils.Constants;
+
+//collects split packets parts, doesn't take ownership of added packets, parts data is retained instead
+public class SplitPacketAssembler {
+
+	//created on first split packet, most connections never receive one
+	protected Int2ObjectOpenHashMap<SplittedPacket> notFullPackets;
+	//data size of parts of packets that are not complete yet
+	protected long bytes;
+
+	//returns full packet once all parts are received, null otherwise
+	public EncapsulatedPacket add(EncapsulatedPacket packet) {
+		if (notFullPackets == null) {
+			notFullPackets = new Int2ObjectOpenHashMap<>();
+		}
+		int splitID = packet.getSplitId();
+		SplittedPacket partial = notFullPackets.get(splitID);
+		if (partial == null) {
+			partial = new SplittedPacket(packet);
+			notFullPackets.put(splitID, partial);
+		} else {
+			bytes -= partial.size;
+			partial.appendData(packet);
+		}
+		bytes += partial.size;
+		if (partial.isComplete()) {
+			bytes -= partial.size;
+			notFullPackets.remove(splitID);
+			return partial.getFullPacket();
+		}
+		return null;
+	}
+
+	public boolean contains(int splitID) {
+		return (notFullPackets != null) && notFullPackets.containsKey(splitID);
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public void release() {
+		bytes = 0;
+		if (notFullPackets == null) {
+			return;
+		}
+		for (SplittedPacket partial : notFullPackets.values()) {
+			partial.release();
+		}
+		notFullPackets.clear();
+	}
+
+	protected static final class SplittedPacket {
+
+		private int receivedSplits = 0;
+		private long size = 0;
+		private final int orderChannel;
+		private final int orderIndex;
+		private final ByteBuf[] packets;
+
+		public SplittedPacket(EncapsulatedPacket startpacket) {
+			if (startpacket.getSplitCount() > Constants.MAX_PACKET_SPLITS) {
+				throw new IllegalStateException("Too many splits for single packet, max: " + Constants.MAX_PACKET_SPLITS + ", packet: " + startpacket.getSplitCount());
+			}
+			this.orderChannel = startpacket.getOrderChannel();
+			this.orderIndex = startpacket.getOrderIndex();
+			this.packets = new ByteBuf[startpacket.getSplitCount()];
+			appendData(startpacket);
+		}
+
+		public void appendData(EncapsulatedPacket packet) {
+			if (packets[packet.getSplitIndex()] != null) {
+				return;
+			}
+			receivedSplits++;
+			size += packet.getDataSize();
+			packets[packet.getSplitIndex()] = packet.getData().retain();
+		}
+
+		public boolean isComplete() {
+			return receivedSplits == packets.length;
+		}
+
+		public EncapsulatedPacket getFullPacket() {
+			return new EncapsulatedPacket(Unpooled.wrappedBuffer(packets), 0, orderChannel, orderIndex);
+		}
+
+		public void release() {
+			for (ByteBuf packet : packets) {
+				if (packet != null) {
+					packet.release();
+				}
+			}
+		}
+
+	}
+
+}
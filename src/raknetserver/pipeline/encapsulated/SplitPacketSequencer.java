@@ -0,0 +1,171 @@
+package raknetserver.pipeline.encapsulated;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.utils.Constants;
+
+//passes user data split packets parts in split index order as soon as all previous parts are received, instead of assembling the full packet
+//only parts received out of order are buffered, user packet id is removed from the first part
+//split packets that are not user data are still assembled, because internal packets are decoded as a whole
+//doesn't take ownership of added packets, adds retained packets to the output list
+//late duplicates of parts of completed packets are dropped using split id and order of recently completed packets, split id alone wraps around
+public class SplitPacketSequencer {
+
+	protected static final int COMPLETED_HISTORY = 64;
+
+	protected final int userPacketId;
+	protected final SplitPacketAssembler assembler = new SplitPacketAssembler();
+	protected final Int2ObjectOpenHashMap<SplitSequence> sequences = new Int2ObjectOpenHashMap<>();
+	//data size of out of order parts
+	protected long pendingBytes;
+	//ring of recently completed packets keys, created on first completed packet
+	protected long[] completed;
+	protected int completedHead;
+
+	public SplitPacketSequencer(int userPacketId) {
+		this.userPacketId = userPacketId;
+	}
+
+	public void add(EncapsulatedPacket packet, List<Object> list) {
+		int splitID = packet.getSplitId();
+		if (assembler.contains(splitID)) {
+			addAssembled(packet, list);
+			return;
+		}
+		int splitIndex = packet.getSplitIndex();
+		if ((packet.getSplitCount() <= 0) || (splitIndex < 0) || (splitIndex >= packet.getSplitCount())) {
+			throw new DecoderException("Invalid split packet part index " + splitIndex + ", split count: " + packet.getSplitCount());
+		}
+		SplitSequence sequence = sequences.get(splitID);
+		if ((sequence != null) && ((sequence.orderChannel != packet.getOrderChannel()) || (sequence.orderIndex != packet.getOrderIndex()))) {
+			//sender reuses split id only long after the previous packet with it was delivered, so the sequence was started by late duplicates
+			sequences.remove(splitID);
+			release(sequence);
+			sequence = null;
+		}
+		if (sequence == null) {
+			if (isCompleted(packet)) {
+				return;
+			}
+			sequence = new SplitSequence(packet);
+			sequences.put(splitID, sequence);
+		} else if (sequence.splitCount != packet.getSplitCount()) {
+			throw new DecoderException("Split packet part count " + packet.getSplitCount() + " doesn't match count of other parts " + sequence.splitCount);
+		}
+		if ((splitIndex < sequence.nextIndex) || sequence.pending.containsKey(splitIndex)) {
+			return;
+		}
+		if (splitIndex != sequence.nextIndex) {
+			if (sequence.pending.size() >= Constants.MAX_PACKET_SPLITS) {
+				throw new DecoderException("Too many out of order split packet parts, max: " + Constants.MAX_PACKET_SPLITS);
+			}
+			sequence.pending.put(splitIndex, packet.retain());
+			pendingBytes += packet.getDataSize();
+			return;
+		}
+		if (splitIndex == 0) {
+			ByteBuf data = packet.getData();
+			if (!data.isReadable() || (data.getUnsignedByte(data.readerIndex()) != userPacketId)) {
+				//not user data, move already received parts to assembler
+				sequences.remove(splitID);
+				addAssembled(packet, list);
+				for (EncapsulatedPacket pending : sequence.pending.values()) {
+					pendingBytes -= pending.getDataSize();
+					addAssembled(pending, list);
+					pending.release();
+				}
+				return;
+			}
+			list.add(packet.replaceData(data.retainedSlice(data.readerIndex() + 1, data.readableBytes() - 1)));
+		} else {
+			list.add(packet.retain());
+		}
+		sequence.nextIndex++;
+		EncapsulatedPacket pending;
+		while ((pending = sequence.pending.remove(sequence.nextIndex)) != null) {
+			pendingBytes -= pending.getDataSize();
+			list.add(pending);
+			sequence.nextIndex++;
+		}
+		if (sequence.nextIndex == sequence.splitCount) {
+			sequences.remove(splitID);
+			addCompleted(packet);
+		}
+	}
+
+	protected void addAssembled(EncapsulatedPacket packet, List<Object> list) {
+		EncapsulatedPacket full = assembler.add(packet);
+		if (full != null) {
+			list.add(full);
+			addCompleted(packet);
+		}
+	}
+
+	protected static long getCompletedKey(EncapsulatedPacket packet) {
+		return ((long) packet.getSplitId() << 32) | ((long) packet.getOrderChannel() << 24) | packet.getOrderIndex();
+	}
+
+	protected void addCompleted(EncapsulatedPacket packet) {
+		if (completed == null) {
+			completed = new long[COMPLETED_HISTORY];
+			Arrays.fill(completed, -1);
+		}
+		completed[completedHead] = getCompletedKey(packet);
+		completedHead = (completedHead + 1) % COMPLETED_HISTORY;
+	}
+
+	protected boolean isCompleted(EncapsulatedPacket packet) {
+		if (completed == null) {
+			return false;
+		}
+		long key = getCompletedKey(packet);
+		for (long completedKey : completed) {
+			if (completedKey == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public long getBytes() {
+		return pendingBytes + assembler.getBytes();
+	}
+
+	public void release() {
+		for (SplitSequence sequence : sequences.values()) {
+			release(sequence);
+		}
+		sequences.clear();
+		assembler.release();
+	}
+
+	protected void release(SplitSequence sequence) {
+		for (EncapsulatedPacket pending : sequence.pending.values()) {
+			pendingBytes -= pending.getDataSize();
+			pending.release();
+		}
+		sequence.pending.clear();
+	}
+
+	protected static final class SplitSequence {
+
+		protected final int splitCount;
+		protected final int orderChannel;
+		protected final int orderIndex;
+		protected final Int2ObjectOpenHashMap<EncapsulatedPacket> pending = new Int2ObjectOpenHashMap<>();
+		protected int nextIndex;
+
+		protected SplitSequence(EncapsulatedPacket packet) {
+			this.splitCount = packet.getSplitCount();
+			this.orderChannel = packet.getOrderChannel();
+			this.orderIndex = packet.getOrderIndex();
+		}
+
+	}
+
+}
@@ -0,0 +1,152 @@
+package raknetserver.pipeline.fused;
+
+import java.util.ArrayList;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.util.ReferenceCountUtil;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.pipeline.encapsulated.OrderedChannels;
+import raknetserver.pipeline.encapsulated.SplitPacketAssembler;
+import raknetserver.pipeline.internal.InternalPacketDecoder;
+import raknetserver.pipeline.internal.InternalPacketEncoder;
+import raknetserver.pipeline.internal.InternalPacketWriteHandler;
+import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler;
+import raknetserver.pipeline.raknet.RakNetPacketReliabilityHandler;
+import raknetserver.session.MemoryGovernor;
+
+//decodes encapsulated data datagrams in a single pass: datagram header, encapsulated packets, split packets reassembly, ordering and internal packet id
+//user data is fired as a slice of the datagram after internal handlers, other internal packets are fired to the internal packet read handler
+//all other datagrams (connection establishment, acks) are passed to the regular raknet packet decoder
+public class FusedInboundDecoder extends ChannelInboundHandlerAdapter {
+
+	protected final int userPacketId;
+	protected final SplitPacketAssembler assembler = new SplitPacketAssembler();
+	protected final OrderedChannels orderedChannels = new OrderedChannels();
+	protected final ArrayList<Object> ordered = new ArrayList<>();
+	protected long charged;
+
+	protected RakNetPacketConnectionEstablishHandler connectHandler;
+	protected RakNetPacketReliabilityHandler reliabilityHandler;
+	protected ChannelHandlerContext reliabilityCtx;
+	protected ChannelHandlerContext internalCtx;
+	protected ChannelHandlerContext userCtx;
+
+	public FusedInboundDecoder(int userPacketId) {
+		this.userPacketId = userPacketId;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof ByteBuf) {
+			ByteBuf buf = (ByteBuf) msg;
+			if (buf.isReadable() && isEncapsulatedData(buf.getUnsignedByte(buf.readerIndex())) && isConnected(ctx)) {
+				try {
+					decodeDatagram(buf);
+				} finally {
+					buf.release();
+					updateMemory(ctx);
+				}
+				return;
+			}
+		}
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		assembler.release();
+		orderedChannels.release();
+		if (charged != 0) {
+			MemoryGovernor.getAccount(ctx.channel()).charge(-charged);
+			charged = 0;
+		}
+		super.handlerRemoved(ctx);
+	}
+
+	protected void updateMemory(ChannelHandlerContext ctx) {
+		long bytes = assembler.getBytes() + orderedChannels.getQueuedBytes();
+		if (bytes != charged) {
+			MemoryGovernor.getAccount(ctx.channel()).charge(bytes - charged);
+			charged = bytes;
+		}
+	}
+
+	protected static boolean isEncapsulatedData(int packetId) {
+		return (packetId >= 0x80) && (packetId <= 0x8f);
+	}
+
+	protected boolean isConnected(ChannelHandlerContext ctx) {
+		if (connectHandler == null) {
+			ChannelPipeline pipeline = ctx.pipeline();
+			connectHandler = pipeline.get(RakNetPacketConnectionEstablishHandler.class);
+			reliabilityHandler = pipeline.get(RakNetPacketReliabilityHandler.class);
+			reliabilityCtx = pipeline.context(reliabilityHandler);
+			internalCtx = pipeline.context(InternalPacketEncoder.class);
+			userCtx = pipeline.context(InternalPacketWriteHandler.class);
+		}
+		return connectHandler.isConnected();
+	}
+
+	protected void decodeDatagram(ByteBuf buf) {
+		buf.skipBytes(1); //packet id
+		if (!reliabilityHandler.handleDatagramSeqId(reliabilityCtx, buf.readUnsignedMediumLE())) {
+			return;
+		}
+		while (buf.isReadable()) {
+			EncapsulatedPacket packet = new EncapsulatedPacket();
+			packet.decodeRetained(buf);
+			try {
+				if (packet.hasSplit()) {
+					EncapsulatedPacket full = assembler.add(packet);
+					if (full != null) {
+						try {
+							decodeOrdered(full);
+						} finally {
+							full.release();
+						}
+					}
+				} else {
+					decodeOrdered(packet);
+				}
+			} finally {
+				packet.release();
+			}
+		}
+	}
+
+	protected void decodeOrdered(EncapsulatedPacket packet) {
+		orderedChannels.decode(packet, ordered);
+		int index = 0;
+		try {
+			while (index < ordered.size()) {
+				decodeInternal((ByteBuf) ordered.get(index++));
+			}
+		} finally {
+			while (index < ordered.size()) {
+				ReferenceCountUtil.release(ordered.get(index++));
+			}
+			ordered.clear();
+		}
+	}
+
+	//takes ownership of the buffer
+	protected void decodeInternal(ByteBuf buf) {
+		if (!buf.isReadable()) {
+			buf.release();
+			return;
+		}
+		if (buf.getUnsignedByte(buf.readerIndex()) == userPacketId) {
+			userCtx.fireChannelRead(buf.skipBytes(1));
+		} else {
+			try {
+				internalCtx.fireChannelRead(InternalPacketDecoder.decodePacket(buf, userPacketId));
+			} finally {
+				buf.release();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package raknetserver.pipeline.internal;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.Promise;
+import raknetserver.packet.internal.InternalClientHandshake;
+import raknetserver.packet.internal.InternalConnectionRequest;
+import raknetserver.packet.internal.InternalMigrationChallenge;
+import raknetserver.packet.internal.InternalMigrationProof;
+import raknetserver.packet.internal.InternalServerHandshake;
+import raknetserver.utils.Clock;
+
+//client side of internal packets handling, connection is established once server handshake is answered
+public class InternalPacketClientReadHandler extends InternalPacketReadHandler {
+
+	protected final Promise<Channel> connectPromise;
+	//server timestamp of the server handshake, servers of this library put session migration token in it
+	protected long migrationToken;
+
+	public InternalPacketClientReadHandler(Promise<Channel> connectPromise) {
+		this.connectPromise = connectPromise;
+	}
+
+	@Override
+	protected void handleConnectionRequest(ChannelHandlerContext ctx, InternalConnectionRequest packet) {
+	}
+
+	@Override
+	protected void handleServerHandshake(ChannelHandlerContext ctx, InternalServerHandshake packet) {
+		if (connectPromise.isDone()) {
+			return;
+		}
+		migrationToken = packet.getServerTimestamp();
+		ctx.writeAndFlush(new InternalClientHandshake(getRemoteAddressEncoded(ctx), packet.getServerTimestamp(), Clock.get(ctx.channel()).currentTimeMillis()));
+		connectPromise.trySuccess(ctx.channel());
+	}
+
+	//challenge comes from the server after client address changed, proof lets server move the session to the new address
+	@Override
+	protected void handleMigrationChallenge(ChannelHandlerContext ctx, InternalMigrationChallenge packet) {
+		if (connectPromise.isSuccess()) {
+			ctx.writeAndFlush(new InternalMigrationProof(packet.getNonce(), InternalMigrationProof.sign(migrationToken, packet.getNonce())));
+		}
+	}
+
+}
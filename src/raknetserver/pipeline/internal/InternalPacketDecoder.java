@@ -3,6 +3,7 @@ package raknetserver.pipeline.internal;
 import java.util.List;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.MessageToMessageDecoder;
@@ -10,6 +11,7 @@ import raknetserver.packet.internal.InternalPacket;
 import raknetserver.packet.internal.InternalPacketRegistry;
 import raknetserver.packet.internal.InternalUserData;
 
+@Sharable
 public class InternalPacketDecoder extends MessageToMessageDecoder<ByteBuf> {
 
 	private final int userPacketId;
@@ -22,13 +24,17 @@ public class InternalPacketDecoder extends MessageToMessageDecoder<ByteBuf> {
 		if (!buf.isReadable()) {
 			return;
 		}
+		list.add(decodePacket(buf, userPacketId));
+	}
+
+	public static InternalPacket decodePacket(ByteBuf buf, int userPacketId) {
 		int packetId = buf.readUnsignedByte();
 		InternalPacket packet = packetId == userPacketId ? new InternalUserData() : InternalPacketRegistry.getPacket(packetId);
 		packet.decode(buf);
 		if (buf.readableBytes() > 0) {
 			throw new DecoderException(buf.readableBytes() + " bytes left after decoding packet " + packet.getClass());
 		}
-		list.add(packet);
+		return packet;
 	}
 
 }
@@ -1,13 +1,19 @@
 package raknetserver.pipeline.internal;
 
+import java.util.List;
+
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetMessage;
 import raknetserver.packet.internal.InternalPacket;
 import raknetserver.packet.internal.InternalPacketRegistry;
 import raknetserver.packet.internal.InternalUserData;
 
-public class InternalPacketEncoder extends MessageToByteEncoder<InternalPacket> {
+@Sharable
+public class InternalPacketEncoder extends MessageToMessageEncoder<InternalPacket> {
 
 	private final int userPacketId;
 	public InternalPacketEncoder(int userPacketId) {
@@ -15,10 +21,25 @@ public class InternalPacketEncoder extends MessageToByteEncoder<InternalPacket>
 	}
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, InternalPacket packet, ByteBuf buf) throws Exception {
+	protected void encode(ChannelHandlerContext ctx, InternalPacket packet, List<Object> list) throws Exception {
 		int packetId = packet instanceof InternalUserData ? userPacketId : InternalPacketRegistry.getId(packet);
-		buf.writeByte(packetId);
-		packet.encode(buf);
+		ByteBuf buf = ctx.alloc().ioBuffer();
+		try {
+			buf.writeByte(packetId);
+			packet.encode(buf);
+		} catch (Throwable t) {
+			buf.release();
+			throw t;
+		}
+		if (packet.isReliable()) {
+			list.add(new RakNetMessage(buf, packet.getPriority()));
+		} else {
+			//bypasses order index assignment, order index and channel are not sent for unreliable packets
+			EncapsulatedPacket epacket = new EncapsulatedPacket(buf, 0, 0, 0);
+			epacket.setReliability(EncapsulatedPacket.UNRELIABLE);
+			epacket.setPriority(packet.getPriority());
+			list.add(epacket);
+		}
 	}
 
 }
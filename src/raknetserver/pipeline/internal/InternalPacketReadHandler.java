@@ -2,17 +2,23 @@ package raknetserver.pipeline.internal;
 
 import java.net.InetSocketAddress;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.RakNetDataSerializer;
 import raknetserver.packet.internal.InternalClientHandshake;
 import raknetserver.packet.internal.InternalConnectionRequest;
 import raknetserver.packet.internal.InternalDisconnect;
+import raknetserver.packet.internal.InternalMigrationChallenge;
+import raknetserver.packet.internal.InternalMigrationProof;
 import raknetserver.packet.internal.InternalPacket;
 import raknetserver.packet.internal.InternalPing;
 import raknetserver.packet.internal.InternalPong;
 import raknetserver.packet.internal.InternalServerHandshake;
 import raknetserver.packet.internal.InternalUserData;
+import raknetserver.utils.Clock;
 import raknetserver.utils.PacketHandlerRegistry;
 
 public class InternalPacketReadHandler extends SimpleChannelInboundHandler<InternalPacket> {
@@ -21,10 +27,13 @@ public class InternalPacketReadHandler extends SimpleChannelInboundHandler<Inter
 	static {
 		registry.register(InternalConnectionRequest.class, (ctx, handler, packet) -> handler.handleConnectionRequest(ctx, packet));
 		registry.register(InternalClientHandshake.class, (ctx, handler, packet) -> handler.handleHandshake(ctx, packet));
+		registry.register(InternalServerHandshake.class, (ctx, handler, packet) -> handler.handleServerHandshake(ctx, packet));
 		registry.register(InternalPing.class, (ctx, handler, packet) -> handler.handlePing(ctx, packet));
 		registry.register(InternalPong.class, (ctx, handler, packet) -> handler.handlePong(ctx, packet));
 		registry.register(InternalUserData.class, (ctx, handler, packet) -> handler.handleUserData(ctx, packet));
 		registry.register(InternalDisconnect.class, (ctx, handler, packet) -> handler.handleDisconnect(ctx, packet));
+		registry.register(InternalMigrationChallenge.class, (ctx, handler, packet) -> handler.handleMigrationChallenge(ctx, packet));
+		registry.register(InternalMigrationProof.class, (ctx, handler, packet) -> handler.handleMigrationProof(ctx, packet));
 	}
 
 	@Override
@@ -32,15 +41,30 @@ public class InternalPacketReadHandler extends SimpleChannelInboundHandler<Inter
 		registry.handle(ctx, this, packet);
 	}
 
+	protected ByteBuf remoteAddressEncoded;
+
+	//handshakes can be resent, so address of the peer is encoded only once per connection
+	protected ByteBuf getRemoteAddressEncoded(ChannelHandlerContext ctx) {
+		if (remoteAddressEncoded == null) {
+			remoteAddressEncoded = RakNetDataSerializer.encodeAddress((InetSocketAddress) ctx.channel().remoteAddress());
+		}
+		return remoteAddressEncoded;
+	}
+
 	protected void handleConnectionRequest(ChannelHandlerContext ctx, InternalConnectionRequest packet) {
-		ctx.writeAndFlush(new InternalServerHandshake((InetSocketAddress) ctx.channel().remoteAddress(), packet.getTimeStamp()));
+		//server timestamp is only echoed back by clients, so it carries the session migration token instead
+		long serverTimestamp = ctx.channel().hasAttr(RakNetConstants.SESSION) ? ctx.channel().attr(RakNetConstants.SESSION).get().getMigrationToken() : Clock.get(ctx.channel()).currentTimeMillis();
+		ctx.writeAndFlush(new InternalServerHandshake(getRemoteAddressEncoded(ctx), packet.getTimeStamp(), serverTimestamp));
 	}
 
 	protected void handleHandshake(ChannelHandlerContext ctx, InternalClientHandshake packet) {
 	}
 
+	protected void handleServerHandshake(ChannelHandlerContext ctx, InternalServerHandshake packet) {
+	}
+
 	protected void handlePing(ChannelHandlerContext ctx, InternalPing packet) {
-		ctx.writeAndFlush(new InternalPong(packet.getTimestamp()));
+		ctx.writeAndFlush(new InternalPong(packet.getTimestamp(), Clock.get(ctx.channel()).currentTimeMillis()));
 	}
 
 	protected void handlePong(ChannelHandlerContext ctx, InternalPong packet) {
@@ -54,4 +78,11 @@ public class InternalPacketReadHandler extends SimpleChannelInboundHandler<Inter
 		ctx.channel().close();
 	}
 
+	protected void handleMigrationChallenge(ChannelHandlerContext ctx, InternalMigrationChallenge packet) {
+	}
+
+	//proof is checked by the migration handler of the new transport before the datagram reaches the session
+	protected void handleMigrationProof(ChannelHandlerContext ctx, InternalMigrationProof packet) {
+	}
+
 }
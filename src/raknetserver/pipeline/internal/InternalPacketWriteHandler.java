@@ -3,16 +3,41 @@ package raknetserver.pipeline.internal;
 import java.util.List;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
-import raknetserver.packet.internal.InternalUserData;
-import raknetserver.utils.Utils;
+import raknetserver.packet.RakNetMessage;
+import raknetserver.packet.RakNetStreamMessage;
 
-public class InternalPacketWriteHandler extends MessageToMessageEncoder<ByteBuf> {
+//user data is not copied, packet id and user data are composed instead, so data is copied only when datagram is encoded
+@Sharable
+public class InternalPacketWriteHandler extends MessageToMessageEncoder<Object> {
+
+	private final ByteBuf userPacketId;
+	public InternalPacketWriteHandler(int userPacketId) {
+		this.userPacketId = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(new byte[] { (byte) userPacketId }));
+	}
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> list) throws Exception {
-		list.add(new InternalUserData(Utils.readBytes(buf)));
+	public boolean acceptOutboundMessage(Object msg) {
+		return (msg instanceof ByteBuf) || (msg instanceof RakNetMessage) || (msg instanceof RakNetStreamMessage);
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> list) throws Exception {
+		if (msg instanceof RakNetMessage) {
+			RakNetMessage message = (RakNetMessage) msg;
+			list.add(message.replace(compose(message.content())));
+		} else if (msg instanceof RakNetStreamMessage) {
+			list.add(((RakNetStreamMessage) msg).retain().setHeader(userPacketId.duplicate()));
+		} else {
+			list.add(compose((ByteBuf) msg));
+		}
+	}
+
+	protected ByteBuf compose(ByteBuf buf) {
+		return Unpooled.wrappedBuffer(userPacketId.duplicate(), buf.retain());
 	}
 
 }
@@ -0,0 +1,212 @@
+package raknetserver.pipeline.raknet;
+
+import java.util.ArrayDeque;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.EncapsulatedPacketStream;
+import raknetserver.packet.RakNetPriority;
+
+//queue of packets waiting to be sent
+//immediate priority packets are always polled first, other priorities get datagram slots according to their weight
+//inside a priority order channels are polled round robin, so big split packets don't block small packets of other channels
+//packet streams stay in the queue until all their split packets are polled, split packets are created only when polled
+//queued bytes count only packets that are already in memory, stream split packets are not counted until polled
+public class OutboundPacketQueue {
+
+	protected static final RakNetPriority[] priorities = RakNetPriority.values();
+
+	protected final PriorityLevel[] queues = new PriorityLevel[priorities.length];
+	protected final int[] credits = new int[priorities.length];
+	protected int size;
+	protected long bytes;
+
+	public void add(EncapsulatedPacket packet) {
+		getQueue(packet.getPriority()).add(packet.getOrderChannel(), packet);
+		size++;
+		bytes += packet.getEncodedSize();
+	}
+
+	public void add(EncapsulatedPacketStream stream) {
+		getQueue(stream.getPriority()).add(stream.getOrderChannel(), stream);
+		size++;
+	}
+
+	//returns packet back to the head of its order channel queue
+	public void addFirst(EncapsulatedPacket packet) {
+		getQueue(packet.getPriority()).addFirst(packet.getOrderChannel(), packet);
+		size++;
+		bytes += packet.getEncodedSize();
+	}
+
+	public EncapsulatedPacket poll(ByteBufAllocator alloc) {
+		if (size == 0) {
+			return null;
+		}
+		PriorityLevel queue = selectQueue();
+		int prevSize = queue.size;
+		boolean fromStream = queue.isStreamHead();
+		try {
+			EncapsulatedPacket packet = queue.poll(alloc);
+			if (!fromStream) {
+				bytes -= packet.getEncodedSize();
+			}
+			return packet;
+		} finally {
+			size -= prevSize - queue.size;
+		}
+	}
+
+	//queued packets and streams count
+	public int size() {
+		return size;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean hasImmediate() {
+		PriorityLevel queue = queues[RakNetPriority.IMMEDIATE.ordinal()];
+		return (queue != null) && !queue.isEmpty();
+	}
+
+	public void release() {
+		for (PriorityLevel queue : queues) {
+			if (queue != null) {
+				queue.release();
+			}
+		}
+		size = 0;
+		bytes = 0;
+	}
+
+	protected PriorityLevel getQueue(RakNetPriority priority) {
+		PriorityLevel queue = queues[priority.ordinal()];
+		if (queue == null) {
+			queue = new PriorityLevel();
+			queues[priority.ordinal()] = queue;
+		}
+		return queue;
+	}
+
+	protected PriorityLevel selectQueue() {
+		if (hasImmediate()) {
+			return queues[RakNetPriority.IMMEDIATE.ordinal()];
+		}
+		for (int attempt = 0; attempt < 2; attempt++) {
+			for (int i = 1; i < priorities.length; i++) {
+				PriorityLevel queue = queues[i];
+				if ((queue != null) && !queue.isEmpty() && (credits[i] > 0)) {
+					credits[i]--;
+					return queue;
+				}
+			}
+			//all non empty priorities used their share, start new round
+			for (int i = 1; i < priorities.length; i++) {
+				credits[i] = priorities[i].getWeight();
+			}
+		}
+		throw new IllegalStateException("Queue size is " + size + ", but all priority queues are empty");
+	}
+
+	protected static class PriorityLevel {
+
+		//non empty order channel queues, polled round robin
+		protected final ArrayDeque<ArrayDeque<Object>> active = new ArrayDeque<>();
+		protected ArrayDeque<Object>[] channels = newChannels(1);
+		protected int size;
+
+		@SuppressWarnings("unchecked")
+		protected static ArrayDeque<Object>[] newChannels(int count) {
+			return new ArrayDeque[count];
+		}
+
+		protected ArrayDeque<Object> getChannel(int orderChannel) {
+			if (orderChannel >= channels.length) {
+				ArrayDeque<Object>[] nchannels = newChannels(orderChannel + 1);
+				System.arraycopy(channels, 0, nchannels, 0, channels.length);
+				channels = nchannels;
+			}
+			ArrayDeque<Object> channel = channels[orderChannel];
+			if (channel == null) {
+				channel = new ArrayDeque<>();
+				channels[orderChannel] = channel;
+			}
+			return channel;
+		}
+
+		protected void add(int orderChannel, Object packet) {
+			ArrayDeque<Object> channel = getChannel(orderChannel);
+			if (channel.isEmpty()) {
+				active.addLast(channel);
+			}
+			channel.addLast(packet);
+			size++;
+		}
+
+		protected void addFirst(int orderChannel, Object packet) {
+			ArrayDeque<Object> channel = getChannel(orderChannel);
+			if (channel.isEmpty()) {
+				active.addFirst(channel);
+			}
+			channel.addFirst(packet);
+			size++;
+		}
+
+		protected boolean isStreamHead() {
+			return active.peekFirst().peekFirst() instanceof EncapsulatedPacketStream;
+		}
+
+		protected EncapsulatedPacket poll(ByteBufAllocator alloc) {
+			ArrayDeque<Object> channel = active.pollFirst();
+			try {
+				Object head = channel.peekFirst();
+				if (head instanceof EncapsulatedPacketStream) {
+					EncapsulatedPacketStream stream = (EncapsulatedPacketStream) head;
+					boolean finished = true;
+					try {
+						EncapsulatedPacket packet = stream.next(alloc);
+						finished = !stream.hasNext();
+						return packet;
+					} finally {
+						if (finished) {
+							channel.pollFirst();
+							size--;
+							stream.release();
+						}
+					}
+				} else {
+					size--;
+					return (EncapsulatedPacket) channel.pollFirst();
+				}
+			} finally {
+				if (!channel.isEmpty()) {
+					active.addLast(channel);
+				}
+			}
+		}
+
+		protected boolean isEmpty() {
+			return active.isEmpty();
+		}
+
+		protected void release() {
+			for (ArrayDeque<Object> channel : active) {
+				for (Object packet : channel) {
+					ReferenceCountUtil.release(packet);
+				}
+				channel.clear();
+			}
+			active.clear();
+			size = 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,163 @@
+package raknetserver.pipeline.raknet;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.concurrent.Promise;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.internal.InternalConnectionRequest;
+import raknetserver.packet.raknet.RakNetConnectionFailed;
+import raknetserver.packet.raknet.RakNetConnectionReply1;
+import raknetserver.packet.raknet.RakNetConnectionReply2;
+import raknetserver.packet.raknet.RakNetConnectionRequest1;
+import raknetserver.packet.raknet.RakNetConnectionRequest2;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
+import raknetserver.packet.raknet.RakNetInvalidVersion;
+import raknetserver.packet.raknet.RakNetNoFreeIncomingConnections;
+import raknetserver.packet.raknet.RakNetPacket;
+import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
+import raknetserver.packet.raknet.RakNetReliability.RakNetNACK;
+import raknetserver.session.RakNetSession;
+import raknetserver.utils.Clock;
+import raknetserver.utils.Constants;
+import raknetserver.utils.PackedAddress;
+import raknetserver.utils.PacketHandlerRegistry;
+
+//client side of connection establishment, requests are resent until server replies
+//if server doesn't reply to the first half of attempts, smaller mtu is requested, in case big datagrams are dropped on the way
+public class RakNetClientConnectionEstablishHandler extends SimpleChannelInboundHandler<RakNetPacket> {
+
+	protected static final int MIN_MTU = 576;
+
+	protected static final PacketHandlerRegistry<RakNetClientConnectionEstablishHandler, RakNetPacket> registry = new PacketHandlerRegistry<>();
+	static {
+		registry.register(RakNetConnectionReply1.class, (ctx, handler, packet) -> handler.handleConnectionReply1(ctx, packet));
+		registry.register(RakNetConnectionReply2.class, (ctx, handler, packet) -> handler.handleConnectionReply2(ctx, packet));
+		registry.register(RakNetInvalidVersion.class, (ctx, handler, packet) -> handler.fail(ctx, new DecoderException("Server requires RakNet protocol version " + packet.getVersion())));
+		registry.register(RakNetConnectionFailed.class, (ctx, handler, packet) -> handler.fail(ctx, new DecoderException("Server refused connection")));
+		registry.register(RakNetNoFreeIncomingConnections.class, (ctx, handler, packet) -> handler.fail(ctx, new DecoderException("Server is full")));
+		registry.register(RakNetEncapsulatedData.class, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
+		registry.register(RakNetACK.class, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
+		registry.register(RakNetNACK.class, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
+	}
+
+	protected final Promise<Channel> connectPromise;
+	protected final int mtu;
+	protected final long guid;
+	public RakNetClientConnectionEstablishHandler(Promise<Channel> connectPromise, int mtu, long guid) {
+		this.connectPromise = connectPromise;
+		this.mtu = mtu;
+		this.guid = guid;
+	}
+
+	protected State state = State.NEW;
+	protected int attempts;
+	protected int negotiatedMtu;
+	protected Future<?> retryTask;
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		sendRequest(ctx);
+		retryTask = Clock.get(ctx.channel()).scheduleAtFixedRate(ctx.executor(), () -> retry(ctx), Constants.CLIENT_CONNECT_RETRY_INTERVAL, Constants.CLIENT_CONNECT_RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+		super.channelActive(ctx);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		cancelRetry();
+		connectPromise.tryFailure(new ClosedChannelException());
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, RakNetPacket packet) throws Exception {
+		registry.handle(ctx, this, packet);
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		if (state == State.CONNECTED) {
+			ctx.fireExceptionCaught(cause);
+		} else {
+			fail(ctx, cause);
+		}
+	}
+
+	protected void retry(ChannelHandlerContext ctx) {
+		if (++attempts >= Constants.CLIENT_CONNECT_ATTEMPTS) {
+			fail(ctx, new ConnectTimeoutException("Server didn't reply after " + attempts + " attempts"));
+		} else {
+			sendRequest(ctx);
+		}
+	}
+
+	protected void sendRequest(ChannelHandlerContext ctx) {
+		if (state == State.NEW) {
+			int requestMtu = attempts < (Constants.CLIENT_CONNECT_ATTEMPTS >> 1) ? mtu : Math.min(mtu, MIN_MTU);
+			ctx.writeAndFlush(new RakNetConnectionRequest1(RakNetInvalidVersion.VALID_VERSION, requestMtu)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+		} else if (state == State.REQUESTED) {
+			ctx.writeAndFlush(new RakNetConnectionRequest2((InetSocketAddress) ctx.channel().remoteAddress(), negotiatedMtu, guid)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+		}
+	}
+
+	protected void handleConnectionReply1(ChannelHandlerContext ctx, RakNetConnectionReply1 connectionReply1) {
+		if (state == State.NEW) {
+			state = State.REQUESTED;
+			negotiatedMtu = Math.min(connectionReply1.getMtu(), mtu);
+			sendRequest(ctx);
+		}
+	}
+
+	//after reply 2 connection is established on the raknet level, internal handshake is done using reliable packets
+	protected void handleConnectionReply2(ChannelHandlerContext ctx, RakNetConnectionReply2 connectionReply2) {
+		if (state == State.REQUESTED) {
+			state = State.CONNECTED;
+			cancelRetry();
+			Channel channel = ctx.channel();
+			channel.attr(RakNetConstants.MTU).set(connectionReply2.getMtu());
+			channel.attr(RakNetConstants.SESSION).set(new RakNetSession(channel, guid, PackedAddress.of((InetSocketAddress) channel.remoteAddress())));
+			channel.writeAndFlush(new InternalConnectionRequest(guid, Clock.get(channel).currentTimeMillis())).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+		}
+	}
+
+	protected void fail(ChannelHandlerContext ctx, Throwable cause) {
+		cancelRetry();
+		connectPromise.tryFailure(cause);
+		ctx.close();
+	}
+
+	protected void cancelRetry() {
+		if (retryTask != null) {
+			retryTask.cancel(false);
+			retryTask = null;
+		}
+	}
+
+	public boolean isConnected() {
+		return state == State.CONNECTED;
+	}
+
+	protected void fireNext(ChannelHandlerContext ctx, RakNetPacket packet) {
+		//reply 2 was lost, but server already sends reliable packets (pings), those are dropped and will be resent once request 2 retry is answered
+		if (state == State.REQUESTED) {
+			return;
+		}
+		if (state != State.CONNECTED) {
+			throw new IllegalStateException("Can't handle packet " + packet.getClass() + ", connection is not established yet");
+		}
+		ctx.fireChannelRead(packet);
+	}
+
+	protected static enum State {
+		NEW, REQUESTED, CONNECTED
+	}
+
+}
@@ -0,0 +1,19 @@
+package raknetserver.pipeline.raknet;
+
+import java.util.List;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+//connected datagram channels read datagram packets, while rest of the pipeline expects only their content, the same way udp server child channels provide it
+@Sharable
+public class RakNetDatagramDecoder extends MessageToMessageDecoder<DatagramPacket> {
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, DatagramPacket packet, List<Object> list) throws Exception {
+		list.add(packet.content().retain());
+	}
+
+}
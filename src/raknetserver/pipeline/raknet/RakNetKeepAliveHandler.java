@@ -0,0 +1,94 @@
+package raknetserver.pipeline.raknet;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.ReadTimeoutException;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.internal.InternalPing;
+import raknetserver.utils.Clock;
+
+//read timeout and connected session pings use single periodic task, instead of a read timeout handler with its own task and a separate ping task
+public class RakNetKeepAliveHandler extends ChannelInboundHandlerAdapter {
+
+	protected final long timeoutNanos;
+	protected Clock clock = Clock.SYSTEM;
+	protected long lastReadTime;
+	protected Future<?> task;
+
+	public RakNetKeepAliveHandler(long timeout, TimeUnit unit) {
+		this.timeoutNanos = unit.toNanos(timeout);
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) {
+		if (ctx.channel().isActive() && ctx.channel().isRegistered()) {
+			initialize(ctx);
+		}
+	}
+
+	@Override
+	public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.channel().isActive()) {
+			initialize(ctx);
+		}
+		super.channelRegistered(ctx);
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		initialize(ctx);
+		super.channelActive(ctx);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		destroy();
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) {
+		destroy();
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) {
+		lastReadTime = clock.nanoTime();
+		ctx.fireChannelRead(msg);
+	}
+
+	protected void initialize(ChannelHandlerContext ctx) {
+		if (task != null) {
+			return;
+		}
+		clock = Clock.get(ctx.channel());
+		lastReadTime = clock.nanoTime();
+		task = clock.scheduleAtFixedRate(ctx.executor(), () -> tick(ctx), 1, 1, TimeUnit.SECONDS);
+	}
+
+	protected void destroy() {
+		if (task != null) {
+			task.cancel(false);
+		}
+	}
+
+	protected void tick(ChannelHandlerContext ctx) {
+		if ((clock.nanoTime() - lastReadTime) >= timeoutNanos) {
+			destroy();
+			ctx.fireExceptionCaught(ReadTimeoutException.INSTANCE);
+			ctx.close();
+			return;
+		}
+		//only channels of established sessions are pinged, session transport channels are not
+		Channel channel = ctx.channel();
+		if (channel.hasAttr(RakNetConstants.SESSION)) {
+			channel.writeAndFlush(new InternalPing(clock.currentTimeMillis())).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+		}
+	}
+
+}
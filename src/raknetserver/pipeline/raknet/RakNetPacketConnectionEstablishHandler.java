@@ -1,14 +1,12 @@
 package raknetserver.pipeline.raknet;
 
-import java.util.concurrent.TimeUnit;
+import java.net.InetSocketAddress;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.util.concurrent.ScheduledFuture;
 import raknetserver.packet.RakNetConstants;
-import raknetserver.packet.internal.InternalPing;
 import raknetserver.packet.raknet.RakNetConnectionFailed;
 import raknetserver.packet.raknet.RakNetConnectionReply1;
 import raknetserver.packet.raknet.RakNetConnectionReply2;
@@ -16,11 +14,17 @@ import raknetserver.packet.raknet.RakNetConnectionRequest1;
 import raknetserver.packet.raknet.RakNetConnectionRequest2;
 import raknetserver.packet.raknet.RakNetEncapsulatedData;
 import raknetserver.packet.raknet.RakNetInvalidVersion;
+import raknetserver.packet.raknet.RakNetNoFreeIncomingConnections;
 import raknetserver.packet.raknet.RakNetPacket;
 import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
 import raknetserver.packet.raknet.RakNetReliability.RakNetNACK;
 import raknetserver.packet.raknet.RakNetUnconnectedPing;
 import raknetserver.packet.raknet.RakNetUnconnectedPong;
+import raknetserver.session.LoadMonitor;
+import raknetserver.session.RakNetSession;
+import raknetserver.session.RakNetSessionTable;
+import raknetserver.utils.Constants;
+import raknetserver.utils.PackedAddress;
 import raknetserver.utils.PacketHandlerRegistry;
 
 public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInboundHandler<RakNetPacket> {
@@ -35,9 +39,25 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 		registry.register(RakNetNACK.class, (ctx, handler, packet) -> handler.fireNext(ctx, packet));
 	}
 
+	protected static final boolean REJECT_AS_FULL = Constants.OVERLOAD_REJECT_REPLY.equalsIgnoreCase("full");
+
 	protected final PingHandler pinghandler;
-	public RakNetPacketConnectionEstablishHandler(PingHandler pinghandler) {
+	protected final RakNetSessionTable sessions;
+	protected final LoadMonitor loadMonitor;
+	protected final ConnectionInitializer connectionInitializer;
+	public RakNetPacketConnectionEstablishHandler(PingHandler pinghandler, RakNetSessionTable sessions) {
+		this(pinghandler, sessions, LoadMonitor.DISABLED);
+	}
+
+	public RakNetPacketConnectionEstablishHandler(PingHandler pinghandler, RakNetSessionTable sessions, LoadMonitor loadMonitor) {
+		this(pinghandler, sessions, loadMonitor, channel -> {});
+	}
+
+	public RakNetPacketConnectionEstablishHandler(PingHandler pinghandler, RakNetSessionTable sessions, LoadMonitor loadMonitor, ConnectionInitializer connectionInitializer) {
 		this.pinghandler = pinghandler;
+		this.sessions = sessions;
+		this.loadMonitor = loadMonitor;
+		this.connectionInitializer = connectionInitializer;
 	}
 
 	protected State state = State.NEW;
@@ -47,8 +67,6 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 		registry.handle(ctx, this, packet);
 	}
 
-	protected ScheduledFuture<?> pingTask;
-
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
 		if (state == State.CONNECTED) {
@@ -60,14 +78,23 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 
 	@Override
 	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-		if (pingTask != null) {
-			pingTask.cancel(true);
+		if (session != null) {
+			sessions.unregister(session);
 		}
 		super.channelInactive(ctx);
 	}
 
+	//existing connections are protected by refusing new ones while node is overloaded
+	protected static RakNetPacket createOverloadedReply() {
+		return REJECT_AS_FULL ? new RakNetNoFreeIncomingConnections() : new RakNetConnectionFailed();
+	}
+
 	protected void handleConnectionRequest1(ChannelHandlerContext ctx, RakNetConnectionRequest1 connectionRequest1) {
-		if (connectionRequest1.getRakNetProtocolVersion() == RakNetInvalidVersion.VALID_VERSION) {
+		if ((state == State.NEW) && sessions.isClosed()) {
+			ctx.writeAndFlush(new RakNetConnectionFailed()).addListener(ChannelFutureListener.CLOSE);
+		} else if ((state == State.NEW) && loadMonitor.isOverloaded()) {
+			ctx.writeAndFlush(createOverloadedReply()).addListener(ChannelFutureListener.CLOSE);
+		} else if (connectionRequest1.getRakNetProtocolVersion() == RakNetInvalidVersion.VALID_VERSION) {
 			ctx.writeAndFlush(new RakNetConnectionReply1(connectionRequest1.getMtu())).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 		} else {
 			ctx.writeAndFlush(new RakNetInvalidVersion()).addListener(ChannelFutureListener.CLOSE);
@@ -75,18 +102,28 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 	}
 
 	protected long guid;
+	protected RakNetSession session;
 
 	protected void handleConnectionRequest2(ChannelHandlerContext ctx, RakNetConnectionRequest2 connectionRequest2) {
 		long nguid = connectionRequest2.getGUID();
+		if ((state == State.NEW) && sessions.isClosed()) {
+			ctx.writeAndFlush(new RakNetConnectionFailed()).addListener(ChannelFutureListener.CLOSE);
+			return;
+		}
+		if ((state == State.NEW) && loadMonitor.isOverloaded()) {
+			ctx.writeAndFlush(createOverloadedReply()).addListener(ChannelFutureListener.CLOSE);
+			return;
+		}
 		if (state == State.NEW) {
 			state = State.CONNECTED;
 			guid = nguid;
 			Channel channel = ctx.channel();
 			channel.attr(RakNetConstants.MTU).set(connectionRequest2.getMtu());
+			session = new RakNetSession(channel, guid, PackedAddress.of((InetSocketAddress) channel.remoteAddress()));
+			channel.attr(RakNetConstants.SESSION).set(session);
+			connectionInitializer.init(channel);
+			sessions.register(session);
 			ctx.writeAndFlush(new RakNetConnectionReply2(connectionRequest2.getMtu())).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-			pingTask = channel.eventLoop().scheduleAtFixedRate(() -> {
-				channel.writeAndFlush(new InternalPing()).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-			}, 1, 1, TimeUnit.SECONDS);
 		} else {
 			//if guid matches then it means that reply2 packet didn't arrive to the clients
 			//otherwise it means that it is actually a new client connecting using already taken ip+port
@@ -99,11 +136,22 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 	}
 
 	protected void handlePing(ChannelHandlerContext ctx, RakNetUnconnectedPing unconnectedPing) {
+		if (!loadMonitor.tryAcceptPing()) {
+			if (state == State.NEW) {
+				ctx.close();
+			}
+			return;
+		}
 		pinghandler.executeHandler(() -> {
-			ctx.writeAndFlush(new RakNetUnconnectedPong(unconnectedPing.getClientTime(), pinghandler.getServerInfo(ctx.channel()))).addListener(ChannelFutureListener.CLOSE);
+			String info = loadMonitor.getServerInfo(() -> pinghandler.getServerInfo(ctx.channel()));
+			ctx.writeAndFlush(new RakNetUnconnectedPong(unconnectedPing.getClientTime(), info)).addListener(ChannelFutureListener.CLOSE);
 		});
 	}
 
+	public boolean isConnected() {
+		return state == State.CONNECTED;
+	}
+
 	protected void fireNext(ChannelHandlerContext ctx, RakNetPacket packet) {
 		if (state != State.CONNECTED) {
 			throw new IllegalStateException("Can't handle packet " + packet.getClass() + ", connection is not established yet");
@@ -123,4 +171,11 @@ public class RakNetPacketConnectionEstablishHandler extends SimpleChannelInbound
 
 	}
 
+	//adds handlers that are needed only by established connections, session is already set at this point
+	public static interface ConnectionInitializer {
+
+		public void init(Channel channel);
+
+	}
+
 }
@@ -3,12 +3,14 @@ package raknetserver.pipeline.raknet;
 import java.util.List;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.MessageToMessageDecoder;
 import raknetserver.packet.raknet.RakNetPacket;
 import raknetserver.packet.raknet.RakNetPacketRegistry;
 
+@Sharable
 public class RakNetPacketDecoder extends MessageToMessageDecoder<ByteBuf> {
 
 	@Override
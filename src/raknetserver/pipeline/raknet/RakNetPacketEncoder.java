@@ -1,13 +1,26 @@
 package raknetserver.pipeline.raknet;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
 import raknetserver.packet.raknet.RakNetPacket;
 import raknetserver.packet.raknet.RakNetPacketRegistry;
 
+@Sharable
 public class RakNetPacketEncoder extends MessageToByteEncoder<RakNetPacket> {
 
+	@Override
+	protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, RakNetPacket packet, boolean preferDirect) throws Exception {
+		//encapsulated data size is known beforehand, so buffer is allocated with exact size and never resized
+		if (packet instanceof RakNetEncapsulatedData) {
+			int size = 1 + ((RakNetEncapsulatedData) packet).getEncodedSize();
+			return preferDirect ? ctx.alloc().ioBuffer(size, size) : ctx.alloc().heapBuffer(size, size);
+		}
+		return super.allocateBuffer(ctx, packet, preferDirect);
+	}
+
 	@Override
 	protected void encode(ChannelHandlerContext ctx, RakNetPacket packet, ByteBuf bytebuf) throws Exception {
 		bytebuf.writeByte(RakNetPacketRegistry.getId(packet));
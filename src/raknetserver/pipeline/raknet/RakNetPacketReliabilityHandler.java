@@ -1,22 +1,37 @@
 package raknetserver.pipeline.raknet;
 
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Promise;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 
 import raknetserver.RakNetServer;
 import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.EncapsulatedPacketStream;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.RakNetPriority;
 import raknetserver.packet.raknet.RakNetEncapsulatedData;
 import raknetserver.packet.raknet.RakNetPacket;
 import raknetserver.packet.raknet.RakNetReliability.REntry;
 import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
 import raknetserver.packet.raknet.RakNetReliability.RakNetNACK;
+import raknetserver.session.MemoryGovernor;
+import raknetserver.session.RakNetSession;
+import raknetserver.utils.Clock;
 import raknetserver.utils.Constants;
 import raknetserver.utils.PacketHandlerRegistry;
+import raknetserver.utils.SequenceWindow;
 import raknetserver.utils.UINT;
 
 public class RakNetPacketReliabilityHandler extends ChannelDuplexHandler {
@@ -29,12 +44,43 @@ public class RakNetPacketReliabilityHandler extends ChannelDuplexHandler {
         registry.register(RakNetNACK.class, (ctx, handler, packet) -> handler.handleNack(ctx, packet));
     }
 
+    //ipv6 + udp headers
+    protected static final int DATAGRAM_HEADERS_SIZE = 40 + 8;
+
+    //user defined writability bit of the channel outbound buffer that is controlled by queued and in flight bytes
+    public static final int WRITABILITY_INDEX = 1;
+
     protected final Int2ObjectOpenHashMap<RakNetEncapsulatedData> sentPackets = new Int2ObjectOpenHashMap<>();
+    protected final OutboundPacketQueue queue = new OutboundPacketQueue();
+    //reliable packets of lost datagrams, returned to the queue on next send
+    protected final ArrayList<EncapsulatedPacket> resent = new ArrayList<>();
 
-    protected int lastReceivedSeqId = 0;
+    protected final SequenceWindow receivedSeqIds = new SequenceWindow(1024);
+    //lowest seq id that wasn't checked for nack yet
+    protected int nackSeqId = 0;
+    protected Future<?> nackTask;
     protected int lastAckdId = 0;
     protected int nextSendSeqId = 0;
 
+    protected long inFlightBytes;
+    protected boolean overloaded;
+    protected long overloadedSince;
+    //pending bytes charged to the connection memory account
+    protected long charged;
+
+    protected Promise<Void> drainPromise;
+    //received seq ids are published to the session for migration lookups
+    protected RakNetSession session;
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        //attr would create the attribute, and other handlers check its presence
+        if (ctx.channel().hasAttr(RakNetConstants.SESSION)) {
+            session = ctx.channel().attr(RakNetConstants.SESSION).get();
+        }
+        super.handlerAdded(ctx);
+    }
+
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         if (msg instanceof RakNetPacket) {
@@ -46,38 +92,180 @@ public class RakNetPacketReliabilityHandler extends ChannelDuplexHandler {
 
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
-        if (msg instanceof EncapsulatedPacket) {
-            if (sentPackets.size() > Constants.MAX_PACKET_LOSS) {
+        if ((msg instanceof EncapsulatedPacket) || (msg instanceof EncapsulatedPacketStream)) {
+            if ((sentPackets.size() + queue.size()) > Constants.MAX_PACKET_LOSS) {
+                ReferenceCountUtil.release(msg);
                 throw new DecoderException("Too big packet loss (unconfirmed sent packets)");
             }
-            sendPacket(ctx, (EncapsulatedPacket) msg);
+            //packets are sent on flush, so multiple packets can be packed in one datagram
+            if (msg instanceof EncapsulatedPacket) {
+                queue.add((EncapsulatedPacket) msg);
+            } else {
+                queue.add((EncapsulatedPacketStream) msg);
+            }
             promise.trySuccess();
+            updateWritability(ctx);
         } else {
             ctx.writeAndFlush(msg, promise);
         }
     }
 
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        sendQueued(ctx);
+        ctx.flush();
+    }
+
+    public long getPendingBytes() {
+        return queue.getBytes() + inFlightBytes;
+    }
+
+    //channel becomes unwritable when queued and in flight bytes reach high water mark, and writable again when they fall below low water mark
+    //connection that stays overloaded for too long is closed, so it doesn't keep holding memory of the node
+    protected void updateWritability(ChannelHandlerContext ctx) {
+        final long pending = getPendingBytes();
+        if (pending != charged) {
+            MemoryGovernor.getAccount(ctx.channel()).charge(pending - charged);
+            charged = pending;
+        }
+        if (!overloaded && (pending >= Constants.WRITE_HIGH_WATER_MARK)) {
+            overloaded = true;
+            overloadedSince = Clock.get(ctx.channel()).nanoTime();
+            setWritable(ctx, false);
+        } else if (overloaded && (pending < Constants.WRITE_LOW_WATER_MARK)) {
+            overloaded = false;
+            setWritable(ctx, true);
+        } else if (overloaded && (Constants.OVERLOAD_DISCONNECT_TIMEOUT > 0) && ((Clock.get(ctx.channel()).nanoTime() - overloadedSince) > TimeUnit.MILLISECONDS.toNanos(Constants.OVERLOAD_DISCONNECT_TIMEOUT))) {
+            overloaded = false;
+            ctx.fireExceptionCaught(new DecoderException("Connection stayed overloaded for more than " + Constants.OVERLOAD_DISCONNECT_TIMEOUT + " ms"));
+            ctx.close();
+        }
+    }
+
+    protected void setWritable(ChannelHandlerContext ctx, boolean writable) {
+        final ChannelOutboundBuffer buffer = ctx.channel().unsafe().outboundBuffer();
+        if (buffer != null) {
+            buffer.setUserDefinedWritability(WRITABILITY_INDEX, writable);
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        for (RakNetEncapsulatedData packet : sentPackets.values()) {
+            packet.release();
+        }
+        sentPackets.clear();
+        inFlightBytes = 0;
+        resent.forEach(EncapsulatedPacket::release);
+        resent.clear();
+        queue.release();
+        if (charged != 0) {
+            MemoryGovernor.getAccount(ctx.channel()).charge(-charged);
+            charged = 0;
+        }
+        if (nackTask != null) {
+            nackTask.cancel(false);
+        }
+        super.handlerRemoved(ctx);
+    }
+
     protected void handleEncapsulatedData(ChannelHandlerContext ctx, RakNetEncapsulatedData packet) {
-        final int packetSeqId = packet.getSeqId();
-        final int seqIdDiff = UINT.B3.minusWrap(packetSeqId, lastReceivedSeqId);
-        if (seqIdDiff > 0) {
-            if (seqIdDiff > 1) {
-                ctx.writeAndFlush(new RakNetNACK(UINT.B3.plus(lastReceivedSeqId, 1),
-                        UINT.B3.minus(packetSeqId, 1))).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
-            }
-            lastReceivedSeqId = packetSeqId;
+        if (!handleDatagramSeqId(ctx, packet.getSeqId())) {
+            packet.release();
+            return;
         }
-        ctx.writeAndFlush(new RakNetACK(packetSeqId)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
         packet.getPackets().forEach(ctx::fireChannelRead); //read encapsulated packets
     }
 
+    //acknowledges received datagram and requests resend of the missing ones, returns false if datagram is a duplicate, ctx should be the context of this handler
+    //missing datagrams are nacked only once they are far enough behind the highest received one or after a delay, so reordered datagrams don't cause resends
+    public boolean handleDatagramSeqId(ChannelHandlerContext ctx, int packetSeqId) {
+        //duplicates are acked too, because ack of the original could be lost
+        ctx.writeAndFlush(new RakNetACK(packetSeqId)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        if (!receivedSeqIds.add(packetSeqId)) {
+            return false;
+        }
+        if (session != null) {
+            session.setReceivedSeqId(receivedSeqIds.getHighest());
+        }
+        sendNacks(ctx, UINT.B3.minus(receivedSeqIds.getHighest(), Constants.NACK_REORDER_DISTANCE));
+        if ((nackTask == null) && (nackSeqId != UINT.B3.plus(receivedSeqIds.getHighest(), 1))) {
+            scheduleNacks(ctx);
+        }
+        return true;
+    }
+
+    //datagram with the given seq id continues received sequence: it is not received yet and it is at most the given distance ahead of the highest received one
+    public boolean isExpectedSeqId(int seqId, int maxDistance) {
+        return (UINT.B3.minusWrap(seqId, receivedSeqIds.getHighest()) <= maxDistance) && !receivedSeqIds.contains(seqId);
+    }
+
+    //seq id for a datagram that is sent bypassing this handler, such datagram is not resent, and its ack is ignored
+    public int reserveSeqId() {
+        final int seqId = nextSendSeqId;
+        nextSendSeqId = UINT.B3.plus(nextSendSeqId, 1);
+        return seqId;
+    }
+
+    protected void scheduleNacks(ChannelHandlerContext ctx) {
+        final int nackUpTo = receivedSeqIds.getHighest();
+        nackTask = Clock.get(ctx.channel()).schedule(ctx.executor(), () -> {
+            nackTask = null;
+            sendNacks(ctx, nackUpTo);
+            if (nackSeqId != UINT.B3.plus(receivedSeqIds.getHighest(), 1)) {
+                scheduleNacks(ctx);
+            }
+        }, Constants.NACK_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    //nacks missing seq ids up to (including) the given one
+    protected void sendNacks(ChannelHandlerContext ctx, int upTo) {
+        //ids older than the window are no longer tracked
+        final int highest = receivedSeqIds.getHighest();
+        if (UINT.B3.minusWrap(highest, nackSeqId) >= receivedSeqIds.getSize()) {
+            nackSeqId = UINT.B3.minus(highest, receivedSeqIds.getSize() - 1);
+        }
+        ArrayList<REntry> entries = null;
+        int rangeStart = -1;
+        for (; UINT.B3.minusWrap(upTo, nackSeqId) >= 0; nackSeqId = UINT.B3.plus(nackSeqId, 1)) {
+            if (!receivedSeqIds.contains(nackSeqId)) {
+                if (rangeStart == -1) {
+                    rangeStart = nackSeqId;
+                }
+            } else if (rangeStart != -1) {
+                if (entries == null) {
+                    entries = new ArrayList<>();
+                }
+                entries.add(new REntry(rangeStart, UINT.B3.minus(nackSeqId, 1)));
+                rangeStart = -1;
+            }
+        }
+        if (rangeStart != -1) {
+            if (entries == null) {
+                entries = new ArrayList<>();
+            }
+            entries.add(new REntry(rangeStart, upTo));
+        }
+        if (entries != null) {
+            ctx.writeAndFlush(new RakNetNACK(entries.toArray(new REntry[0]))).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        }
+        //skip ids that already arrived, so that pending nack check is cheap
+        while ((nackSeqId != UINT.B3.plus(highest, 1)) && receivedSeqIds.contains(nackSeqId)) {
+            nackSeqId = UINT.B3.plus(nackSeqId, 1);
+        }
+    }
+
     protected void handleAck(ChannelHandlerContext ctx, RakNetACK ack) {
         int nAck = 0;
         int maxAckdId = -1;
         for (REntry entry : ack.getEntries()) {
             final int max = UINT.B3.plus(entry.idFinish, 1);
             for (int id = entry.idStart ; id != max ; id = UINT.B3.plus(id, 1)) {
-                sentPackets.remove(id);
+                final RakNetEncapsulatedData packet = sentPackets.remove(id);
+                if (packet != null) {
+                    inFlightBytes -= packet.getEncodedSize();
+                    packet.release();
+                }
                 maxAckdId = id;
                 if (nAck++ > Constants.MAX_PACKET_LOSS) {
                     throw new DecoderException("Too big packet loss (ack confirm range)");
@@ -89,6 +277,25 @@ public class RakNetPacketReliabilityHandler extends ChannelDuplexHandler {
             resendPacket(ctx, lastAckdId);
             lastAckdId = UINT.B3.plus(lastAckdId, 1);
         }
+        //acked datagrams freed send window space
+        sendQueued(ctx);
+        ctx.flush();
+        updateWritability(ctx);
+        if ((drainPromise != null) && sentPackets.isEmpty() && queue.isEmpty()) {
+            //listener can wait for the next drain
+            final Promise<Void> promise = drainPromise;
+            drainPromise = null;
+            promise.trySuccess(null);
+        }
+    }
+
+    //completes promise once all sent packets are acknowledged, should be called from the channel event loop
+    public void notifyDrained(Promise<Void> promise) {
+        if (sentPackets.isEmpty() && queue.isEmpty()) {
+            promise.trySuccess(null);
+        } else {
+            drainPromise = promise;
+        }
     }
 
     protected void handleNack(ChannelHandlerContext ctx, RakNetNACK nack) {
@@ -102,23 +309,82 @@ public class RakNetPacketReliabilityHandler extends ChannelDuplexHandler {
                 }
             }
         }
+        sendQueued(ctx);
+        ctx.flush();
+        updateWritability(ctx);
     }
 
     protected void sendPacket(ChannelHandlerContext ctx, RakNetEncapsulatedData packet) {
         packet.setSeqId(nextSendSeqId);
         nextSendSeqId = UINT.B3.plus(nextSendSeqId, 1);
         sentPackets.put(packet.getSeqId(), packet);
-        ctx.writeAndFlush(packet).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        inFlightBytes += packet.getEncodedSize();
+        ctx.write(packet).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
     }
 
-    protected void sendPacket(ChannelHandlerContext ctx, EncapsulatedPacket packet) {
-        sendPacket(ctx, new RakNetEncapsulatedData(packet));
+    //packs queued packets into datagrams up to the mtu, new datagrams are not started while send window is full, unless packet has immediate priority
+    protected void sendQueued(ChannelHandlerContext ctx) {
+        //lost packets go in front of packets of their order channel that were queued after them, in their original order
+        for (int i = resent.size() - 1; i >= 0; i--) {
+            queue.addFirst(resent.get(i));
+        }
+        resent.clear();
+        if (queue.isEmpty()) {
+            return;
+        }
+        final int maxDatagramSize = ctx.channel().attr(RakNetConstants.MTU).get() - DATAGRAM_HEADERS_SIZE;
+        RakNetEncapsulatedData datagram = null;
+        int datagramSize = 0;
+        EncoderException readFailure = null;
+        try {
+            EncapsulatedPacket packet;
+            while ((packet = queue.poll(ctx.alloc())) != null) {
+                final int packetSize = packet.getEncodedSize();
+                if ((datagram != null) && ((datagramSize + packetSize) > maxDatagramSize)) {
+                    sendPacket(ctx, datagram);
+                    datagram = null;
+                }
+                if (datagram == null) {
+                    if ((sentPackets.size() >= Constants.SEND_WINDOW) && (packet.getPriority() != RakNetPriority.IMMEDIATE)) {
+                        queue.addFirst(packet);
+                        break;
+                    }
+                    datagram = new RakNetEncapsulatedData();
+                    datagramSize = 1 + 3; //packet id + seq id
+                }
+                datagram.getPackets().add(packet);
+                datagramSize += packetSize;
+            }
+        } catch (EncoderException e) {
+            readFailure = e;
+        } finally {
+            //packets that are already packed are still sent
+            if (datagram != null) {
+                sendPacket(ctx, datagram);
+            }
+        }
+        if (readFailure != null) {
+            //stream read failed, receiver already got some of its split packets and would wait for the rest of the message forever
+            ctx.flush();
+            ctx.fireExceptionCaught(readFailure);
+            ctx.close();
+        }
     }
 
+    //reliable packets of the lost datagram are queued again, so they are packed together with other queued packets on next send
+    //they keep their priority, so they are limited by the send window like other packets, lost datagram already freed its slot in it
+    //unreliable packets are dropped
     protected void resendPacket(ChannelHandlerContext ctx, int id) {
         final RakNetEncapsulatedData packet = sentPackets.remove(id);
         if (packet != null) {
-            sendPacket(ctx, packet);
+            inFlightBytes -= packet.getEncodedSize();
+            for (EncapsulatedPacket epacket : packet.getPackets()) {
+                if (epacket.getReliability() >= 2) {
+                    resent.add(epacket);
+                } else {
+                    epacket.release();
+                }
+            }
         }
     }
 
@@ -0,0 +1,250 @@
+package raknetserver.pipeline.raknet;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.ReferenceCountUtil;
+import raknetserver.utils.Clock;
+import raknetserver.utils.Constants;
+import raknetserver.utils.TokenBucket;
+
+//per connection inbound budget, messages over the budget are dropped, delayed until budget is available again, or connection is closed
+//delayed messages are kept in a bounded queue, while it's not empty all following messages are queued too, so their order is kept
+public abstract class RakNetRateLimitHandler extends ChannelInboundHandlerAdapter {
+
+	public static enum Action {
+		DROP, DELAY, DISCONNECT;
+
+		public static Action parse(String name) {
+			return valueOf(name.toUpperCase(Locale.ROOT));
+		}
+	}
+
+	protected final Action action;
+	protected ArrayDeque<Object> delayed;
+	protected Future<?> delayTask;
+	protected long passedCount;
+	protected long droppedCount;
+	protected long delayedCount;
+
+	protected RakNetRateLimitHandler(Action action) {
+		this.action = action;
+	}
+
+	//returns false if message is not limited by this handler
+	protected abstract boolean isLimited(Object msg);
+
+	protected abstract boolean tryAcquire(Object msg, long now);
+
+	protected abstract long nanosUntilAvailable(Object msg, long now);
+
+	//buckets are created once the channel is known, so they start from the channel clock
+	protected abstract void createBuckets(long now);
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		createBuckets(Clock.get(ctx.channel()).nanoTime());
+		super.handlerAdded(ctx);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if ((delayed != null) && !delayed.isEmpty()) {
+			delay(ctx, msg, Clock.get(ctx.channel()).nanoTime());
+		} else if (!isLimited(msg)) {
+			ctx.fireChannelRead(msg);
+		} else {
+			long now = Clock.get(ctx.channel()).nanoTime();
+			if (tryAcquire(msg, now)) {
+				passedCount++;
+				ctx.fireChannelRead(msg);
+			} else {
+				limit(ctx, msg, now);
+			}
+		}
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		if (delayTask != null) {
+			delayTask.cancel(false);
+			delayTask = null;
+		}
+		if (delayed != null) {
+			delayed.forEach(ReferenceCountUtil::release);
+			delayed = null;
+		}
+		super.handlerRemoved(ctx);
+	}
+
+	protected void limit(ChannelHandlerContext ctx, Object msg, long now) {
+		switch (action) {
+			case DELAY: {
+				delay(ctx, msg, now);
+				break;
+			}
+			case DISCONNECT: {
+				droppedCount++;
+				ReferenceCountUtil.release(msg);
+				ctx.fireExceptionCaught(new DecoderException("Inbound rate limit exceeded"));
+				ctx.close();
+				break;
+			}
+			default: {
+				droppedCount++;
+				ReferenceCountUtil.release(msg);
+				break;
+			}
+		}
+	}
+
+	protected void delay(ChannelHandlerContext ctx, Object msg, long now) {
+		if (delayed == null) {
+			delayed = new ArrayDeque<>();
+		}
+		if (delayed.size() >= Constants.RATE_LIMIT_DELAY_QUEUE) {
+			droppedCount++;
+			ReferenceCountUtil.release(msg);
+			return;
+		}
+		delayedCount++;
+		delayed.addLast(msg);
+		scheduleDelayed(ctx, now);
+	}
+
+	protected void scheduleDelayed(ChannelHandlerContext ctx, long now) {
+		if (delayTask != null) {
+			return;
+		}
+		long delay = Math.max(nanosUntilAvailable(delayed.peekFirst(), now), 1);
+		delayTask = Clock.get(ctx.channel()).schedule(ctx.executor(), () -> {
+			delayTask = null;
+			readDelayed(ctx);
+		}, delay, TimeUnit.NANOSECONDS);
+	}
+
+	protected void readDelayed(ChannelHandlerContext ctx) {
+		long now = Clock.get(ctx.channel()).nanoTime();
+		Object msg;
+		boolean read = false;
+		while (((msg = delayed.peekFirst()) != null) && (!isLimited(msg) || tryAcquire(msg, now))) {
+			delayed.pollFirst();
+			if (isLimited(msg)) {
+				passedCount++;
+			}
+			read = true;
+			ctx.fireChannelRead(msg);
+		}
+		if (read) {
+			ctx.fireChannelReadComplete();
+		}
+		if (!delayed.isEmpty()) {
+			scheduleDelayed(ctx, now);
+		}
+	}
+
+	public long getPassedCount() {
+		return passedCount;
+	}
+
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+
+	public long getDelayedCount() {
+		return delayedCount;
+	}
+
+	//datagrams and bytes budget, installed right after address demultiplexing, so datagrams over the budget are not decoded at all
+	public static class Datagrams extends RakNetRateLimitHandler {
+
+		protected final long datagramsPerSecond;
+		protected final long bytesPerSecond;
+		protected TokenBucket datagrams;
+		protected TokenBucket bytes;
+
+		public Datagrams(long datagramsPerSecond, long bytesPerSecond, Action action) {
+			super(action);
+			this.datagramsPerSecond = datagramsPerSecond;
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		@Override
+		protected void createBuckets(long now) {
+			datagrams = datagramsPerSecond > 0 ? new TokenBucket(datagramsPerSecond, 1, now) : null;
+			bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, 0xFFFF, now) : null;
+		}
+
+		@Override
+		protected boolean isLimited(Object msg) {
+			return msg instanceof ByteBuf;
+		}
+
+		@Override
+		protected boolean tryAcquire(Object msg, long now) {
+			int size = ((ByteBuf) msg).readableBytes();
+			if (nanosUntilAvailable(msg, now) > 0) {
+				return false;
+			}
+			if (datagrams != null) {
+				datagrams.tryAcquire(1, now);
+			}
+			if (bytes != null) {
+				bytes.tryAcquire(size, now);
+			}
+			return true;
+		}
+
+		@Override
+		protected long nanosUntilAvailable(Object msg, long now) {
+			long datagramsWait = datagrams != null ? datagrams.nanosUntil(1, now) : 0;
+			long bytesWait = bytes != null ? bytes.nanosUntil(((ByteBuf) msg).readableBytes(), now) : 0;
+			return Math.max(datagramsWait, bytesWait);
+		}
+
+	}
+
+	//user messages budget, installed right before user handlers
+	//only whole messages are limited, chunks of streamed messages are delivered as they arrive
+	public static class Messages extends RakNetRateLimitHandler {
+
+		protected final long messagesPerSecond;
+		protected TokenBucket messages;
+
+		public Messages(long messagesPerSecond, Action action) {
+			super(action);
+			if (messagesPerSecond <= 0) {
+				throw new IllegalArgumentException("Rate should be positive, got: " + messagesPerSecond);
+			}
+			this.messagesPerSecond = messagesPerSecond;
+		}
+
+		@Override
+		protected void createBuckets(long now) {
+			messages = new TokenBucket(messagesPerSecond, 1, now);
+		}
+
+		@Override
+		protected boolean isLimited(Object msg) {
+			return msg instanceof ByteBuf;
+		}
+
+		@Override
+		protected boolean tryAcquire(Object msg, long now) {
+			return messages.tryAcquire(1, now);
+		}
+
+		@Override
+		protected long nanosUntilAvailable(Object msg, long now) {
+			return messages.nanosUntil(1, now);
+		}
+
+	}
+
+}
@@ -0,0 +1,177 @@
+package raknetserver.pipeline.raknet;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.internal.InternalMigrationProof;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
+import raknetserver.session.RakNetSession;
+import raknetserver.session.RakNetSessionTable;
+import raknetserver.utils.Clock;
+import raknetserver.utils.Constants;
+import raknetserver.utils.PackedAddress;
+
+//moves established session to this channel when client keeps sending its connected datagrams from a new address (nat rebinding or network change)
+//datagram that continues seq ids of a session only makes it a candidate, seq ids are easy to guess, so session is moved only after this address answers a challenge
+//with a proof that it knows the token of the session, that was given to the client in the server handshake, handshake is never redone for it
+//clients that don't answer challenges (other raknet implementations) are never migrated
+//connected datagrams that arrive while the check is in progress are dropped, they are resent after migration
+//should be placed before decoders, it is removed once channel is established or migrated
+public class RakNetSessionMigrationHandler extends ChannelInboundHandlerAdapter {
+
+	protected final RakNetSessionTable sessions;
+	protected boolean pending;
+	//candidates of the first connected datagram, null until it arrives
+	protected List<RakNetSession> candidates;
+	protected int seqId;
+	//candidate that was sent a challenge, null if no challenge is waiting for an answer
+	protected RakNetSession challenged;
+	protected int challengedIndex;
+	protected long nonce;
+	protected Future<?> challengeTimeout;
+
+	public RakNetSessionMigrationHandler(RakNetSessionTable sessions) {
+		this.sessions = sessions;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) {
+		if (ctx.channel().hasAttr(RakNetConstants.SESSION)) {
+			ctx.pipeline().remove(this);
+			ctx.fireChannelRead(msg);
+			return;
+		}
+		if (msg instanceof ByteBuf) {
+			ByteBuf datagram = (ByteBuf) msg;
+			int packetId = datagram.isReadable() ? datagram.getUnsignedByte(datagram.readerIndex()) : -1;
+			boolean connected = (packetId >= 0x80) && (packetId <= 0x8f) && (datagram.readableBytes() >= 4);
+			InternalMigrationProof proof = (connected && !pending && (challenged != null)) ? findProof(datagram) : null;
+			if (proof != null) {
+				checkProof(ctx, datagram, proof.getProof());
+				return;
+			}
+			if ((candidates != null) || (packetId == RakNetConstants.ID_RN_ACK) || (packetId == RakNetConstants.ID_RN_NACK)) {
+				//acks can't be checked, so they are dropped instead of refusing the connection, peer resends unacked datagrams anyway
+				datagram.release();
+				return;
+			}
+			if (connected) {
+				seqId = datagram.getUnsignedMediumLE(datagram.readerIndex() + 1);
+				PackedAddress address = PackedAddress.of((InetSocketAddress) ctx.channel().remoteAddress());
+				List<RakNetSession> ncandidates = sessions.getMigrationCandidates(address, seqId, Clock.get(ctx.channel()).nanoTime());
+				if (!ncandidates.isEmpty()) {
+					candidates = ncandidates;
+					datagram.release();
+					tryCandidate(ctx, 0);
+					return;
+				}
+			}
+		}
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) {
+		cancelChallenge();
+	}
+
+	//candidates are checked one by one, usually there is only one session that expects the seq id
+	protected void tryCandidate(ChannelHandlerContext ctx, int index) {
+		if (index >= candidates.size()) {
+			//not a continuation of any session
+			ctx.close();
+			return;
+		}
+		pending = true;
+		RakNetSession candidate = candidates.get(index);
+		sessions.challenge(candidate, ctx.channel(), seqId).addListener(future -> execute(ctx, () -> {
+			pending = false;
+			Long nnonce = (Long) future.getNow();
+			if (!ctx.channel().isActive()) {
+				return;
+			}
+			if (nnonce == null) {
+				tryCandidate(ctx, index + 1);
+				return;
+			}
+			challenged = candidate;
+			challengedIndex = index;
+			nonce = nnonce;
+			challengeTimeout = Clock.get(ctx.channel()).schedule(ctx.executor(), () -> {
+				challengeTimeout = null;
+				challenged = null;
+				tryCandidate(ctx, index + 1);
+			}, Constants.MIGRATION_CHALLENGE_TIMEOUT, TimeUnit.MILLISECONDS);
+		}));
+	}
+
+	protected void checkProof(ChannelHandlerContext ctx, ByteBuf datagram, long proof) {
+		RakNetSession candidate = challenged;
+		int index = challengedIndex;
+		cancelChallenge();
+		pending = true;
+		Channel channel = ctx.channel();
+		sessions.migrate(candidate, channel, nonce, proof).addListener(future -> execute(ctx, () -> {
+			pending = false;
+			if (!channel.isActive()) {
+				datagram.release();
+			} else if (Boolean.TRUE.equals(future.getNow())) {
+				//session added its forwarder in front of this handler, so datagram is fired from the pipeline head to reach it
+				ctx.pipeline().remove(this);
+				channel.pipeline().fireChannelRead(datagram);
+			} else {
+				datagram.release();
+				tryCandidate(ctx, index + 1);
+			}
+		}));
+	}
+
+	protected void cancelChallenge() {
+		challenged = null;
+		if (challengeTimeout != null) {
+			challengeTimeout.cancel(false);
+			challengeTimeout = null;
+		}
+	}
+
+	//proof answering current challenge, datagram is decoded from a copy, so it is left intact for the session pipeline
+	protected InternalMigrationProof findProof(ByteBuf datagram) {
+		RakNetEncapsulatedData data = new RakNetEncapsulatedData();
+		try {
+			data.decode(datagram.duplicate().skipBytes(1));
+			for (EncapsulatedPacket packet : data.getPackets()) {
+				ByteBuf payload = packet.getData();
+				if (!packet.hasSplit() && (payload.readableBytes() == (1 + (Long.BYTES * 2))) && (payload.getUnsignedByte(payload.readerIndex()) == RakNetConstants.ID_I_MIGRATION_PROOF)) {
+					InternalMigrationProof proof = new InternalMigrationProof();
+					proof.decode(payload.duplicate().skipBytes(1));
+					if (proof.getNonce() == nonce) {
+						return proof;
+					}
+				}
+			}
+			return null;
+		} catch (RuntimeException e) {
+			//malformed datagram is not a proof
+			return null;
+		} finally {
+			data.release();
+		}
+	}
+
+	protected static void execute(ChannelHandlerContext ctx, Runnable task) {
+		if (ctx.executor().inEventLoop()) {
+			task.run();
+		} else {
+			ctx.executor().execute(task);
+		}
+	}
+
+}
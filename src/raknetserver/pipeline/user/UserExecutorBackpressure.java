@@ -0,0 +1,114 @@
+package raknetserver.pipeline.user;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+//counts user messages that are queued to the user executor of the connection but not yet handled
+//enqueue handler is the last handler that runs on the event loop, dequeue handler is the first one that runs on the user executor
+//user executor is serial per connection, so when a message is dequeued, all previous messages were already handled
+//once too many messages are queued, gate drops encapsulated data datagrams before they are acknowledged, so the client resends them later, which slows it down
+//ack and nack datagrams still pass, so sending to the client is not affected
+public class UserExecutorBackpressure {
+
+	protected final int highWaterMark;
+	protected final int lowWaterMark;
+	protected final AtomicInteger queued = new AtomicInteger();
+	protected volatile boolean paused;
+	protected long droppedCount;
+
+	protected final Gate gate = new Gate();
+	protected final Enqueue enqueue = new Enqueue();
+	protected final Dequeue dequeue = new Dequeue();
+
+	public UserExecutorBackpressure(int highWaterMark, int lowWaterMark) {
+		this.highWaterMark = highWaterMark;
+		this.lowWaterMark = lowWaterMark;
+	}
+
+	public Gate getGate() {
+		return gate;
+	}
+
+	public Enqueue getEnqueueHandler() {
+		return enqueue;
+	}
+
+	public Dequeue getDequeueHandler() {
+		return dequeue;
+	}
+
+	public int getQueuedCount() {
+		return queued.get();
+	}
+
+	public boolean isPaused() {
+		return paused;
+	}
+
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+
+	protected static boolean isEncapsulatedData(int packetId) {
+		return (packetId >= 0x80) && (packetId <= 0x8f);
+	}
+
+	public class Gate extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			if (paused && (msg instanceof ByteBuf)) {
+				ByteBuf buf = (ByteBuf) msg;
+				if (buf.isReadable() && isEncapsulatedData(buf.getUnsignedByte(buf.readerIndex()))) {
+					droppedCount++;
+					ReferenceCountUtil.release(msg);
+					return;
+				}
+			}
+			ctx.fireChannelRead(msg);
+		}
+
+	}
+
+	public class Enqueue extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			if (queued.incrementAndGet() >= highWaterMark) {
+				paused = true;
+				//all queued messages could have been handled before the flag was set, then there is no dequeue left to clear it
+				if (queued.get() <= lowWaterMark) {
+					paused = false;
+				}
+			}
+			ctx.fireChannelRead(msg);
+		}
+
+	}
+
+	//ordered user executor doesn't invoke next handler inline, it queues it as a new task
+	//so message is counted as handled by a task queued after that one, which runs only after next handler is done with the message
+	public class Dequeue extends ChannelInboundHandlerAdapter {
+
+		protected final Runnable handled = () -> {
+			if ((queued.decrementAndGet() <= lowWaterMark) && paused) {
+				paused = false;
+			}
+		};
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			try {
+				ctx.fireChannelRead(msg);
+			} finally {
+				ctx.executor().execute(handled);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package raknetserver.proxy;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import raknetserver.utils.Constants;
+import raknetserver.utils.PackedAddress;
+
+public class ProxyBackend {
+
+	//rendezvous hashing: key is routed to the alive backend with the highest score
+	//if backend goes down only keys routed to it move, and they move back once it is alive again, so routes are sticky without any route table
+	public static ProxyBackend select(List<ProxyBackend> backends, long key, long now) {
+		ProxyBackend selected = null;
+		long selectedScore = 0;
+		for (ProxyBackend backend : backends) {
+			if (!backend.isAlive(now)) {
+				continue;
+			}
+			long score = mix(key ^ backend.seed);
+			if ((selected == null) || (Long.compareUnsigned(score, selectedScore) > 0)) {
+				selected = backend;
+				selectedScore = score;
+			}
+		}
+		return selected;
+	}
+
+	protected static long mix(long key) {
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		return key ^ (key >>> 31);
+	}
+
+	protected final InetSocketAddress address;
+	protected final long seed;
+	protected volatile String info;
+	protected volatile long lastPong;
+
+	//backend is considered alive until it fails to answer pings, so connections are accepted before first pong arrives
+	public ProxyBackend(InetSocketAddress address, long now) {
+		this.address = address;
+		this.seed = mix(PackedAddress.of(address).hashCode());
+		this.lastPong = now;
+	}
+
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	public String getInfo() {
+		return info;
+	}
+
+	public void updateInfo(String info, long now) {
+		this.info = info;
+		this.lastPong = now;
+	}
+
+	public boolean isAlive(long now) {
+		return (now - lastPong) < Constants.PROXY_BACKEND_TIMEOUT;
+	}
+
+}
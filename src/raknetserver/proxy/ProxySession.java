@@ -0,0 +1,107 @@
+package raknetserver.proxy;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import raknetserver.utils.PackedAddress;
+
+//client routed to a backend, each client uses its own backend facing socket, so backend sees every client as a separate address
+//datagrams are forwarded as is in both directions, reliability is handled by the client and the backend
+public class ProxySession extends SimpleChannelInboundHandler<DatagramPacket> {
+
+	protected final PackedAddress address;
+	protected final InetSocketAddress client;
+	protected final Channel clientChannel;
+	protected final ProxyBackend backend;
+	protected final ChannelFuture connect;
+	protected final long created;
+	protected volatile long lastActivity;
+	//session is pending until client sends its first connected datagram
+	protected final AtomicBoolean pending = new AtomicBoolean(true);
+
+	public ProxySession(Bootstrap bootstrap, Channel clientChannel, PackedAddress address, InetSocketAddress client, ProxyBackend backend, long now) {
+		this.address = address;
+		this.client = client;
+		this.clientChannel = clientChannel;
+		this.backend = backend;
+		this.created = now;
+		this.lastActivity = now;
+		this.connect = bootstrap.clone().handler(this).connect(backend.getAddress());
+	}
+
+	public PackedAddress getAddress() {
+		return address;
+	}
+
+	public ProxyBackend getBackend() {
+		return backend;
+	}
+
+	public long getLastActivity() {
+		return lastActivity;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public boolean isPending() {
+		return pending.get();
+	}
+
+	//returns true only for the first call, called both when handshake completes and when session is closed, so pending session is counted out only once
+	public boolean finishPending() {
+		return pending.get() && pending.compareAndSet(true, false);
+	}
+
+	public ChannelFuture closeFuture() {
+		return connect.channel().closeFuture();
+	}
+
+	//datagrams received before backend socket is connected are sent once it is, listeners are notified in order so datagram order is kept
+	public void forward(ByteBuf buf, long now) {
+		lastActivity = now;
+		if (connect.isDone()) {
+			forward0(buf);
+		} else {
+			connect.addListener(future -> forward0(buf));
+		}
+	}
+
+	protected void forward0(ByteBuf buf) {
+		if (connect.isSuccess()) {
+			connect.channel().writeAndFlush(buf, connect.channel().voidPromise());
+		} else {
+			buf.release();
+		}
+	}
+
+	public void close() {
+		connect.channel().close();
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+		lastActivity = RakNetProxy.currentTime();
+		clientChannel.write(new DatagramPacket(packet.content().retain(), client), clientChannel.voidPromise());
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) {
+		clientChannel.flush();
+	}
+
+	//backend is unreachable, client will notice that by itself using its own timeout
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		ctx.close();
+	}
+
+}
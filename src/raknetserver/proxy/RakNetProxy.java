@@ -0,0 +1,287 @@
+package raknetserver.proxy;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.concurrent.ScheduledFuture;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.raknet.RakNetConnectionReply1;
+import raknetserver.packet.raknet.RakNetConnectionRequest1;
+import raknetserver.packet.raknet.RakNetConnectionRequest2;
+import raknetserver.packet.raknet.RakNetInvalidVersion;
+import raknetserver.packet.raknet.RakNetNoFreeIncomingConnections;
+import raknetserver.packet.raknet.RakNetPacket;
+import raknetserver.packet.raknet.RakNetPacketRegistry;
+import raknetserver.packet.raknet.RakNetUnconnectedPing;
+import raknetserver.packet.raknet.RakNetUnconnectedPong;
+import raknetserver.utils.Constants;
+import raknetserver.utils.PackedAddress;
+import raknetserver.utils.PackedAddressMap;
+
+//pass-through proxy that spreads clients across several backend servers behind one public address
+//connection establishment packets are only peeked to select a backend, everything else is forwarded without decoding
+//connection request 1 is answered by the proxy, so backend socket is opened only once connection request 2 tells the guid
+//clients are routed by guid, so reconnecting client lands on the same backend
+//sessions count is limited, and so is count of pending sessions (client didn't send any connected datagram yet), which also time out sooner
+public class RakNetProxy {
+
+	public static long currentTime() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	protected final InetSocketAddress local;
+	protected final List<ProxyBackend> backends = new ArrayList<>();
+	protected final InfoAggregator aggregator;
+	protected final PackedAddressMap<ProxySession> sessions = new PackedAddressMap<>();
+	protected final AtomicInteger pendingSessions = new AtomicInteger();
+	protected int maxSessions = Constants.PROXY_MAX_SESSIONS;
+	protected int maxPendingSessions = Constants.PROXY_MAX_PENDING_SESSIONS;
+
+	//aggregated backends info, null if no backend answered pings recently
+	protected volatile String info;
+
+	private EventLoopGroup group = null;
+	private Channel channel = null;
+	private Channel probe = null;
+	private Bootstrap backendBootstrap = null;
+	private ScheduledFuture<?> tickTask = null;
+
+	public RakNetProxy(InetSocketAddress local, Collection<InetSocketAddress> backends) {
+		this(local, backends, infos -> infos.get(0));
+	}
+
+	public RakNetProxy(InetSocketAddress local, Collection<InetSocketAddress> backends, InfoAggregator aggregator) {
+		if (backends.isEmpty()) {
+			throw new IllegalArgumentException("At least one backend is required");
+		}
+		this.local = local;
+		this.aggregator = aggregator;
+		long now = currentTime();
+		for (InetSocketAddress address : backends) {
+			this.backends.add(new ProxyBackend(address, now));
+		}
+	}
+
+	public void start() {
+		group = new NioEventLoopGroup(Constants.UDP_IO_THREADS);
+		backendBootstrap = new Bootstrap().group(group).channel(NioDatagramChannel.class);
+		probe = new Bootstrap().group(group).channel(NioDatagramChannel.class).handler(new ProbeHandler()).bind(0).syncUninterruptibly().channel();
+		bindClients();
+		tickTask = probe.eventLoop().scheduleAtFixedRate(this::tick, 0, Constants.PROXY_PING_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	public void stop() {
+		if (probe == null) {
+			return;
+		}
+		tickTask.cancel(false);
+		unbindClients();
+		probe.close().awaitUninterruptibly();
+		group.shutdownGracefully(0, Constants.SHUTDOWN_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS).awaitUninterruptibly();
+		probe = null;
+		group = null;
+	}
+
+	//binds public address, pass-through proxy reads client datagrams directly
+	protected void bindClients() {
+		channel = new Bootstrap().group(group).channel(NioDatagramChannel.class).handler(new ClientHandler()).bind(local).syncUninterruptibly().channel();
+	}
+
+	protected void unbindClients() {
+		channel.close().awaitUninterruptibly();
+		sessions.forEach(ProxySession::close);
+		channel = null;
+	}
+
+	public List<ProxyBackend> getBackends() {
+		return backends;
+	}
+
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	public int getPendingSessionCount() {
+		return pendingSessions.get();
+	}
+
+	//pings backends, refreshes aggregated info and closes idle sessions
+	//aggregated info is cached, so answering client pings doesn't cost more than encoding a pong
+	protected void tick() {
+		long now = currentTime();
+		for (ProxyBackend backend : backends) {
+			probe.write(new DatagramPacket(encode(probe.alloc(), new RakNetUnconnectedPing(now)), backend.getAddress()), probe.voidPromise());
+		}
+		probe.flush();
+		ArrayList<String> infos = new ArrayList<>();
+		for (ProxyBackend backend : backends) {
+			String binfo = backend.getInfo();
+			if (backend.isAlive(now) && (binfo != null)) {
+				infos.add(binfo);
+			}
+		}
+		info = infos.isEmpty() ? null : aggregator.aggregate(infos);
+		sessions.forEach(session -> {
+			if ((now - session.getLastActivity()) > Constants.PROXY_SESSION_TIMEOUT) {
+				session.close();
+			} else if (session.isPending() && ((now - session.getCreated()) > Constants.PROXY_HANDSHAKE_TIMEOUT)) {
+				session.close();
+			}
+		});
+	}
+
+	protected boolean canOpenSession() {
+		return (sessions.size() < maxSessions) && (pendingSessions.get() < maxPendingSessions);
+	}
+
+	protected ProxySession openSession(Channel channel, PackedAddress address, InetSocketAddress sender, ProxyBackend backend, long now) {
+		ProxySession session = new ProxySession(backendBootstrap, channel, address, sender, backend, now);
+		pendingSessions.incrementAndGet();
+		sessions.put(address, session);
+		session.closeFuture().addListener(future -> {
+			sessions.remove(address, session);
+			finishPending(session);
+		});
+		return session;
+	}
+
+	protected void finishPending(ProxySession session) {
+		if (session.finishPending()) {
+			pendingSessions.decrementAndGet();
+		}
+	}
+
+	protected static boolean isEncapsulatedData(int packetId) {
+		return (packetId >= 0x80) && (packetId <= 0x8f);
+	}
+
+	protected static ByteBuf encode(ByteBufAllocator alloc, RakNetPacket packet) {
+		ByteBuf buf = alloc.ioBuffer();
+		buf.writeByte(RakNetPacketRegistry.getId(packet));
+		packet.encode(buf);
+		return buf;
+	}
+
+	//decodes packet without touching reader index of the buffer, returns null if packet is malformed
+	@SuppressWarnings("unchecked")
+	protected static <T extends RakNetPacket> T peek(ByteBuf buf, int packetId) {
+		ByteBuf data = buf.duplicate();
+		data.skipBytes(1);
+		try {
+			RakNetPacket packet = RakNetPacketRegistry.getPacket(packetId);
+			packet.decode(data);
+			return (T) packet;
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	protected class ClientHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket datagram) {
+			ByteBuf buf = datagram.content();
+			if (!buf.isReadable()) {
+				return;
+			}
+			long now = currentTime();
+			InetSocketAddress sender = datagram.sender();
+			PackedAddress address = PackedAddress.of(sender);
+			ProxySession session = sessions.get(address);
+			int packetId = buf.getUnsignedByte(buf.readerIndex());
+			switch (packetId) {
+				case RakNetConstants.ID_RN_UNCONNECTED_PING: {
+					RakNetUnconnectedPing ping = peek(buf, packetId);
+					String cinfo = info;
+					if ((ping != null) && (cinfo != null)) {
+						ctx.writeAndFlush(new DatagramPacket(encode(ctx.alloc(), new RakNetUnconnectedPong(ping.getClientTime(), cinfo)), sender), ctx.voidPromise());
+					}
+					return;
+				}
+				case RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_1: {
+					//backends don't keep any state for request 1, so it is answered the same way backend would answer it
+					RakNetConnectionRequest1 request = peek(buf, packetId);
+					if (request != null) {
+						RakNetPacket reply = request.getRakNetProtocolVersion() == RakNetInvalidVersion.VALID_VERSION ? new RakNetConnectionReply1(request.getMtu()) : new RakNetInvalidVersion();
+						ctx.writeAndFlush(new DatagramPacket(encode(ctx.alloc(), reply), sender), ctx.voidPromise());
+					}
+					return;
+				}
+				case RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_2: {
+					RakNetConnectionRequest2 request = peek(buf, packetId);
+					if (request == null) {
+						return;
+					}
+					ProxyBackend backend = ProxyBackend.select(backends, request.getGUID(), now);
+					if (backend == null) {
+						return;
+					}
+					//client reconnected from the same address using new guid
+					if ((session != null) && (session.getBackend() != backend)) {
+						sessions.remove(address, session);
+						session.close();
+						session = null;
+					}
+					if (session == null) {
+						if (!canOpenSession()) {
+							ctx.writeAndFlush(new DatagramPacket(encode(ctx.alloc(), new RakNetNoFreeIncomingConnections()), sender), ctx.voidPromise());
+							return;
+						}
+						session = openSession(ctx.channel(), address, sender, backend, now);
+					}
+					break;
+				}
+				default: {
+					if ((session != null) && isEncapsulatedData(packetId)) {
+						finishPending(session);
+					}
+					break;
+				}
+			}
+			if (session != null) {
+				session.forward(buf.retain(), now);
+			}
+		}
+
+	}
+
+	protected class ProbeHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket datagram) {
+			ByteBuf buf = datagram.content();
+			if (!buf.isReadable() || (buf.getUnsignedByte(buf.readerIndex()) != RakNetConstants.ID_RN_UNCONNECTED_PONG)) {
+				return;
+			}
+			RakNetUnconnectedPong pong = peek(buf, RakNetConstants.ID_RN_UNCONNECTED_PONG);
+			if (pong == null) {
+				return;
+			}
+			for (ProxyBackend backend : backends) {
+				if (backend.getAddress().equals(datagram.sender())) {
+					backend.updateInfo(pong.getInfo(), currentTime());
+				}
+			}
+		}
+
+	}
+
+	public interface InfoAggregator {
+		String aggregate(List<String> infos);
+	}
+
+}
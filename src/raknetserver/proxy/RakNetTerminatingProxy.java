@@ -0,0 +1,178 @@
+package raknetserver.proxy;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import raknetserver.RakNetClient;
+import raknetserver.RakNetServer;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler.PingHandler;
+import raknetserver.session.RakNetSession;
+import raknetserver.utils.Constants;
+
+//proxy that terminates client connections: clients connect to the raknet server of the proxy, and proxy connects to the selected backend as a raknet client
+//user messages are relayed between the two connections, reliability, ordering and splitting are handled separately on each of them, so loss on one side doesn't cause resends on the other
+//relayed messages use the first order channel and medium priority, because order channel and priority of received messages are not known
+//backends are selected by client guid, same as in pass-through mode, backend connection is opened only once client connection is established
+public class RakNetTerminatingProxy extends RakNetProxy {
+
+	protected final int userPacketId;
+	protected final AtomicInteger relayed = new AtomicInteger();
+
+	private RakNetServer server = null;
+	private RakNetClient client = null;
+
+	public RakNetTerminatingProxy(InetSocketAddress local, Collection<InetSocketAddress> backends, int userPacketId) {
+		this(local, backends, infos -> infos.get(0), userPacketId);
+	}
+
+	public RakNetTerminatingProxy(InetSocketAddress local, Collection<InetSocketAddress> backends, InfoAggregator aggregator, int userPacketId) {
+		super(local, backends, aggregator);
+		this.userPacketId = userPacketId;
+	}
+
+	@Override
+	public int getSessionCount() {
+		return relayed.get();
+	}
+
+	@Override
+	public int getPendingSessionCount() {
+		return 0;
+	}
+
+	@Override
+	protected void bindClients() {
+		client = new RakNetClient(channel -> channel.pipeline().addLast("rns-proxy-relay", new Relay()), userPacketId);
+		client.start();
+		//pings are not answered while no backend is alive
+		PingHandler pinghandler = new PingHandler() {
+			@Override
+			public void executeHandler(Runnable runnable) {
+				if (info != null) {
+					runnable.run();
+				}
+			}
+			@Override
+			public String getServerInfo(Channel channel) {
+				return info;
+			}
+		};
+		server = new RakNetServer(local, pinghandler, channel -> channel.pipeline().addLast("rns-proxy-relay", new Relay()), userPacketId) {
+			@Override
+			protected void initConnection(Channel channel, boolean fused) {
+				super.initConnection(channel, fused);
+				connectBackend(channel);
+			}
+		};
+		server.start();
+	}
+
+	@Override
+	protected void unbindClients() {
+		server.stopNow();
+		client.stopNow();
+		server = null;
+		client = null;
+	}
+
+	protected void connectBackend(Channel frontend) {
+		RakNetSession session = frontend.attr(RakNetConstants.SESSION).get();
+		ProxyBackend backend = ProxyBackend.select(backends, session.getGUID(), currentTime());
+		if ((backend == null) || (relayed.incrementAndGet() > maxSessions)) {
+			if (backend != null) {
+				relayed.decrementAndGet();
+			}
+			frontend.close();
+			return;
+		}
+		frontend.closeFuture().addListener(future -> relayed.decrementAndGet());
+		Relay frontendRelay = frontend.pipeline().get(Relay.class);
+		client.connect(backend.getAddress()).addListener(future -> {
+			if (future.isSuccess()) {
+				Channel backendChannel = (Channel) future.getNow();
+				backendChannel.pipeline().get(Relay.class).link(frontend);
+				frontendRelay.link(backendChannel);
+			} else {
+				frontend.close();
+			}
+		});
+	}
+
+	//relays user messages to the linked channel, messages received before channels are linked are held until then
+	//closing either of the channels closes the other one
+	protected static class Relay extends ChannelInboundHandlerAdapter {
+
+		protected ChannelHandlerContext ctx;
+		protected Channel peer;
+		protected ArrayList<Object> held = new ArrayList<>();
+
+		@Override
+		public void handlerAdded(ChannelHandlerContext ctx) {
+			this.ctx = ctx;
+		}
+
+		//called from any thread, linking is done by the channel event loop
+		protected void link(Channel peer) {
+			ctx.executor().execute(() -> {
+				if (!ctx.channel().isActive()) {
+					peer.close();
+					return;
+				}
+				this.peer = peer;
+				for (Object msg : held) {
+					peer.write(msg, peer.voidPromise());
+				}
+				held = null;
+				peer.flush();
+			});
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			if (peer != null) {
+				peer.write(msg, peer.voidPromise());
+			} else if (held.size() < Constants.PROXY_MAX_HELD_MESSAGES) {
+				held.add(msg);
+			} else {
+				//client keeps sending while backend connection is not established yet
+				ReferenceCountUtil.release(msg);
+				ctx.close();
+			}
+		}
+
+		@Override
+		public void channelReadComplete(ChannelHandlerContext ctx) {
+			if (peer != null) {
+				peer.flush();
+			}
+			ctx.fireChannelReadComplete();
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			if (peer != null) {
+				peer.close();
+			}
+			if (held != null) {
+				held.forEach(ReferenceCountUtil::release);
+				held.clear();
+			}
+			super.channelInactive(ctx);
+		}
+
+		//relay is the last handler, so exception would otherwise reach the pipeline tail
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			ctx.close();
+		}
+
+	}
+
+}
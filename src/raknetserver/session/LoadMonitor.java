@@ -0,0 +1,152 @@
+package raknetserver.session;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.ScheduledFuture;
+import raknetserver.utils.TokenBucket;
+
+//measures scheduling lag of event loops using a periodic probe task on each of them
+//probe lag includes processing time of everything queued before it on the loop, so it rises with pipeline processing time as well
+//node is overloaded when the lag of any loop goes over the threshold, and stops being overloaded once all lags fall below half of it
+//while overloaded, new connections are refused, unconnected pings are limited by rate and server info is refreshed less often
+public class LoadMonitor {
+
+	public static final LoadMonitor DISABLED = new LoadMonitor(0, 0, 0, 0);
+
+	protected final long probeInterval;
+	protected final long lagThreshold;
+	protected final long pingInfoInterval;
+	protected final TokenBucket pingBucket;
+
+	protected volatile Probe[] probes = new Probe[0];
+	protected volatile boolean overloaded;
+	protected volatile String cachedInfo;
+	protected volatile long cachedInfoTime;
+
+	//all values are in milliseconds and pings per second, zero lag threshold disables the monitor
+	public LoadMonitor(long probeInterval, long lagThreshold, long pingRate, long pingInfoInterval) {
+		this.probeInterval = TimeUnit.MILLISECONDS.toNanos(probeInterval);
+		this.lagThreshold = TimeUnit.MILLISECONDS.toNanos(lagThreshold);
+		this.pingInfoInterval = TimeUnit.MILLISECONDS.toNanos(pingInfoInterval);
+		this.pingBucket = pingRate > 0 ? new TokenBucket(pingRate, 1, System.nanoTime()) : null;
+	}
+
+	public void start(EventExecutorGroup group) {
+		if (lagThreshold <= 0) {
+			return;
+		}
+		ArrayList<Probe> nprobes = new ArrayList<>();
+		for (EventExecutor loop : group) {
+			Probe probe = new Probe(loop);
+			probe.schedule(System.nanoTime());
+			nprobes.add(probe);
+		}
+		probes = nprobes.toArray(new Probe[0]);
+	}
+
+	public void stop() {
+		for (Probe probe : probes) {
+			probe.cancel();
+		}
+		probes = new Probe[0];
+		overloaded = false;
+	}
+
+	//highest lag of all loops, loop that is stuck right now is accounted by the time its probe is late
+	public long getLag(TimeUnit unit) {
+		long now = System.nanoTime();
+		long lag = 0;
+		for (Probe probe : probes) {
+			lag = Math.max(lag, Math.max(probe.lag, now - probe.expected));
+		}
+		return unit.convert(lag, TimeUnit.NANOSECONDS);
+	}
+
+	public boolean isOverloaded() {
+		if (lagThreshold <= 0) {
+			return false;
+		}
+		if (overloaded) {
+			return true;
+		}
+		return getLag(TimeUnit.NANOSECONDS) > lagThreshold;
+	}
+
+	//pings are always accepted if node is not overloaded
+	public boolean tryAcceptPing() {
+		if (!isOverloaded()) {
+			return true;
+		}
+		if (pingBucket == null) {
+			return false;
+		}
+		synchronized (pingBucket) {
+			return pingBucket.tryAcquire(1, System.nanoTime());
+		}
+	}
+
+	//while overloaded, info is shared by all pings and refreshed at most once per interval
+	public String getServerInfo(Supplier<String> info) {
+		long now = System.nanoTime();
+		String cached = cachedInfo;
+		if ((cached == null) || !isOverloaded() || ((now - cachedInfoTime) > pingInfoInterval)) {
+			cached = info.get();
+			cachedInfo = cached;
+			cachedInfoTime = now;
+		}
+		return cached;
+	}
+
+	protected void updateOverloaded() {
+		long lag = getLag(TimeUnit.NANOSECONDS);
+		if (!overloaded && (lag > lagThreshold)) {
+			overloaded = true;
+		} else if (overloaded && (lag < (lagThreshold / 2))) {
+			overloaded = false;
+		}
+	}
+
+	protected final class Probe implements Runnable {
+
+		protected final EventExecutor loop;
+		protected volatile long expected;
+		//smoothed lag, so single slow task doesn't flip the state
+		protected volatile long lag;
+		protected volatile ScheduledFuture<?> future;
+		protected volatile boolean cancelled;
+
+		protected Probe(EventExecutor loop) {
+			this.loop = loop;
+		}
+
+		protected void schedule(long now) {
+			if (cancelled || loop.isShuttingDown()) {
+				return;
+			}
+			expected = now + probeInterval;
+			future = loop.schedule(this, probeInterval, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public void run() {
+			long now = System.nanoTime();
+			lag = ((lag * 3) + Math.max(0, now - expected)) / 4;
+			updateOverloaded();
+			schedule(now);
+		}
+
+		protected void cancel() {
+			cancelled = true;
+			ScheduledFuture<?> future = this.future;
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+
+	}
+
+}
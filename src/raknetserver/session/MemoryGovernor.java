@@ -0,0 +1,189 @@
+package raknetserver.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.AttributeKey;
+import raknetserver.utils.Constants;
+
+//server wide accounting of bytes buffered by protocol state (sent but not acknowledged packets, send queue, ordering queues, split packets parts)
+//each connection charges its own account, connection that goes over the per connection budget is closed
+//when the node goes over the high mark of the global budget, connections holding the most bytes are closed until it falls below the low mark
+public class MemoryGovernor {
+
+	public static final MemoryGovernor GLOBAL = new MemoryGovernor(
+		Constants.MEMORY_BUDGET > 0 ? Constants.MEMORY_BUDGET : Runtime.getRuntime().maxMemory() / 4,
+		Constants.CONNECTION_MEMORY_BUDGET
+	);
+
+	protected static final AttributeKey<Account> KEY = AttributeKey.valueOf("MemoryGovernorAccount");
+
+	//account is created on the first charge and unregistered when the channel is closed
+	public static Account getAccount(Channel channel) {
+		Account account = channel.attr(KEY).get();
+		if (account == null) {
+			account = GLOBAL.register(channel);
+		}
+		return account;
+	}
+
+	//accounts reserve global bytes in chunks, so the shared counter is not touched on every charge
+	protected static final long CHUNK = 64 * 1024;
+
+	protected final long budget;
+	protected final long highMark;
+	protected final long lowMark;
+	protected final long connectionBudget;
+	protected final AtomicLong reserved = new AtomicLong();
+	//reserved bytes of shed connections that are not closed yet, they are about to be freed, so they don't count when selecting connections to shed
+	protected final AtomicLong shedBytes = new AtomicLong();
+	protected final Set<Account> accounts = Collections.newSetFromMap(new ConcurrentHashMap<>());
+	protected final AtomicBoolean shedding = new AtomicBoolean();
+
+	public MemoryGovernor(long budget, long connectionBudget) {
+		this.budget = budget;
+		this.highMark = budget - (budget / 10);
+		this.lowMark = budget - (budget / 5);
+		this.connectionBudget = connectionBudget;
+	}
+
+	public Account register(Channel channel) {
+		Account account = new Account(this, channel);
+		Account prev = channel.attr(KEY).setIfAbsent(account);
+		if (prev != null) {
+			return prev;
+		}
+		accounts.add(account);
+		channel.closeFuture().addListener(future -> account.unregister());
+		return account;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public long getReservedBytes() {
+		return reserved.get();
+	}
+
+	public int getAccountCount() {
+		return accounts.size();
+	}
+
+	protected void reserve(long bytes) {
+		if ((reserved.addAndGet(bytes) > highMark) && (bytes > 0)) {
+			shedLargest();
+		}
+	}
+
+	//only one thread selects connections to shed at a time, others continue without waiting for it
+	//while shed connections are closing, reservations don't trigger another selection unless remaining bytes are over the high mark again
+	protected void shedLargest() {
+		if ((reserved.get() - shedBytes.get()) <= highMark) {
+			return;
+		}
+		if (!shedding.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			long total = reserved.get() - shedBytes.get();
+			if (total <= highMark) {
+				return;
+			}
+			//bytes keep changing while sorting, so sort uses their snapshot
+			ArrayList<Account> largest = new ArrayList<>(accounts);
+			largest.forEach(account -> account.sortBytes = account.bytes);
+			largest.sort((a1, a2) -> Long.compare(a2.sortBytes, a1.sortBytes));
+			for (Account account : largest) {
+				if (total <= lowMark) {
+					break;
+				}
+				if (!account.shed) {
+					total -= account.reservedBytes;
+					account.shed("Node memory budget of " + budget + " bytes exceeded, connection holds " + account.bytes + " bytes");
+				}
+			}
+		} finally {
+			shedding.set(false);
+		}
+	}
+
+	//charged only from the channel event loop, bytes are read by other threads when selecting connections to shed
+	public static class Account {
+
+		protected final MemoryGovernor governor;
+		protected final Channel channel;
+		protected volatile long bytes;
+		protected volatile long reservedBytes;
+		protected volatile boolean shed;
+		protected long shedReservedBytes;
+		//used only by the thread that selects connections to shed
+		protected long sortBytes;
+		protected boolean unregistered;
+
+		protected Account(MemoryGovernor governor, Channel channel) {
+			this.governor = governor;
+			this.channel = channel;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public void charge(long delta) {
+			if (delta == 0) {
+				return;
+			}
+			long nbytes = bytes + delta;
+			bytes = nbytes;
+			//shed connection keeps its reservation until it is closed
+			if (unregistered || shed) {
+				return;
+			}
+			if (nbytes > reservedBytes) {
+				long chunk = ((nbytes - reservedBytes) + CHUNK - 1) / CHUNK * CHUNK;
+				reservedBytes += chunk;
+				governor.reserve(chunk);
+			} else if (nbytes < (reservedBytes - (2 * CHUNK))) {
+				long chunk = (reservedBytes - nbytes) / CHUNK * CHUNK - CHUNK;
+				reservedBytes -= chunk;
+				governor.reserve(-chunk);
+			}
+			if (nbytes > governor.connectionBudget) {
+				shed("Connection memory budget of " + governor.connectionBudget + " bytes exceeded, connection holds " + nbytes + " bytes");
+			}
+		}
+
+		//connection can be shed by both its own budget and the node budget at the same time, only the first one counts
+		protected synchronized void shed(String reason) {
+			if (shed || unregistered) {
+				return;
+			}
+			shed = true;
+			shedReservedBytes = reservedBytes;
+			governor.shedBytes.addAndGet(shedReservedBytes);
+			channel.eventLoop().execute(() -> {
+				channel.pipeline().fireExceptionCaught(new DecoderException(reason));
+				channel.close();
+			});
+		}
+
+		protected synchronized void unregister() {
+			unregistered = true;
+			if (shed) {
+				governor.shedBytes.addAndGet(-shedReservedBytes);
+			}
+			governor.accounts.remove(this);
+			governor.reserve(-reservedBytes);
+			reservedBytes = 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,217 @@
+package raknetserver.session;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.security.SecureRandom;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.PromiseNotifier;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.internal.InternalDisconnect;
+import raknetserver.packet.internal.InternalMigrationChallenge;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
+import raknetserver.packet.raknet.RakNetPacketRegistry;
+import raknetserver.pipeline.internal.InternalPacketWriteHandler;
+import raknetserver.pipeline.raknet.RakNetKeepAliveHandler;
+import raknetserver.pipeline.raknet.RakNetPacketReliabilityHandler;
+import raknetserver.utils.Clock;
+import raknetserver.utils.PackedAddress;
+
+public class RakNetSession {
+
+	protected static final SecureRandom random = new SecureRandom();
+
+	protected final Channel channel;
+	protected final long guid;
+	protected volatile PackedAddress address;
+	//channel that currently carries datagrams of this session, null if session still uses its own channel
+	protected volatile Channel transport;
+	//secret given to the client in the server handshake, client proves that it owns the session with it when its address changes
+	protected final long migrationToken = random.nextLong();
+	//highest seq id received by the session channel, written by its reliability handler and read by other threads without synchronization, so it is only a hint
+	protected int receivedSeqId = -1;
+
+	public RakNetSession(Channel channel, long guid, PackedAddress address) {
+		this.channel = channel;
+		this.guid = guid;
+		this.address = address;
+	}
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	public long getGUID() {
+		return guid;
+	}
+
+	public PackedAddress getAddress() {
+		return address;
+	}
+
+	//remote address of the session channel is fixed at creation, this one follows migrations
+	public InetSocketAddress getRemoteAddress() {
+		return (InetSocketAddress) getTransport().remoteAddress();
+	}
+
+	public long getMigrationToken() {
+		return migrationToken;
+	}
+
+	public int getReceivedSeqId() {
+		return receivedSeqId;
+	}
+
+	public void setReceivedSeqId(int seqId) {
+		this.receivedSeqId = seqId;
+	}
+
+	public Channel getTransport() {
+		Channel transport = this.transport;
+		return transport != null ? transport : channel;
+	}
+
+	//waits until all reliable data is acknowledged, then sends disconnect notification and closes channel once it is acknowledged too, or once timeout passes
+	//peer closes as soon as it reads the notification, so anything still unacknowledged at that point would never be resent
+	public ChannelFuture disconnect(long timeout, TimeUnit unit) {
+		channel.eventLoop().execute(() -> {
+			if (!channel.isActive()) {
+				return;
+			}
+			Future<?> timeoutTask = Clock.get(channel).schedule(channel.eventLoop(), channel::close, timeout, unit);
+			channel.closeFuture().addListener(future -> timeoutTask.cancel(false));
+			RakNetPacketReliabilityHandler reliability = channel.pipeline().get(RakNetPacketReliabilityHandler.class);
+			if (reliability == null) {
+				channel.close();
+				return;
+			}
+			Promise<Void> drained = channel.eventLoop().newPromise();
+			reliability.notifyDrained(drained);
+			drained.addListener(future -> {
+				ChannelHandlerContext writeCtx = channel.pipeline().context(InternalPacketWriteHandler.class);
+				if (!channel.isActive() || (writeCtx == null)) {
+					channel.close();
+					return;
+				}
+				writeCtx.writeAndFlush(new InternalDisconnect());
+				Promise<Void> disconnected = channel.eventLoop().newPromise();
+				reliability.notifyDrained(disconnected);
+				disconnected.addListener(dfuture -> channel.close());
+			});
+		});
+		return channel.closeFuture();
+	}
+
+	//sends challenge with a random nonce to the transport, returns the nonce, should be called from the session channel event loop
+	//challenge datagram uses next seq id of the session, but it is not tracked for resend, so data of the session never goes to an address that didn't prove it owns the session
+	protected long sendMigrationChallenge(Channel ntransport, RakNetPacketReliabilityHandler reliability) {
+		long nonce = random.nextLong();
+		ChannelHandlerContext transportCtx = ntransport.pipeline().context(RakNetKeepAliveHandler.class);
+		if (transportCtx == null) {
+			return nonce;
+		}
+		ByteBuf data = ntransport.alloc().ioBuffer(1 + Long.BYTES);
+		data.writeByte(RakNetConstants.ID_I_MIGRATION_CHALLENGE);
+		new InternalMigrationChallenge(nonce).encode(data);
+		EncapsulatedPacket packet = new EncapsulatedPacket(data, 0, 0, 0);
+		packet.setReliability(EncapsulatedPacket.UNRELIABLE);
+		RakNetEncapsulatedData datagram = new RakNetEncapsulatedData(packet);
+		datagram.setSeqId(reliability.reserveSeqId());
+		ByteBuf buf = ntransport.alloc().ioBuffer(1 + datagram.getEncodedSize());
+		try {
+			buf.writeByte(RakNetPacketRegistry.getId(datagram));
+			datagram.encode(buf);
+		} finally {
+			datagram.release();
+		}
+		transportCtx.writeAndFlush(buf).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+		return nonce;
+	}
+
+	//moves session to a new remote address, session channel keeps all of its pipeline state, only datagrams are now received and sent using new transport channel
+	//should be called using session table, so its indexes are updated
+	protected void migrate(Channel ntransport) {
+		Channel prev;
+		synchronized (this) {
+			prev = transport;
+			transport = ntransport;
+			address = PackedAddress.of((InetSocketAddress) ntransport.remoteAddress());
+		}
+		if (prev == null) {
+			channel.pipeline().addFirst("rns-transport", new OutboundRedirector());
+			channel.closeFuture().addListener(future -> {
+				Channel current = transport;
+				if (current != null) {
+					current.close();
+				}
+			});
+		} else {
+			prev.close();
+		}
+		ntransport.pipeline().addAfter("rns-timeout", "rns-transport", new InboundForwarder());
+		ntransport.closeFuture().addListener(future -> {
+			if (transport == ntransport) {
+				channel.close();
+			}
+		});
+	}
+
+	protected class InboundForwarder extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			if (msg instanceof ByteBuf) {
+				if (channel.eventLoop().inEventLoop()) {
+					forward(msg);
+				} else {
+					channel.eventLoop().execute(() -> forward(msg));
+				}
+			} else {
+				ctx.fireChannelRead(msg);
+			}
+		}
+
+		protected void forward(Object msg) {
+			if (channel.isActive()) {
+				channel.pipeline().fireChannelRead(msg);
+			} else {
+				ReferenceCountUtil.release(msg);
+			}
+		}
+
+	}
+
+	protected class OutboundRedirector extends ChannelOutboundHandlerAdapter {
+
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+			Channel current = transport;
+			if ((current != null) && (msg instanceof ByteBuf)) {
+				//datagrams are already encoded, so they are written below encoders of the transport pipeline (only handlers in front of keep alive see them)
+				ChannelHandlerContext transportCtx = current.pipeline().context(RakNetKeepAliveHandler.class);
+				if (transportCtx != null) {
+					transportCtx.writeAndFlush(msg).addListener(new PromiseNotifier<>(promise));
+				} else {
+					ReferenceCountUtil.release(msg);
+					promise.tryFailure(new ClosedChannelException());
+				}
+			} else {
+				ctx.write(msg, promise);
+			}
+		}
+
+	}
+
+}
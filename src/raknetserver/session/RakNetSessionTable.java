@@ -0,0 +1,218 @@
+package raknetserver.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import raknetserver.packet.internal.InternalMigrationProof;
+import raknetserver.pipeline.raknet.RakNetPacketReliabilityHandler;
+import raknetserver.utils.Constants;
+import raknetserver.utils.PackedAddress;
+import raknetserver.utils.PackedAddressMap;
+import raknetserver.utils.TokenBucket;
+import raknetserver.utils.UINT;
+
+//server wide registry of established sessions, indexed by remote address, remote ip (for migration) and client guid
+public class RakNetSessionTable {
+
+	protected final PackedAddressMap<RakNetSession> byAddress = new PackedAddressMap<>();
+	//keys are addresses with port 0
+	protected final HashMap<PackedAddress, ArrayList<RakNetSession>> byIP = new HashMap<>();
+	@SuppressWarnings("unchecked")
+	protected final Long2ObjectOpenHashMap<RakNetSession>[] byGUID = new Long2ObjectOpenHashMap[16];
+	{
+		for (int i = 0; i < byGUID.length; i++) {
+			byGUID[i] = new Long2ObjectOpenHashMap<>();
+		}
+	}
+
+	protected volatile boolean closed;
+	//limits migration candidates scans, created with the clock of the first scan
+	protected TokenBucket scans;
+
+	//closed table still tracks existing sessions, but new sessions should not be established
+	public void close() {
+		closed = true;
+	}
+
+	public void open() {
+		closed = false;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	protected Long2ObjectOpenHashMap<RakNetSession> getGUIDStripe(long guid) {
+		return byGUID[((int) ((guid ^ (guid >>> 32)) * 0x9E3779B9)) >>> 28];
+	}
+
+	//returns previous session that used the same guid
+	public RakNetSession register(RakNetSession session) {
+		byAddress.put(session.getAddress(), session);
+		addIP(session);
+		Long2ObjectOpenHashMap<RakNetSession> stripe = getGUIDStripe(session.getGUID());
+		synchronized (stripe) {
+			return stripe.put(session.getGUID(), session);
+		}
+	}
+
+	public void unregister(RakNetSession session) {
+		synchronized (session) {
+			byAddress.remove(session.getAddress(), session);
+			removeIP(session);
+		}
+		Long2ObjectOpenHashMap<RakNetSession> stripe = getGUIDStripe(session.getGUID());
+		synchronized (stripe) {
+			stripe.remove(session.getGUID(), session);
+		}
+	}
+
+	protected static PackedAddress getIP(PackedAddress address) {
+		return new PackedAddress(address.getHigh(), address.getLow(), 0);
+	}
+
+	protected void addIP(RakNetSession session) {
+		synchronized (byIP) {
+			byIP.computeIfAbsent(getIP(session.getAddress()), k -> new ArrayList<>(1)).add(session);
+		}
+	}
+
+	protected void removeIP(RakNetSession session) {
+		PackedAddress ip = getIP(session.getAddress());
+		synchronized (byIP) {
+			ArrayList<RakNetSession> list = byIP.get(ip);
+			if ((list != null) && list.remove(session) && list.isEmpty()) {
+				byIP.remove(ip);
+			}
+		}
+	}
+
+	//sessions established from the same ip as the given address, but other port
+	public List<RakNetSession> getByIP(PackedAddress address) {
+		synchronized (byIP) {
+			ArrayList<RakNetSession> list = byIP.get(getIP(address));
+			if (list == null) {
+				return Collections.emptyList();
+			}
+			ArrayList<RakNetSession> result = new ArrayList<>(list.size());
+			for (RakNetSession session : list) {
+				if (session.getAddress().getPort() != address.getPort()) {
+					result.add(session);
+				}
+			}
+			return result;
+		}
+	}
+
+	//sessions that could be continued by the datagram with the given seq id received from the given address, at most max count of them
+	//sessions from the same ip go first, sessions from other ips are found by scanning the whole table, so scans are limited server wide
+	public List<RakNetSession> getMigrationCandidates(PackedAddress address, int seqId, long now) {
+		ArrayList<RakNetSession> candidates = new ArrayList<>(getByIP(address));
+		if (candidates.size() < Constants.MIGRATION_MAX_CANDIDATES) {
+			synchronized (this) {
+				if (scans == null) {
+					scans = new TokenBucket(Constants.MIGRATION_SCANS_PER_SECOND, 1, now);
+				}
+				if (!scans.tryAcquire(1, now)) {
+					return candidates;
+				}
+			}
+			PackedAddress ip = getIP(address);
+			forEach(session -> {
+				if ((candidates.size() < Constants.MIGRATION_MAX_CANDIDATES) && !getIP(session.getAddress()).equals(ip) && isCandidate(session, seqId)) {
+					candidates.add(session);
+				}
+			});
+		}
+		return candidates.size() > Constants.MIGRATION_MAX_CANDIDATES ? candidates.subList(0, Constants.MIGRATION_MAX_CANDIDATES) : candidates;
+	}
+
+	//exact check is done later by the session reliability handler, this one only filters by the published hint
+	protected static boolean isCandidate(RakNetSession session, int seqId) {
+		int received = session.getReceivedSeqId();
+		return (received != -1) && (Math.abs(UINT.B3.minusWrap(seqId, received)) <= Constants.MIGRATION_SEQ_DISTANCE);
+	}
+
+	//sends migration challenge to the transport if datagram with the given seq id, received by the transport, continues datagram sequence of the session
+	//check is done on the session channel event loop, because reliability state belongs to it, future is completed with the challenge nonce, or null if datagram doesn't continue the sequence
+	public Future<Long> challenge(RakNetSession session, Channel transport, int seqId) {
+		Channel channel = session.getChannel();
+		Promise<Long> promise = channel.eventLoop().newPromise();
+		runInEventLoop(channel, () -> {
+			RakNetPacketReliabilityHandler reliability = channel.pipeline().get(RakNetPacketReliabilityHandler.class);
+			if (channel.isActive() && transport.isActive() && (reliability != null) && reliability.isExpectedSeqId(seqId, Constants.MIGRATION_SEQ_DISTANCE)) {
+				promise.trySuccess(session.sendMigrationChallenge(transport, reliability));
+			} else {
+				promise.trySuccess(null);
+			}
+		});
+		return promise;
+	}
+
+	//moves session to the transport, transport should have already answered the challenge with a valid proof, future is completed with the result
+	public Future<Boolean> migrate(RakNetSession session, Channel transport, long nonce, long proof) {
+		Channel channel = session.getChannel();
+		Promise<Boolean> promise = channel.eventLoop().newPromise();
+		if (InternalMigrationProof.sign(session.getMigrationToken(), nonce) != proof) {
+			return promise.setSuccess(Boolean.FALSE);
+		}
+		runInEventLoop(channel, () -> {
+			if (channel.isActive() && transport.isActive()) {
+				migrate(session, transport);
+				promise.trySuccess(Boolean.TRUE);
+			} else {
+				promise.trySuccess(Boolean.FALSE);
+			}
+		});
+		return promise;
+	}
+
+	protected static void runInEventLoop(Channel channel, Runnable task) {
+		if (channel.eventLoop().inEventLoop()) {
+			task.run();
+		} else {
+			channel.eventLoop().execute(task);
+		}
+	}
+
+	protected void migrate(RakNetSession session, Channel transport) {
+		synchronized (session) {
+			byAddress.remove(session.getAddress(), session);
+			removeIP(session);
+			session.migrate(transport);
+			byAddress.put(session.getAddress(), session);
+			addIP(session);
+		}
+	}
+
+	public RakNetSession get(PackedAddress address) {
+		return byAddress.get(address);
+	}
+
+	public RakNetSession get(long high, long low, int port) {
+		return byAddress.get(high, low, port);
+	}
+
+	public RakNetSession getByGUID(long guid) {
+		Long2ObjectOpenHashMap<RakNetSession> stripe = getGUIDStripe(guid);
+		synchronized (stripe) {
+			return stripe.get(guid);
+		}
+	}
+
+	public void forEach(Consumer<RakNetSession> consumer) {
+		byAddress.forEach(consumer);
+	}
+
+	public int size() {
+		return byAddress.size();
+	}
+
+}
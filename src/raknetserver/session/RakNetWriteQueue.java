@@ -0,0 +1,153 @@
+package raknetserver.session;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.PlatformDependent;
+import raknetserver.utils.Constants;
+
+//application facing outbound queue, lets other threads write many messages to a connection without submitting a task for each of them
+//queues with pending messages are drained by a single task per event loop, each queue is flushed once per drain, so messages are packed into as few datagrams as possible
+//messages written using the queue are not ordered with messages written to the channel directly
+public class RakNetWriteQueue {
+
+	protected static final AttributeKey<RakNetWriteQueue> KEY = AttributeKey.valueOf("RakNetWriteQueue");
+
+	//queue is created on the first use, so connections that are never written to from other threads don't pay for it
+	public static RakNetWriteQueue get(Channel channel) {
+		RakNetWriteQueue queue = channel.attr(KEY).get();
+		if (queue == null) {
+			RakNetWriteQueue nqueue = new RakNetWriteQueue(channel);
+			queue = channel.attr(KEY).setIfAbsent(nqueue);
+			if (queue == null) {
+				queue = nqueue;
+			}
+		}
+		return queue;
+	}
+
+	public static boolean write(Channel channel, Object message) {
+		return get(channel).write(message);
+	}
+
+	public static int writeAll(Channel channel, Collection<?> messages) {
+		return get(channel).writeAll(messages);
+	}
+
+	protected static final AtomicIntegerFieldUpdater<RakNetWriteQueue> SCHEDULED_UPDATER = AtomicIntegerFieldUpdater.newUpdater(RakNetWriteQueue.class, "scheduled");
+
+	protected final Channel channel;
+	protected final Queue<Object> messages = PlatformDependent.newMpscQueue(Constants.WRITE_QUEUE_CAPACITY);
+	protected volatile LoopDrainer drainer;
+	protected volatile int scheduled;
+
+	protected RakNetWriteQueue(Channel channel) {
+		this.channel = channel;
+	}
+
+	//returns false and releases the message if queue is full
+	public boolean write(Object message) {
+		boolean added = offer(message);
+		schedule();
+		return added;
+	}
+
+	//returns count of written messages, messages that didn't fit are released
+	public int writeAll(Collection<?> messages) {
+		int written = 0;
+		for (Object message : messages) {
+			if (offer(message)) {
+				written++;
+			}
+		}
+		schedule();
+		return written;
+	}
+
+	protected boolean offer(Object message) {
+		if (messages.offer(message)) {
+			return true;
+		}
+		ReferenceCountUtil.release(message);
+		return false;
+	}
+
+	//drainer of the event loop is only known on the event loop thread, so the very first drain is submitted as a separate task
+	protected void schedule() {
+		if (messages.isEmpty() || !SCHEDULED_UPDATER.compareAndSet(this, 0, 1)) {
+			return;
+		}
+		LoopDrainer drainer = this.drainer;
+		if (drainer != null) {
+			drainer.schedule(this);
+		} else {
+			EventLoop loop = channel.eventLoop();
+			loop.execute(() -> {
+				this.drainer = LoopDrainer.get(loop);
+				drain();
+			});
+		}
+	}
+
+	protected void drain() {
+		scheduled = 0;
+		Object message;
+		boolean written = false;
+		while ((message = messages.poll()) != null) {
+			channel.write(message, channel.voidPromise());
+			written = true;
+		}
+		if (written) {
+			channel.flush();
+		}
+	}
+
+	protected static final class LoopDrainer implements Runnable {
+
+		protected static final FastThreadLocal<LoopDrainer> DRAINERS = new FastThreadLocal<>();
+
+		//thread can run more than one loop (embedded channels), so drainer is checked to belong to the loop
+		protected static LoopDrainer get(EventLoop loop) {
+			LoopDrainer drainer = DRAINERS.get();
+			if ((drainer == null) || (drainer.loop != loop)) {
+				drainer = new LoopDrainer(loop);
+				DRAINERS.set(drainer);
+			}
+			return drainer;
+		}
+
+		protected final EventLoop loop;
+		protected final Queue<RakNetWriteQueue> pending = PlatformDependent.newMpscQueue();
+		protected final AtomicBoolean wakeup = new AtomicBoolean();
+
+		protected LoopDrainer(EventLoop loop) {
+			this.loop = loop;
+		}
+
+		protected void schedule(RakNetWriteQueue queue) {
+			pending.offer(queue);
+			if (wakeup.compareAndSet(false, true)) {
+				loop.execute(this);
+			}
+		}
+
+		//wakeup flag is reset before polling, so queue added after that submits a new task instead of being missed
+		@Override
+		public void run() {
+			wakeup.set(false);
+			RakNetWriteQueue queue;
+			while ((queue = pending.poll()) != null) {
+				queue.drain();
+			}
+		}
+
+	}
+
+}
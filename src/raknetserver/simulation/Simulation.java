@@ -0,0 +1,394 @@
+package raknetserver.simulation;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import raknetserver.RakNetClient;
+import raknetserver.RakNetServer;
+import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler.PingHandler;
+import raknetserver.utils.Clock;
+import raknetserver.utils.VirtualClock;
+
+//runs clients and server pipelines over a simulated lossy network on a virtual clock
+//everything runs on the calling thread and all randomness comes from the seed, so same seed gives same results
+//each client sends numbered messages to the server, server checks their order and echoes them back, client checks order of echoes
+public class Simulation {
+
+	protected static final long EPOCH = 1500000000000L;
+	protected static final int USER_PACKET_ID = 0xFE;
+	protected static final InetSocketAddress SERVER_ADDRESS = new InetSocketAddress("10.0.0.1", 19132);
+
+	protected final VirtualClock clock = new VirtualClock(EPOCH);
+	protected final Random random;
+	protected final double loss;
+	protected final long latency;
+	protected final long jitter;
+	protected final PriorityQueue<Datagram> network = new PriorityQueue<>();
+	protected final ArrayList<Connection> connections = new ArrayList<>();
+	protected final RakNetServer server;
+	protected final RakNetClient client;
+
+	protected Connection initializing;
+	protected long nextDatagramId;
+	protected long datagramsSent;
+	protected long datagramsLost;
+	protected long errors;
+
+	//loss is the probability of each datagram being lost, latency and jitter are one way delay and its random addition
+	public Simulation(long seed, double loss, long latency, long jitter, TimeUnit unit) {
+		this.random = new Random(seed);
+		this.loss = loss;
+		this.latency = unit.toNanos(latency);
+		this.jitter = unit.toNanos(jitter);
+		this.server = new RakNetServer(SERVER_ADDRESS, new PingHandler() {
+			@Override
+			public void executeHandler(Runnable runnable) {
+				runnable.run();
+			}
+			@Override
+			public String getServerInfo(Channel channel) {
+				return "simulation";
+			}
+		}, channel -> channel.pipeline().addLast(initializing.new ServerHandler()), USER_PACKET_ID);
+		this.client = new RakNetClient(channel -> channel.pipeline().addLast(initializing.new ClientHandler()), USER_PACKET_ID);
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	public List<Connection> getConnections() {
+		return connections;
+	}
+
+	//client connects at a random moment within the spread, then sends messages of random size at the given rate
+	public void addConnections(int count, long spread, int messagesPerSecond, int maxMessageSize, TimeUnit unit) {
+		for (int i = 0; i < count; i++) {
+			int index = connections.size();
+			InetSocketAddress address = new InetSocketAddress("10." + (1 + (index >> 16)) + "." + ((index >> 8) & 0xFF) + "." + (index & 0xFF), 40000 + (index % 20000));
+			Connection connection = new Connection(address, messagesPerSecond, maxMessageSize);
+			connections.add(connection);
+			long delay = spread > 0 ? (long) (random.nextDouble() * unit.toNanos(spread)) : 0;
+			clock.schedule(null, connection::connect, delay, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	public void stopSending() {
+		for (Connection connection : connections) {
+			connection.stopSending();
+		}
+	}
+
+	//runs network and clock for the given simulated time
+	public void run(long duration, TimeUnit unit) {
+		long end = clock.nanoTime() + unit.toNanos(duration);
+		while (true) {
+			Datagram next = network.peek();
+			long time = Math.min(clock.getNextDeadline(), next != null ? next.deliverAt : Long.MAX_VALUE);
+			if (time > end) {
+				break;
+			}
+			clock.advanceTo(time);
+			while (((next = network.peek()) != null) && (next.deliverAt <= clock.nanoTime())) {
+				network.poll();
+				deliver(next);
+			}
+		}
+		clock.advanceTo(end);
+	}
+
+	public void close() {
+		for (Connection connection : connections) {
+			connection.close();
+		}
+		Datagram datagram;
+		while ((datagram = network.poll()) != null) {
+			datagram.data.release();
+		}
+	}
+
+	protected void send(SimulatedChannel target, ByteBuf data) {
+		datagramsSent++;
+		if (random.nextDouble() < loss) {
+			datagramsLost++;
+			data.release();
+			return;
+		}
+		long delay = latency + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+		network.add(new Datagram(nextDatagramId++, clock.nanoTime() + delay, target, data));
+	}
+
+	protected void deliver(Datagram datagram) {
+		SimulatedChannel target = datagram.target;
+		if (!target.isOpen()) {
+			datagram.data.release();
+			return;
+		}
+		try {
+			if (target.client) {
+				target.writeInbound(new DatagramPacket(datagram.data, (InetSocketAddress) target.localAddress(), SERVER_ADDRESS));
+			} else {
+				target.writeInbound(datagram.data);
+			}
+		} catch (RuntimeException e) {
+			errors++;
+		}
+	}
+
+	public String getSummary() {
+		int connected = 0;
+		long sent = 0;
+		long received = 0;
+		long echoed = 0;
+		long outOfOrder = 0;
+		for (Connection connection : connections) {
+			if (connection.connectPromise.isSuccess()) {
+				connected++;
+			}
+			sent += connection.sent;
+			received += connection.serverReceived;
+			echoed += connection.clientReceived;
+			outOfOrder += connection.outOfOrder;
+		}
+		return String.format(
+			"time: %d ms, connections: %d/%d, messages sent: %d, received: %d, echoed: %d, out of order: %d, datagrams: %d, lost: %d, errors: %d",
+			TimeUnit.NANOSECONDS.toMillis(clock.nanoTime()), connected, connections.size(), sent, received, echoed, outOfOrder, datagramsSent, datagramsLost, errors
+		);
+	}
+
+	protected static final class Datagram implements Comparable<Datagram> {
+
+		protected final long id;
+		protected final long deliverAt;
+		protected final SimulatedChannel target;
+		protected final ByteBuf data;
+
+		protected Datagram(long id, long deliverAt, SimulatedChannel target, ByteBuf data) {
+			this.id = id;
+			this.deliverAt = deliverAt;
+			this.target = target;
+			this.data = data;
+		}
+
+		@Override
+		public int compareTo(Datagram other) {
+			int cmp = Long.compare(deliverAt, other.deliverAt);
+			return cmp != 0 ? cmp : Long.compare(id, other.id);
+		}
+
+	}
+
+	//embedded channel with fixed addresses
+	protected class SimulatedChannel extends EmbeddedChannel {
+
+		protected final boolean client;
+		protected final InetSocketAddress local;
+		protected final InetSocketAddress remote;
+
+		//registered only after addresses are set, handlers may use them as soon as they are added
+		protected SimulatedChannel(boolean client, InetSocketAddress local, InetSocketAddress remote, ChannelInitializer<Channel> initializer) {
+			super(DefaultChannelId.newInstance(), false, false, initializer);
+			this.client = client;
+			this.local = local;
+			this.remote = remote;
+			try {
+				register();
+			} catch (Exception e) {
+				throw new IllegalStateException("Unable to register simulated channel", e);
+			}
+		}
+
+		@Override
+		protected SocketAddress localAddress0() {
+			return local;
+		}
+
+		@Override
+		protected SocketAddress remoteAddress0() {
+			return remote;
+		}
+
+	}
+
+	protected class NetworkHandler extends ChannelOutboundHandlerAdapter {
+
+		protected final Connection connection;
+		protected final boolean client;
+
+		protected NetworkHandler(Connection connection, boolean client) {
+			this.connection = connection;
+			this.client = client;
+		}
+
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+			if (msg instanceof ByteBuf) {
+				SimulatedChannel target = client ? connection.serverChannel : connection.clientChannel;
+				if (target != null) {
+					send(target, (ByteBuf) msg);
+				} else {
+					ReferenceCountUtil.release(msg);
+				}
+				promise.trySuccess();
+			} else {
+				ctx.write(msg, promise);
+			}
+		}
+
+	}
+
+	public class Connection {
+
+		protected final InetSocketAddress address;
+		protected final long sendPeriod;
+		protected final int maxMessageSize;
+		protected final Promise<Channel> connectPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+
+		protected SimulatedChannel clientChannel;
+		protected SimulatedChannel serverChannel;
+		protected Future<?> sendTask;
+		protected int sent;
+		protected int serverReceived;
+		protected int clientReceived;
+		protected int outOfOrder;
+
+		protected Connection(InetSocketAddress address, int messagesPerSecond, int maxMessageSize) {
+			this.address = address;
+			this.sendPeriod = TimeUnit.SECONDS.toNanos(1) / messagesPerSecond;
+			this.maxMessageSize = maxMessageSize;
+		}
+
+		//server side channel is created up front, as the real server creates it on the first datagram from the new address
+		protected void connect() {
+			initializing = this;
+			serverChannel = new SimulatedChannel(false, SERVER_ADDRESS, address, new ChannelInitializer<Channel>() {
+				@Override
+				protected void initChannel(Channel channel) {
+					channel.attr(Clock.KEY).set(clock);
+					channel.pipeline().addLast(new NetworkHandler(Connection.this, false));
+					server.initChannel(channel);
+				}
+			});
+			clientChannel = new SimulatedChannel(true, address, SERVER_ADDRESS, new ChannelInitializer<Channel>() {
+				@Override
+				protected void initChannel(Channel channel) {
+					channel.attr(Clock.KEY).set(clock);
+					channel.pipeline().addLast(new NetworkHandler(Connection.this, true));
+					client.initChannel(channel, connectPromise);
+				}
+			});
+			initializing = null;
+			connectPromise.addListener(future -> {
+				if (future.isSuccess()) {
+					sendTask = clock.scheduleAtFixedRate(null, this::sendMessage, 0, sendPeriod, TimeUnit.NANOSECONDS);
+				}
+			});
+		}
+
+		protected void sendMessage() {
+			if (!clientChannel.isActive()) {
+				stopSending();
+				return;
+			}
+			int size = random.nextInt(10) == 0 ? (maxMessageSize / 2) + random.nextInt(maxMessageSize / 2) : 4 + random.nextInt(200);
+			ByteBuf message = Unpooled.buffer(Math.max(size, 4));
+			message.writeInt(sent++);
+			message.writerIndex(message.capacity());
+			clientChannel.writeAndFlush(message);
+		}
+
+		protected void stopSending() {
+			if (sendTask != null) {
+				sendTask.cancel(false);
+				sendTask = null;
+			}
+		}
+
+		protected void close() {
+			stopSending();
+			close(clientChannel);
+			close(serverChannel);
+		}
+
+		protected void close(SimulatedChannel channel) {
+			if (channel == null) {
+				return;
+			}
+			try {
+				channel.finishAndReleaseAll();
+			} catch (RuntimeException e) {
+				errors++;
+			}
+		}
+
+		public boolean isConnected() {
+			return connectPromise.isSuccess();
+		}
+
+		public int getSent() {
+			return sent;
+		}
+
+		public int getServerReceived() {
+			return serverReceived;
+		}
+
+		public int getClientReceived() {
+			return clientReceived;
+		}
+
+		public int getOutOfOrder() {
+			return outOfOrder;
+		}
+
+		protected class ServerHandler extends ChannelInboundHandlerAdapter {
+
+			@Override
+			public void channelRead(ChannelHandlerContext ctx, Object msg) {
+				ByteBuf buf = (ByteBuf) msg;
+				if (buf.getInt(buf.readerIndex()) != serverReceived) {
+					outOfOrder++;
+				}
+				serverReceived++;
+				ctx.writeAndFlush(buf);
+			}
+
+		}
+
+		protected class ClientHandler extends ChannelInboundHandlerAdapter {
+
+			@Override
+			public void channelRead(ChannelHandlerContext ctx, Object msg) {
+				ByteBuf buf = (ByteBuf) msg;
+				if (buf.getInt(buf.readerIndex()) != clientReceived) {
+					outOfOrder++;
+				}
+				clientReceived++;
+				buf.release();
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+package raknetserver.utils;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+
+//time source and timer of the pipeline handlers, so the pipeline can run on simulated time
+//channels use the system clock, unless other clock is set in the channel attribute before the pipeline is initialized
+public abstract class Clock {
+
+	public static final AttributeKey<Clock> KEY = AttributeKey.valueOf("RakNetClock");
+
+	public static final Clock SYSTEM = new SystemClock();
+
+	public static Clock get(Channel channel) {
+		Clock clock = channel.attr(KEY).get();
+		return clock != null ? clock : SYSTEM;
+	}
+
+	//monotonic time for measuring intervals
+	public abstract long nanoTime();
+
+	//wall time for protocol timestamps
+	public abstract long currentTimeMillis();
+
+	public abstract Future<?> schedule(EventExecutor executor, Runnable task, long delay, TimeUnit unit);
+
+	public abstract Future<?> scheduleAtFixedRate(EventExecutor executor, Runnable task, long initialDelay, long period, TimeUnit unit);
+
+	protected static class SystemClock extends Clock {
+
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public Future<?> schedule(EventExecutor executor, Runnable task, long delay, TimeUnit unit) {
+			return executor.schedule(task, delay, unit);
+		}
+
+		@Override
+		public Future<?> scheduleAtFixedRate(EventExecutor executor, Runnable task, long initialDelay, long period, TimeUnit unit) {
+			return executor.scheduleAtFixedRate(task, initialDelay, period, unit);
+		}
+
+	}
+
+}
@@ -3,7 +3,56 @@ package raknetserver.utils;
 public class Constants {
 
 	public static final int MAX_PACKET_LOSS = Integer.parseInt(System.getProperty("raknetserver.maxPacketLoss", "10240"));
+	public static final long MAX_ORDER_QUEUE_BYTES = Long.parseLong(System.getProperty("raknetserver.maxOrderQueueBytes", "8388608"));
+	public static final long MEMORY_BUDGET = Long.parseLong(System.getProperty("raknetserver.memoryBudget", "0"));
+	public static final long CONNECTION_MEMORY_BUDGET = Long.parseLong(System.getProperty("raknetserver.connectionMemoryBudget", "16777216"));
+	public static final long WRITE_HIGH_WATER_MARK = Long.parseLong(System.getProperty("raknetserver.writeHighWaterMark", "1048576"));
+	public static final long WRITE_LOW_WATER_MARK = Long.parseLong(System.getProperty("raknetserver.writeLowWaterMark", "524288"));
+	public static final boolean DROP_LOW_PRIORITY_WHEN_UNWRITABLE = Boolean.parseBoolean(System.getProperty("raknetserver.dropLowPriorityWhenUnwritable", "true"));
+	public static final long OVERLOAD_DISCONNECT_TIMEOUT = Long.parseLong(System.getProperty("raknetserver.overloadDisconnectTimeout", "30000"));
+	public static final long RATE_LIMIT_DATAGRAMS = Long.parseLong(System.getProperty("raknetserver.rateLimitDatagrams", "0"));
+	public static final long RATE_LIMIT_BYTES = Long.parseLong(System.getProperty("raknetserver.rateLimitBytes", "0"));
+	public static final long RATE_LIMIT_MESSAGES = Long.parseLong(System.getProperty("raknetserver.rateLimitMessages", "0"));
+	public static final String RATE_LIMIT_ACTION = System.getProperty("raknetserver.rateLimitAction", "drop");
+	public static final int RATE_LIMIT_DELAY_QUEUE = Integer.parseInt(System.getProperty("raknetserver.rateLimitDelayQueue", "256"));
+	public static final long LOAD_PROBE_INTERVAL = Long.parseLong(System.getProperty("raknetserver.loadProbeInterval", "100"));
+	public static final long OVERLOAD_LAG_THRESHOLD = Long.parseLong(System.getProperty("raknetserver.overloadLagThreshold", "100"));
+	public static final String OVERLOAD_REJECT_REPLY = System.getProperty("raknetserver.overloadRejectReply", "failed");
+	public static final long OVERLOAD_PING_RATE = Long.parseLong(System.getProperty("raknetserver.overloadPingRate", "100"));
+	public static final long OVERLOAD_PING_INFO_INTERVAL = Long.parseLong(System.getProperty("raknetserver.overloadPingInfoInterval", "5000"));
+	public static final int WRITE_QUEUE_CAPACITY = Integer.parseInt(System.getProperty("raknetserver.writeQueueCapacity", "4096"));
+	public static final boolean USER_EXECUTOR = Boolean.parseBoolean(System.getProperty("raknetserver.userExecutor", "false"));
+	public static final int USER_EXECUTOR_THREADS = Integer.parseInt(System.getProperty("raknetserver.userExecutorThreads", "0"));
+	public static final int USER_EXECUTOR_HIGH_WATER_MARK = Integer.parseInt(System.getProperty("raknetserver.userExecutorHighWaterMark", "1024"));
+	public static final int USER_EXECUTOR_LOW_WATER_MARK = Integer.parseInt(System.getProperty("raknetserver.userExecutorLowWaterMark", "256"));
 	public static final int MAX_PACKET_SPLITS = Integer.parseInt(System.getProperty("raknetserver.maxPacketSplits", "4096"));
+	//outbound limit for stream messages (about 75mb at default mtu), only peers that accept that many split packets (stream inbound splits) can receive such streams
+	public static final int MAX_STREAM_SPLITS = Integer.parseInt(System.getProperty("raknetserver.maxStreamSplits", "65536"));
+	public static final int NACK_REORDER_DISTANCE = Integer.parseInt(System.getProperty("raknetserver.nackReorderDistance", "3"));
+	public static final long NACK_DELAY = Long.parseLong(System.getProperty("raknetserver.nackDelay", "20"));
+	public static final int SEND_WINDOW = Integer.parseInt(System.getProperty("raknetserver.sendWindow", "1024"));
+	public static final boolean ALLOW_SESSION_MIGRATION = Boolean.parseBoolean(System.getProperty("raknetserver.allowSessionMigration", "false"));
+	public static final int MIGRATION_SEQ_DISTANCE = Integer.parseInt(System.getProperty("raknetserver.migrationSeqDistance", "64"));
+	public static final long MIGRATION_CHALLENGE_TIMEOUT = Long.parseLong(System.getProperty("raknetserver.migrationChallengeTimeout", "1000"));
+	public static final int MIGRATION_MAX_CANDIDATES = Integer.parseInt(System.getProperty("raknetserver.migrationMaxCandidates", "4"));
+	public static final long MIGRATION_SCANS_PER_SECOND = Long.parseLong(System.getProperty("raknetserver.migrationScansPerSecond", "100"));
+	public static final boolean STREAM_INBOUND_SPLITS = Boolean.parseBoolean(System.getProperty("raknetserver.streamInboundSplits", "false"));
+	public static final boolean FUSED_PIPELINE = Boolean.parseBoolean(System.getProperty("raknetserver.fusedPipeline", "false"));
+	public static final long SHUTDOWN_DRAIN_TIMEOUT = Long.parseLong(System.getProperty("raknetserver.shutdownDrainTimeout", "5000"));
+	public static final int CLIENT_MTU = Integer.parseInt(System.getProperty("raknetserver.clientMtu", "1400"));
+	public static final int CLIENT_CONNECT_ATTEMPTS = Integer.parseInt(System.getProperty("raknetserver.clientConnectAttempts", "10"));
+	public static final long CLIENT_CONNECT_RETRY_INTERVAL = Long.parseLong(System.getProperty("raknetserver.clientConnectRetryInterval", "500"));
+	public static final long PROXY_SESSION_TIMEOUT = Long.parseLong(System.getProperty("raknetserver.proxySessionTimeout", "30000"));
+	public static final long PROXY_BACKEND_TIMEOUT = Long.parseLong(System.getProperty("raknetserver.proxyBackendTimeout", "5000"));
+	public static final long PROXY_PING_INTERVAL = Long.parseLong(System.getProperty("raknetserver.proxyPingInterval", "1000"));
+	public static final int PROXY_MAX_SESSIONS = Integer.parseInt(System.getProperty("raknetserver.proxyMaxSessions", "65536"));
+	public static final int PROXY_MAX_PENDING_SESSIONS = Integer.parseInt(System.getProperty("raknetserver.proxyMaxPendingSessions", "1024"));
+	public static final long PROXY_HANDSHAKE_TIMEOUT = Long.parseLong(System.getProperty("raknetserver.proxyHandshakeTimeout", "5000"));
+	public static final int PROXY_MAX_HELD_MESSAGES = Integer.parseInt(System.getProperty("raknetserver.proxyMaxHeldMessages", "1024"));
+	public static final String CAPTURE_DIRECTORY = System.getProperty("raknetserver.captureDirectory", "");
+	public static final int CAPTURE_FILE_SIZE = Integer.parseInt(System.getProperty("raknetserver.captureFileSize", "67108864"));
+	public static final int CAPTURE_MAX_FILES = Integer.parseInt(System.getProperty("raknetserver.captureMaxFiles", "16"));
+	public static final int CAPTURE_QUEUE_SIZE = Integer.parseInt(System.getProperty("raknetserver.captureQueueSize", "65536"));
 	public static final int UDP_IO_THREADS = Integer.parseInt(System.getProperty("raknetserver.udpIOThreads", "4"));
 
 }
@@ -0,0 +1,116 @@
+package raknetserver.utils;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+//address stored as primitives: 128 bit ip (ipv4 addresses are stored as ipv4-mapped ipv6 addresses) and port
+public final class PackedAddress {
+
+	protected static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+	public static PackedAddress ofIPv4(int ip, int port) {
+		return new PackedAddress(0, IPV4_MAPPED_PREFIX | (ip & 0xFFFFFFFFL), port);
+	}
+
+	public static PackedAddress of(InetSocketAddress address) {
+		InetAddress inetaddr = address.getAddress();
+		byte[] addr = inetaddr.getAddress();
+		if (inetaddr instanceof Inet4Address) {
+			return ofIPv4(bytesToInt(addr, 0), address.getPort());
+		} else {
+			return new PackedAddress(bytesToLong(addr, 0), bytesToLong(addr, 8), address.getPort());
+		}
+	}
+
+	public static int hashCode(long high, long low, int port) {
+		long hash = (high * 0x9E3779B97F4A7C15L) ^ (low * 0xC2B2AE3D27D4EB4FL) ^ port;
+		hash ^= hash >>> 32;
+		hash *= 0x165667B19E3779F9L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	private final long high;
+	private final long low;
+	private final int port;
+
+	public PackedAddress(long high, long low, int port) {
+		this.high = high;
+		this.low = low;
+		this.port = port;
+	}
+
+	public long getHigh() {
+		return high;
+	}
+
+	public long getLow() {
+		return low;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public boolean isIPv4() {
+		return (high == 0) && ((low & 0xFFFFFFFF00000000L) == IPV4_MAPPED_PREFIX);
+	}
+
+	public InetSocketAddress toInetSocketAddress() {
+		byte[] addr;
+		if (isIPv4()) {
+			addr = new byte[4];
+			intToBytes((int) low, addr, 0);
+		} else {
+			addr = new byte[16];
+			intToBytes((int) (high >>> 32), addr, 0);
+			intToBytes((int) high, addr, 4);
+			intToBytes((int) (low >>> 32), addr, 8);
+			intToBytes((int) low, addr, 12);
+		}
+		try {
+			return new InetSocketAddress(InetAddress.getByAddress(addr), port);
+		} catch (UnknownHostException e) {
+			throw new IllegalStateException("Unexpected error", e);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode(high, low, port);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PackedAddress)) {
+			return false;
+		}
+		PackedAddress other = (PackedAddress) obj;
+		return (high == other.high) && (low == other.low) && (port == other.port);
+	}
+
+	@Override
+	public String toString() {
+		return toInetSocketAddress().toString();
+	}
+
+	private static int bytesToInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+	}
+
+	private static long bytesToLong(byte[] bytes, int offset) {
+		return ((bytesToInt(bytes, offset) & 0xFFFFFFFFL) << 32) | (bytesToInt(bytes, offset + 4) & 0xFFFFFFFFL);
+	}
+
+	private static void intToBytes(int value, byte[] bytes, int offset) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+}
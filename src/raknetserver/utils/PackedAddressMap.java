@@ -0,0 +1,259 @@
+package raknetserver.utils;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+//open addressing (linear probing) map keyed by packed address primitives
+//map is split into stripes, each stripe is guarded by its own lock, but lookups use optimistic reads so they don't lock in the common case
+public class PackedAddressMap<V> {
+
+	protected final Stripe<V>[] stripes;
+	protected final int stripeBits;
+
+	public PackedAddressMap() {
+		this(16);
+	}
+
+	@SuppressWarnings("unchecked")
+	public PackedAddressMap(int stripesCount) {
+		if (Integer.bitCount(stripesCount) != 1) {
+			throw new IllegalArgumentException("Stripes count should be a power of two, got: " + stripesCount);
+		}
+		this.stripeBits = Integer.numberOfTrailingZeros(stripesCount);
+		this.stripes = new Stripe[stripesCount];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe<>();
+		}
+	}
+
+	protected Stripe<V> getStripe(int hash) {
+		//table index uses low bits of the hash, so stripe is selected using high bits
+		return stripes[(int) ((hash & 0xFFFFFFFFL) >>> (Integer.SIZE - stripeBits))];
+	}
+
+	public V get(PackedAddress address) {
+		return get(address.getHigh(), address.getLow(), address.getPort());
+	}
+
+	public V get(long high, long low, int port) {
+		int hash = PackedAddress.hashCode(high, low, port);
+		return getStripe(hash).get(hash, high, low, port);
+	}
+
+	public V put(PackedAddress address, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not allowed");
+		}
+		int hash = address.hashCode();
+		return getStripe(hash).put(hash, address.getHigh(), address.getLow(), address.getPort(), value);
+	}
+
+	public V remove(PackedAddress address) {
+		int hash = address.hashCode();
+		return getStripe(hash).remove(hash, address.getHigh(), address.getLow(), address.getPort(), null);
+	}
+
+	public boolean remove(PackedAddress address, V value) {
+		int hash = address.hashCode();
+		return getStripe(hash).remove(hash, address.getHigh(), address.getLow(), address.getPort(), value) != null;
+	}
+
+	//values are collected per stripe before calling the consumer, so consumer is free to modify the map
+	@SuppressWarnings("unchecked")
+	public void forEach(Consumer<? super V> consumer) {
+		ArrayList<Object> values = new ArrayList<>();
+		for (Stripe<V> stripe : stripes) {
+			values.clear();
+			long stamp = stripe.lock.readLock();
+			try {
+				for (Object value : stripe.table.values) {
+					if (value != null) {
+						values.add(value);
+					}
+				}
+			} finally {
+				stripe.lock.unlockRead(stamp);
+			}
+			for (Object value : values) {
+				consumer.accept((V) value);
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe<V> stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+
+	protected static final class Stripe<V> {
+
+		protected final StampedLock lock = new StampedLock();
+		protected Table table = new Table(16);
+		protected int size;
+
+		protected V get(int hash, long high, long low, int port) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				V value = table.get(hash, high, low, port);
+				if (lock.validate(stamp)) {
+					return value;
+				}
+			}
+			stamp = lock.readLock();
+			try {
+				return table.get(hash, high, low, port);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		protected V put(int hash, long high, long low, int port, V value) {
+			long stamp = lock.writeLock();
+			try {
+				V prev = table.put(hash, high, low, port, value);
+				if (prev == null) {
+					size++;
+					if (size > (table.values.length >> 1)) {
+						table = table.grow();
+					}
+				}
+				return prev;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		protected V remove(int hash, long high, long low, int port, V expected) {
+			long stamp = lock.writeLock();
+			try {
+				V prev = table.remove(hash, high, low, port, expected);
+				if (prev != null) {
+					size--;
+				}
+				return prev;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		protected int size() {
+			long stamp = lock.readLock();
+			try {
+				return size;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+	}
+
+	protected static final class Table {
+
+		protected final int[] hashes;
+		protected final long[] highs;
+		protected final long[] lows;
+		protected final int[] ports;
+		protected final Object[] values;
+		protected final int mask;
+
+		protected Table(int capacity) {
+			this.hashes = new int[capacity];
+			this.highs = new long[capacity];
+			this.lows = new long[capacity];
+			this.ports = new int[capacity];
+			this.values = new Object[capacity];
+			this.mask = capacity - 1;
+		}
+
+		@SuppressWarnings("unchecked")
+		protected <V> V get(int hash, long high, long low, int port) {
+			//probe count is limited, because optimistic read can see table in an inconsistent state
+			for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+				Object value = values[i];
+				if (value == null) {
+					return null;
+				}
+				if ((hashes[i] == hash) && (highs[i] == high) && (lows[i] == low) && (ports[i] == port)) {
+					return (V) value;
+				}
+			}
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		protected <V> V put(int hash, long high, long low, int port, V value) {
+			int i = hash & mask;
+			while (values[i] != null) {
+				if ((hashes[i] == hash) && (highs[i] == high) && (lows[i] == low) && (ports[i] == port)) {
+					V prev = (V) values[i];
+					values[i] = value;
+					return prev;
+				}
+				i = (i + 1) & mask;
+			}
+			hashes[i] = hash;
+			highs[i] = high;
+			lows[i] = low;
+			ports[i] = port;
+			values[i] = value;
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		protected <V> V remove(int hash, long high, long low, int port, V expected) {
+			int i = hash & mask;
+			while (values[i] != null) {
+				if ((hashes[i] == hash) && (highs[i] == high) && (lows[i] == low) && (ports[i] == port)) {
+					V prev = (V) values[i];
+					if ((expected != null) && (prev != expected)) {
+						return null;
+					}
+					shiftKeys(i);
+					return prev;
+				}
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		//backward shift deletion, keeps probe sequences intact without tombstones
+		protected void shiftKeys(int pos) {
+			int last;
+			for (;;) {
+				pos = ((last = pos) + 1) & mask;
+				for (;;) {
+					if (values[pos] == null) {
+						values[last] = null;
+						return;
+					}
+					int slot = hashes[pos] & mask;
+					if (last <= pos ? ((last >= slot) || (slot > pos)) : ((last >= slot) && (slot > pos))) {
+						break;
+					}
+					pos = (pos + 1) & mask;
+				}
+				hashes[last] = hashes[pos];
+				highs[last] = highs[pos];
+				lows[last] = lows[pos];
+				ports[last] = ports[pos];
+				values[last] = values[pos];
+			}
+		}
+
+		protected Table grow() {
+			Table ntable = new Table(values.length << 1);
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null) {
+					ntable.put(hashes[i], highs[i], lows[i], ports[i], values[i]);
+				}
+			}
+			return ntable;
+		}
+
+	}
+
+}
@@ -0,0 +1,78 @@
+package raknetserver.utils;
+
+//sliding bitmap of received 3 byte sequence ids, remembers ids that are not older than window size from the highest received one
+public class SequenceWindow {
+
+	protected final long[] bits;
+	protected final int mask;
+	protected int highest = UINT.B3.MAX_VALUE;
+
+	public SequenceWindow(int size) {
+		if ((Integer.bitCount(size) != 1) || (size < Long.SIZE)) {
+			throw new IllegalArgumentException("Window size should be a power of two and at least " + Long.SIZE + ", got: " + size);
+		}
+		this.bits = new long[size / Long.SIZE];
+		this.mask = size - 1;
+	}
+
+	//returns false if id was already received or is too old to tell
+	public boolean add(int seqId) {
+		final int diff = UINT.B3.minusWrap(seqId, highest);
+		if (diff > 0) {
+			//slots of ids that are skipped still contain old ids
+			if (diff > mask) {
+				for (int i = 0; i < bits.length; i++) {
+					bits[i] = 0;
+				}
+			} else {
+				for (int id = UINT.B3.plus(highest, 1); id != seqId; id = UINT.B3.plus(id, 1)) {
+					clear(id);
+				}
+			}
+			set(seqId);
+			highest = seqId;
+			return true;
+		}
+		if (-diff > mask) {
+			return false;
+		}
+		if (get(seqId)) {
+			return false;
+		}
+		set(seqId);
+		return true;
+	}
+
+	//ids older than window are reported as received
+	public boolean contains(int seqId) {
+		final int diff = UINT.B3.minusWrap(seqId, highest);
+		if (diff > 0) {
+			return false;
+		}
+		return (-diff > mask) || get(seqId);
+	}
+
+	public int getHighest() {
+		return highest;
+	}
+
+	public int getSize() {
+		return mask + 1;
+	}
+
+	protected boolean get(int id) {
+		int slot = id & mask;
+		return (bits[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	protected void set(int id) {
+		int slot = id & mask;
+		bits[slot >>> 6] |= 1L << slot;
+	}
+
+	protected void clear(int id) {
+		int slot = id & mask;
+		bits[slot >>> 6] &= ~(1L << slot);
+	}
+
+}
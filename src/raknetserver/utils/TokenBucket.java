@@ -0,0 +1,44 @@
+package raknetserver.utils;
+
+import java.util.concurrent.TimeUnit;
+
+//bucket holds up to one second worth of tokens, but never less than the biggest single acquire, so that it can't block forever
+public class TokenBucket {
+
+	protected final double rate;
+	protected final double capacity;
+	protected double tokens;
+	protected long lastRefill;
+
+	public TokenBucket(long ratePerSecond, long minCapacity, long now) {
+		if (ratePerSecond <= 0) {
+			throw new IllegalArgumentException("Rate should be positive, got: " + ratePerSecond);
+		}
+		this.rate = ratePerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+		this.capacity = Math.max(ratePerSecond, minCapacity);
+		this.tokens = capacity;
+		this.lastRefill = now;
+	}
+
+	protected void refill(long now) {
+		tokens = Math.min(capacity, tokens + ((now - lastRefill) * rate));
+		lastRefill = now;
+	}
+
+	public boolean tryAcquire(long amount, long now) {
+		refill(now);
+		if (tokens < Math.min(amount, capacity)) {
+			return false;
+		}
+		tokens -= amount;
+		return true;
+	}
+
+	//time after which tryAcquire of the given amount will succeed
+	public long nanosUntil(long amount, long now) {
+		refill(now);
+		double missing = Math.min(amount, capacity) - tokens;
+		return missing <= 0 ? 0 : (long) Math.ceil(missing / rate);
+	}
+
+}
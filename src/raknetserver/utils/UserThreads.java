@@ -0,0 +1,23 @@
+package raknetserver.utils;
+
+import java.util.concurrent.ThreadFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+//threads that run blocking user code, this is the java 8 version that uses bounded pool of platform threads
+//multi release jar replaces it with the version from src-java21 that uses virtual threads
+public class UserThreads {
+
+	public static boolean isVirtual() {
+		return false;
+	}
+
+	public static ThreadFactory newThreadFactory(String name) {
+		return new DefaultThreadFactory(name, true);
+	}
+
+	public static int getDefaultPoolSize() {
+		return Runtime.getRuntime().availableProcessors() * 8;
+	}
+
+}
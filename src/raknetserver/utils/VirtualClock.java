@@ -0,0 +1,151 @@
+package raknetserver.utils;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.netty.util.concurrent.EventExecutor;
+
+//manually advanced clock for simulations, time only moves when it is advanced
+//scheduled tasks are run by the thread that advances the clock, instead of the executor, in deadline order, tasks with the same deadline in scheduling order
+//so it should only be used with channels that don't have their own threads (embedded channels)
+public class VirtualClock extends Clock {
+
+	protected final long epochMillis;
+	protected final PriorityQueue<Task> tasks = new PriorityQueue<>();
+	protected long now;
+	protected long nextTaskId;
+
+	public VirtualClock(long epochMillis) {
+		this.epochMillis = epochMillis;
+	}
+
+	@Override
+	public long nanoTime() {
+		return now;
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return epochMillis + TimeUnit.NANOSECONDS.toMillis(now);
+	}
+
+	@Override
+	public Future<?> schedule(EventExecutor executor, Runnable task, long delay, TimeUnit unit) {
+		return add(new Task(task, now + Math.max(0, unit.toNanos(delay)), 0));
+	}
+
+	@Override
+	public Future<?> scheduleAtFixedRate(EventExecutor executor, Runnable task, long initialDelay, long period, TimeUnit unit) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Period should be positive, got: " + period);
+		}
+		return add(new Task(task, now + Math.max(0, unit.toNanos(initialDelay)), unit.toNanos(period)));
+	}
+
+	protected Task add(Task task) {
+		task.id = nextTaskId++;
+		tasks.add(task);
+		return task;
+	}
+
+	//deadline of the next pending task, or Long.MAX_VALUE if there are none
+	public long getNextDeadline() {
+		Task task;
+		while (((task = tasks.peek()) != null) && task.cancelled) {
+			tasks.poll();
+		}
+		return task != null ? task.deadline : Long.MAX_VALUE;
+	}
+
+	//runs all tasks with deadline up to the given time, clock is set to the task deadline while it runs
+	public void advanceTo(long time) {
+		while (getNextDeadline() <= time) {
+			Task task = tasks.poll();
+			now = Math.max(now, task.deadline);
+			try {
+				task.task.run();
+			} finally {
+				if ((task.period > 0) && !task.cancelled) {
+					task.deadline += task.period;
+					add(task);
+				} else {
+					task.done = true;
+				}
+			}
+		}
+		now = Math.max(now, time);
+	}
+
+	public void advance(long amount, TimeUnit unit) {
+		advanceTo(now + unit.toNanos(amount));
+	}
+
+	protected static class Task implements Future<Object>, Comparable<Task> {
+
+		protected final Runnable task;
+		protected final long period;
+		protected long deadline;
+		protected long id;
+		protected boolean cancelled;
+		protected boolean done;
+
+		protected Task(Runnable task, long deadline, long period) {
+			this.task = task;
+			this.deadline = deadline;
+			this.period = period;
+		}
+
+		@Override
+		public int compareTo(Task other) {
+			int cmp = Long.compare(deadline, other.deadline);
+			return cmp != 0 ? cmp : Long.compare(id, other.id);
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (done || cancelled) {
+				return false;
+			}
+			cancelled = true;
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done || cancelled;
+		}
+
+		//tasks are only run when the clock is advanced, so waiting for a pending task would never end
+		@Override
+		public Object get() {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			if (!done) {
+				throw new IllegalStateException("Task is not run until the clock is advanced past its deadline");
+			}
+			return null;
+		}
+
+		@Override
+		public Object get(long timeout, TimeUnit unit) throws TimeoutException {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			if (!done) {
+				throw new TimeoutException();
+			}
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,79 @@
+package raknetserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static raknetserver.TestChannels.*;
+
+public class BroadcastTests {
+    private static final int CONNECTIONS = 4;
+
+    @Test
+    public void testBroadcastSplitPayload() {
+        List<List<String>> received = new ArrayList<>();
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> {}, 0xFE);
+        List<EmbeddedChannel> clientChannels = new ArrayList<>();
+        List<EmbeddedChannel> serverChannels = new ArrayList<>();
+        //buffers shared by the broadcast are seen by handlers in front of the internal packet encoder
+        List<ByteBuf> shared = new ArrayList<>();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            List<String> clientReceived = new ArrayList<>();
+            received.add(clientReceived);
+            RakNetClient client = new RakNetClient(channel -> channel.pipeline().addLast(collector(clientReceived)), 0xFE);
+            Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+            EmbeddedChannel clientChannel = newClientChannel(client, connected);
+            EmbeddedChannel serverChannel = newServerChannel(server, new InetSocketAddress("127.0.0.1", 50000 + i));
+            pump(clientChannel, serverChannel);
+            assertTrue(connected.isSuccess());
+            serverChannel.pipeline().addAfter("rns-e-wb", "test-spy", new ChannelOutboundHandlerAdapter() {
+                @Override
+                public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+                    if (msg instanceof ByteBuf) {
+                        shared.add(((ByteBuf) msg).unwrap());
+                    }
+                    ctx.write(msg, promise);
+                }
+            });
+            clientChannels.add(clientChannel);
+            serverChannels.add(serverChannel);
+        }
+
+        char[] chars = new char[5000];
+        Arrays.fill(chars, 'b');
+        String payload = new String(chars);
+        ByteBuf data = Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8);
+        server.broadcast(data, new ArrayList<>(serverChannels));
+        assertEquals(0, data.refCnt());
+        assertEquals(CONNECTIONS, shared.size());
+        for (ByteBuf buf : shared) {
+            assertSame(shared.get(0), buf);
+        }
+
+        for (int i = 0; i < CONNECTIONS; i++) {
+            pump(clientChannels.get(i), serverChannels.get(i));
+            assertEquals(Arrays.asList(payload), received.get(i));
+        }
+        //all split packets are acknowledged, so nothing holds the shared buffer anymore
+        assertEquals(0, shared.get(0).refCnt());
+
+        for (int i = 0; i < CONNECTIONS; i++) {
+            clientChannels.get(i).finishAndReleaseAll();
+            serverChannels.get(i).finishAndReleaseAll();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package raknetserver;
+
+import raknetserver.TestChannels.TestChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static raknetserver.TestChannels.*;
+
+//measures heap retained by the raknet pipeline of idle (handshake not finished) and connected channels, embedded channel itself is excluded
+//heap deltas depend on gc, so numbers are only indicative, run with a fixed heap (-Xms = -Xmx) for stable results
+//usage: ConnectionFootprintBenchmark [idle connections] [connected connections]
+public class ConnectionFootprintBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int idle = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int connected = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        //warmup, so classes and pooled allocator arenas are not counted
+        measure(1000, true);
+        long[] idleSizes = measure(idle, false);
+        System.out.println(String.format("%-10s %8d channels %8d bytes/channel", "idle", idle, idleSizes[0]));
+        long[] connectedSizes = measure(connected, true);
+        System.out.println(String.format("%-10s %8d channels %8d bytes/channel", "connected", connected, connectedSizes[1]));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    //returns bytes per channel after init and after connection is established
+    private static long[] measure(int count, boolean connect) throws InterruptedException {
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> { }, 0xFE);
+        List<TestChannel> channels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            channels.add(new TestChannel(CLIENT_ADDRESS));
+        }
+        long bare = usedHeap();
+        for (TestChannel channel : channels) {
+            server.initChannel(channel);
+        }
+        long idle = usedHeap();
+        long active = idle;
+        if (connect) {
+            long guid = 0;
+            for (TestChannel channel : channels) {
+                channel.writeInbound(openConnectionRequest2(guid++));
+                channel.releaseOutbound();
+            }
+            active = usedHeap();
+        }
+        for (TestChannel channel : channels) {
+            if (!channel.isActive()) {
+                throw new IllegalStateException("Channel was closed");
+            }
+            channel.finishAndReleaseAll();
+        }
+        return new long[] {(idle - bare) / count, (active - bare) / count};
+    }
+}
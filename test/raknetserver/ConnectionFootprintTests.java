@@ -0,0 +1,43 @@
+package raknetserver;
+
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+import raknetserver.pipeline.raknet.RakNetPacketReliabilityHandler;
+
+import static org.junit.Assert.*;
+import static raknetserver.TestChannels.*;
+
+//heap used per connection is measured by ConnectionFootprintBenchmark, these tests only check that state is created lazily
+public class ConnectionFootprintTests {
+    private static final String[] STATE_HANDLERS = {"rns-rn-reliability", "rns-e-ws", "rns-e-wo", "rns-e-wb", "rns-i-readh"};
+
+    //idle channels have only handshake handlers, so they don't hold reliability, split and ordering state
+    @Test
+    public void testIdleChannelHasNoConnectionState() {
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> { }, 0xFE);
+        EmbeddedChannel channel = newServerChannel(server, CLIENT_ADDRESS);
+        ChannelPipeline pipeline = channel.pipeline();
+        assertNotNull(pipeline.get("rns-rn-connect"));
+        for (String name : STATE_HANDLERS) {
+            assertNull(name, pipeline.get(name));
+        }
+        assertEquals(0, server.getSessions().size());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testConnectionStateAddedOnConnect() {
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> { }, 0xFE);
+        EmbeddedChannel channel = newServerChannel(server, CLIENT_ADDRESS);
+        channel.writeInbound(openConnectionRequest2(1));
+        channel.releaseOutbound();
+        ChannelPipeline pipeline = channel.pipeline();
+        for (String name : STATE_HANDLERS) {
+            assertNotNull(name, pipeline.get(name));
+        }
+        assertTrue(pipeline.get("rns-rn-reliability") instanceof RakNetPacketReliabilityHandler);
+        assertTrue(channel.isActive());
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,72 @@
+package raknetserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.Test;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.utils.Constants;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static raknetserver.TestChannels.*;
+
+public class RakNetClientTests {
+    @Test
+    public void testConnectAndExchange() {
+        List<String> serverReceived = new ArrayList<>();
+        List<String> clientReceived = new ArrayList<>();
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> channel.pipeline().addLast(collector(serverReceived)), 0xFE);
+        RakNetClient client = new RakNetClient(channel -> channel.pipeline().addLast(collector(clientReceived)), 0xFE);
+        Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+        EmbeddedChannel clientChannel = newClientChannel(client, connected);
+        EmbeddedChannel serverChannel = newServerChannel(server, CLIENT_ADDRESS);
+
+        pump(clientChannel, serverChannel);
+        assertTrue(connected.isSuccess());
+
+        byte[] big = new byte[5000];
+        Arrays.fill(big, (byte) 'a');
+        clientChannel.writeAndFlush(Unpooled.copiedBuffer("hello", StandardCharsets.UTF_8));
+        clientChannel.writeAndFlush(Unpooled.wrappedBuffer(big));
+        serverChannel.writeAndFlush(Unpooled.copiedBuffer("world", StandardCharsets.UTF_8));
+        pump(clientChannel, serverChannel);
+        assertEquals(2, serverReceived.size());
+        assertEquals("hello", serverReceived.get(0));
+        assertEquals(new String(big, StandardCharsets.UTF_8), serverReceived.get(1));
+        assertEquals(1, clientReceived.size());
+        assertEquals("world", clientReceived.get(0));
+
+        clientChannel.close();
+        serverChannel.close();
+    }
+
+    //first connection request fills the whole mtu with ip and udp headers, so both sides use the mtu requested by the client
+    @Test
+    public void testConnectionRequestPadding() {
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> {}, 0xFE);
+        RakNetClient client = new RakNetClient(channel -> {}, 0xFE);
+        Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+        EmbeddedChannel clientChannel = newClientChannel(client, connected);
+        EmbeddedChannel serverChannel = newServerChannel(server, CLIENT_ADDRESS);
+
+        clientChannel.runPendingTasks();
+        ByteBuf request = clientChannel.readOutbound();
+        assertEquals(Constants.CLIENT_MTU - 20 - 8, request.readableBytes());
+        serverChannel.writeInbound(request);
+        pump(clientChannel, serverChannel);
+        assertTrue(connected.isSuccess());
+        assertEquals(Constants.CLIENT_MTU, (int) clientChannel.attr(RakNetConstants.MTU).get());
+        assertEquals(Constants.CLIENT_MTU, (int) serverChannel.attr(RakNetConstants.MTU).get());
+
+        clientChannel.close();
+        serverChannel.close();
+    }
+}
@@ -0,0 +1,187 @@
+package raknetserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.Test;
+import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler.PingHandler;
+import raknetserver.session.RakNetSession;
+import raknetserver.utils.Clock;
+import raknetserver.utils.PackedAddress;
+import raknetserver.utils.VirtualClock;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static raknetserver.TestChannels.*;
+
+public class ServerStopTests {
+    private final VirtualClock clock = new VirtualClock(0);
+    private final List<String> clientReceived = new ArrayList<>();
+    private final RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> {}, 0xFE);
+    private final RakNetClient client = new RakNetClient(channel -> channel.pipeline().addLast(collector(clientReceived)), 0xFE);
+    private final Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+    private EmbeddedChannel clientChannel;
+    private EmbeddedChannel serverChannel;
+
+    //server side runs on virtual time, so disconnect timeout and pings are driven by the test
+    private RakNetSession connect() {
+        clientChannel = newClientChannel(client, connected);
+        serverChannel = new TestChannel(CLIENT_ADDRESS);
+        serverChannel.attr(Clock.KEY).set(clock);
+        server.initChannel(serverChannel);
+        pump(clientChannel, serverChannel);
+        assertTrue(connected.isSuccess());
+        return server.getSessions().get(PackedAddress.of(CLIENT_ADDRESS));
+    }
+
+    private static void drop(EmbeddedChannel channel) {
+        ByteBuf datagram;
+        while ((datagram = channel.readOutbound()) != null) {
+            datagram.release();
+        }
+    }
+
+    //disconnect notification goes out only once all data is acknowledged, lost data is resent first (recovered by the gap after the next ping)
+    @Test
+    public void testDisconnectAfterDrain() {
+        RakNetSession session = connect();
+        serverChannel.writeAndFlush(Unpooled.copiedBuffer("s0", StandardCharsets.UTF_8));
+        serverChannel.writeAndFlush(Unpooled.copiedBuffer("s1", StandardCharsets.UTF_8));
+        drop(serverChannel);
+
+        Future<Void> closed = session.disconnect(5, TimeUnit.SECONDS);
+        serverChannel.runPendingTasks();
+        assertNull(serverChannel.readOutbound());
+        clock.advance(1, TimeUnit.SECONDS);
+        pump(clientChannel, serverChannel);
+        assertEquals(Arrays.asList("s0", "s1"), clientReceived);
+        assertFalse(clientChannel.isActive());
+        assertTrue(closed.isDone());
+        assertFalse(serverChannel.isActive());
+        assertEquals(0, server.getSessions().size());
+    }
+
+    //peer that doesn't acknowledge anything doesn't hold the channel longer than the timeout
+    @Test
+    public void testDisconnectTimeout() {
+        RakNetSession session = connect();
+        serverChannel.writeAndFlush(Unpooled.copiedBuffer("s0", StandardCharsets.UTF_8));
+        drop(serverChannel);
+
+        Future<Void> closed = session.disconnect(2, TimeUnit.SECONDS);
+        serverChannel.runPendingTasks();
+        clock.advance(1999, TimeUnit.MILLISECONDS);
+        drop(serverChannel);
+        assertFalse(closed.isDone());
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertTrue(closed.isDone());
+        assertFalse(serverChannel.isActive());
+        assertTrue(clientReceived.isEmpty());
+        clientChannel.finishAndReleaseAll();
+    }
+
+    //closed session table (server is stopping) refuses new handshakes
+    @Test
+    public void testRefuseWhileStopping() {
+        server.getSessions().close();
+        clientChannel = newClientChannel(client, connected);
+        serverChannel = newServerChannel(server, CLIENT_ADDRESS);
+        pump(clientChannel, serverChannel);
+        assertTrue(connected.isDone());
+        assertFalse(connected.isSuccess());
+        assertFalse(serverChannel.isActive());
+        assertEquals(0, server.getSessions().size());
+        clientChannel.finishAndReleaseAll();
+    }
+
+    private static InetSocketAddress freeAddress() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0))) {
+            return new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+        }
+    }
+
+    private static final class RunningServer implements AutoCloseable {
+        private final List<Channel> channels = new CopyOnWriteArrayList<>();
+        private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        private final InetSocketAddress address;
+        private final RakNetServer server;
+        private final RakNetClient client;
+
+        private RunningServer() throws IOException {
+            address = freeAddress();
+            server = new RakNetServer(address, new PingHandler() {
+                @Override
+                public void executeHandler(Runnable runnable) {
+                    runnable.run();
+                }
+
+                @Override
+                public String getServerInfo(Channel channel) {
+                    return "";
+                }
+            }, channels::add, 0xFE);
+            server.start();
+            client = new RakNetClient(channel -> channel.pipeline().addLast(collector(received)), 0xFE);
+            client.start();
+        }
+
+        private Channel connect() throws InterruptedException {
+            Future<Channel> connect = client.connect(address);
+            assertTrue(connect.await(5, TimeUnit.SECONDS));
+            assertTrue(connect.isSuccess());
+            return connect.getNow();
+        }
+
+        @Override
+        public void close() {
+            server.stopNow();
+            client.stopNow();
+        }
+    }
+
+    //queued data is delivered before client is disconnected, then event loops are shut down
+    @Test
+    public void testStop() throws Exception {
+        try (RunningServer running = new RunningServer()) {
+            Channel clientChannel = running.connect();
+            assertEquals(1, running.channels.size());
+            Channel serverChannel = running.channels.get(0);
+            for (int i = 0; i < 100; i++) {
+                serverChannel.write(Unpooled.copiedBuffer("s" + i, StandardCharsets.UTF_8));
+            }
+            serverChannel.flush();
+            running.server.stop(5, TimeUnit.SECONDS);
+            assertTrue(clientChannel.closeFuture().await(5, TimeUnit.SECONDS));
+            assertEquals(100, running.received.size());
+            assertFalse(serverChannel.isActive());
+            assertTrue(serverChannel.eventLoop().isShutdown());
+        }
+    }
+
+    //nothing is waited for, client is not notified
+    @Test
+    public void testStopNow() throws Exception {
+        try (RunningServer running = new RunningServer()) {
+            Channel clientChannel = running.connect();
+            Channel serverChannel = running.channels.get(0);
+            running.server.stopNow();
+            assertFalse(serverChannel.isActive());
+            assertTrue(serverChannel.eventLoop().isShutdown());
+            assertTrue(clientChannel.isActive());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package raknetserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Promise;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.RakNetDataSerializer;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+//shared fixture for tests that connect client and server pipelines using embedded channels
+public class TestChannels {
+    public static final InetSocketAddress CLIENT_ADDRESS = new InetSocketAddress("127.0.0.1", 50000);
+    public static final InetSocketAddress SERVER_ADDRESS = new InetSocketAddress("127.0.0.1", 19132);
+
+    public static class TestChannel extends EmbeddedChannel {
+        private final SocketAddress remote;
+
+        public TestChannel(SocketAddress remote, ChannelHandler... handlers) {
+            super(handlers);
+            this.remote = remote;
+        }
+
+        @Override
+        protected SocketAddress remoteAddress0() {
+            return remote;
+        }
+    }
+
+    public static EmbeddedChannel newClientChannel(RakNetClient client, Promise<Channel> connected) {
+        return new TestChannel(SERVER_ADDRESS, new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel channel) {
+                client.initChannel(channel, connected);
+            }
+        });
+    }
+
+    public static EmbeddedChannel newServerChannel(RakNetServer server, SocketAddress remote, ChannelHandler... handlers) {
+        EmbeddedChannel channel = new TestChannel(remote, handlers);
+        server.initChannel(channel);
+        return channel;
+    }
+
+    //last unconnected handshake packet, server establishes connection on it without waiting for the client
+    public static ByteBuf openConnectionRequest2(long guid) {
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(RakNetConstants.ID_RN_OPEN_CONNECTION_REQUEST_2);
+        buf.writeBytes(RakNetConstants.MAGIC);
+        RakNetDataSerializer.writeAddress(buf, SERVER_ADDRESS);
+        buf.writeShort(1400);
+        buf.writeLong(guid);
+        return buf;
+    }
+
+    public static ChannelHandler collector(List<String> received) {
+        return new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ByteBuf buf = (ByteBuf) msg;
+                received.add(buf.toString(StandardCharsets.UTF_8));
+                buf.release();
+            }
+        };
+    }
+
+    //moves datagrams between channels for a few round trips, running due tasks of both sides, datagrams sent to a closed channel are lost
+    public static void pump(EmbeddedChannel client, EmbeddedChannel server) {
+        for (int i = 0; i < 10; i++) {
+            client.runPendingTasks();
+            server.runPendingTasks();
+            Object msg;
+            while ((msg = client.readOutbound()) != null) {
+                if (server.isOpen()) {
+                    server.writeInbound(msg);
+                } else {
+                    ReferenceCountUtil.release(msg);
+                }
+            }
+            while ((msg = server.readOutbound()) != null) {
+                if (client.isOpen()) {
+                    client.writeInbound(new DatagramPacket((ByteBuf) msg, CLIENT_ADDRESS, SERVER_ADDRESS));
+                } else {
+                    ReferenceCountUtil.release(msg);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package raknetserver.capture;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.Test;
+import raknetserver.RakNetClient;
+import raknetserver.RakNetServer;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static raknetserver.TestChannels.*;
+
+public class CaptureTests {
+    @Test
+    public void testCaptureAndReplay() throws Exception {
+        File directory = Files.createTempDirectory("raknet-capture").toFile();
+        try {
+            List<String> received = new ArrayList<>();
+            RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> channel.pipeline().addLast(collector(received)), 0xFE);
+            RakNetClient client = new RakNetClient(channel -> {}, 0xFE);
+            Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+            EmbeddedChannel clientChannel = newClientChannel(client, connected);
+            CaptureLog log = new CaptureLog(directory, 4096, 100);
+            try {
+                EmbeddedChannel serverChannel = newServerChannel(server, CLIENT_ADDRESS, new CaptureHandler(log));
+                pump(clientChannel, serverChannel);
+                assertTrue(connected.isSuccess());
+                for (int i = 0; i < 50; i++) {
+                    clientChannel.writeAndFlush(Unpooled.copiedBuffer("message " + i, StandardCharsets.UTF_8));
+                }
+                pump(clientChannel, serverChannel);
+                assertEquals(50, received.size());
+                serverChannel.close();
+                clientChannel.close();
+            } finally {
+                log.close();
+            }
+            long records = log.getRecordCount();
+            assertTrue(records > 0);
+            assertTrue(directory.listFiles().length > 1);
+
+            List<String> replayed = new ArrayList<>();
+            RakNetServer replayServer = new RakNetServer(SERVER_ADDRESS, null, channel -> channel.pipeline().addLast(collector(replayed)), 0xFE);
+            CaptureReplay replay = new CaptureReplay(replayServer, 0);
+            long read = 0;
+            try (CaptureReader reader = new CaptureReader(directory)) {
+                while (reader.next()) {
+                    read++;
+                }
+            }
+            assertEquals(records, read);
+            try (CaptureReader reader = new CaptureReader(directory)) {
+                replay.replay(reader);
+            }
+            assertEquals(0, replay.getErrors());
+            assertEquals(received, replayed);
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    //failed write stops the capture, connection that is being captured is not affected
+    @Test
+    public void testStopOnWriteFailure() throws Exception {
+        File notDirectory = File.createTempFile("raknet-capture", ".bin");
+        try {
+            CaptureLog log = new CaptureLog(notDirectory, 4096, 100);
+            EmbeddedChannel channel = new EmbeddedChannel(new CaptureHandler(log));
+            assertTrue(channel.writeInbound(Unpooled.copiedBuffer("datagram", StandardCharsets.UTF_8)));
+            log.close();
+            assertNotNull(log.getFailure());
+            assertEquals(0, log.getRecordCount());
+            assertTrue(channel.writeInbound(Unpooled.copiedBuffer("datagram", StandardCharsets.UTF_8)));
+            assertTrue(channel.finishAndReleaseAll());
+        } finally {
+            notDirectory.delete();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package raknetserver.packet;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import raknetserver.utils.PackedAddress;
+
+import static org.junit.Assert.*;
+
+public class RakNetDataSerializerTests {
+    @Test
+    public void testAddressRoundTrip() throws Exception {
+        InetSocketAddress[] addresses = new InetSocketAddress[] {
+            new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 19132),
+            new InetSocketAddress(InetAddress.getByName("255.1.128.7"), 65535),
+            new InetSocketAddress(InetAddress.getByName("fe80::1:2:3:4"), 1)
+        };
+        for (InetSocketAddress address : addresses) {
+            ByteBuf buf = Unpooled.buffer();
+            RakNetDataSerializer.writeAddress(buf, address);
+            assertEquals(address, RakNetDataSerializer.readAddress(buf));
+            assertFalse(buf.isReadable());
+        }
+    }
+
+    //ipv4 address is written inverted in network order
+    @Test
+    public void testIPv4WireFormat() throws Exception {
+        ByteBuf buf = Unpooled.buffer();
+        RakNetDataSerializer.writeAddress(buf, new InetSocketAddress(InetAddress.getByName("192.168.1.2"), 19132));
+        assertEquals(Unpooled.wrappedBuffer(new byte[] {4, (byte) ~192, (byte) ~168, (byte) ~1, (byte) ~2, (byte) (19132 >> 8), (byte) 19132}), buf);
+    }
+
+    @Test
+    public void testEncodedAddress() throws Exception {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getByName("10.20.30.40"), 25565);
+        ByteBuf direct = Unpooled.buffer();
+        RakNetDataSerializer.writeAddress(direct, address);
+        ByteBuf encoded = RakNetDataSerializer.encodeAddress(address);
+        ByteBuf cached = Unpooled.buffer();
+        RakNetDataSerializer.writeAddress(cached, encoded);
+        RakNetDataSerializer.writeAddress(cached, encoded);
+        assertEquals(RakNetDataSerializer.IPV4_ADDRESS_LENGTH, encoded.readableBytes());
+        assertEquals(direct, cached.readSlice(direct.readableBytes()));
+        assertEquals(direct, cached);
+    }
+
+    @Test
+    public void testSkipAndPackedAddress() throws Exception {
+        InetSocketAddress[] addresses = new InetSocketAddress[] {
+            new InetSocketAddress(InetAddress.getByName("192.168.0.1"), 19132),
+            new InetSocketAddress(InetAddress.getByName("2001:db8::ff00:42:8329"), 19133)
+        };
+        for (InetSocketAddress address : addresses) {
+            ByteBuf buf = Unpooled.buffer();
+            RakNetDataSerializer.writeAddress(buf, address);
+            buf.writeByte(1);
+            ByteBuf skipped = buf.duplicate();
+            RakNetDataSerializer.skipAddress(skipped);
+            assertEquals(1, skipped.readableBytes());
+            PackedAddress packed = RakNetDataSerializer.readPackedAddress(buf);
+            assertEquals(1, buf.readableBytes());
+            assertEquals(PackedAddress.of(address), packed);
+            assertEquals(PackedAddress.of(address).hashCode(), packed.hashCode());
+            assertEquals(address, packed.toInetSocketAddress());
+            assertEquals(address.getAddress().getAddress().length == 4, packed.isIPv4());
+        }
+    }
+}
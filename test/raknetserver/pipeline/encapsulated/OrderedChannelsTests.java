@@ -0,0 +1,68 @@
+package raknetserver.pipeline.encapsulated;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+import org.junit.Test;
+import raknetserver.packet.EncapsulatedPacket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OrderedChannelsTests {
+    @Test
+    public void testShuffledWithDuplicates() {
+        Random random = new Random(0);
+        int count = 5000;
+        List<EncapsulatedPacket> packets = new ArrayList<>();
+        for (int orderChannel : new int[] { 0, 5 }) {
+            for (int i = 0; i < count; i++) {
+                packets.add(new EncapsulatedPacket(Unpooled.buffer(4).writeInt((orderChannel << 24) | i), 0, orderChannel, i));
+                if (random.nextInt(10) == 0) {
+                    packets.add(new EncapsulatedPacket(Unpooled.buffer(4).writeInt((orderChannel << 24) | i), 0, orderChannel, i));
+                }
+            }
+        }
+        //shuffle only within small windows, like reordering on the network
+        for (int i = 0; i < packets.size(); i += 50) {
+            Collections.shuffle(packets.subList(i, Math.min(i + 50, packets.size())), random);
+        }
+        OrderedChannels channels = new OrderedChannels();
+        List<Object> output = new ArrayList<>();
+        for (EncapsulatedPacket packet : packets) {
+            channels.decode(packet, output);
+            packet.release();
+        }
+        assertEquals(count * 2, output.size());
+        int[] next = new int[2];
+        for (Object o : output) {
+            ByteBuf data = (ByteBuf) o;
+            int value = data.readInt();
+            //channels are independent, so only order inside channel is checked
+            int channel = (value >>> 24) == 0 ? 0 : 1;
+            assertEquals(next[channel]++, value & 0xFFFFFF);
+            assertTrue(data.release());
+        }
+        for (EncapsulatedPacket packet : packets) {
+            assertEquals(0, packet.refCnt());
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        OrderedChannels channels = new OrderedChannels();
+        EncapsulatedPacket packet = new EncapsulatedPacket(Unpooled.buffer(1).writeByte(0), 0, 0, 1 << 22);
+        try {
+            channels.decode(packet, new ArrayList<>());
+            fail("Queue far ahead of the last received index should exceed the byte budget");
+        } catch (DecoderException e) {
+        } finally {
+            packet.release();
+            channels.release();
+        }
+    }
+}
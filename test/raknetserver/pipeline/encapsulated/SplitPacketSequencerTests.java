@@ -0,0 +1,141 @@
+package raknetserver.pipeline.encapsulated;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+import org.junit.Test;
+import raknetserver.packet.EncapsulatedPacket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SplitPacketSequencerTests {
+    private static final int USER_PACKET_ID = 0xFE;
+
+    //parts of a packet with the given first byte, each part holds its split index
+    private static List<EncapsulatedPacket> split(int firstByte, int splitId, int orderIndex, int splitCount) {
+        List<EncapsulatedPacket> parts = new ArrayList<>();
+        for (int i = 0; i < splitCount; i++) {
+            ByteBuf data = Unpooled.buffer();
+            if (i == 0) {
+                data.writeByte(firstByte);
+            }
+            data.writeByte(i);
+            parts.add(new EncapsulatedPacket(data, 0, 0, orderIndex, splitId, splitCount, i));
+        }
+        return parts;
+    }
+
+    private static List<Object> add(SplitPacketSequencer sequencer, EncapsulatedPacket part) {
+        List<Object> output = new ArrayList<>();
+        sequencer.add(part, output);
+        part.release();
+        return output;
+    }
+
+    //reads split indexes from output parts and releases them
+    private static List<Integer> read(List<Object> output) {
+        List<Integer> indexes = new ArrayList<>();
+        for (Object part : output) {
+            ByteBuf data = ((EncapsulatedPacket) part).getData();
+            while (data.isReadable()) {
+                indexes.add((int) data.readByte());
+            }
+            ((EncapsulatedPacket) part).release();
+        }
+        return indexes;
+    }
+
+    private static List<Integer> list(int... values) {
+        List<Integer> list = new ArrayList<>();
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    //parts are passed as soon as all previous ones are received, user packet id is removed from the first one
+    @Test
+    public void testOutOfOrder() {
+        SplitPacketSequencer sequencer = new SplitPacketSequencer(USER_PACKET_ID);
+        List<EncapsulatedPacket> parts = split(USER_PACKET_ID, 1, 0, 4);
+        assertEquals(list(), read(add(sequencer, parts.get(2))));
+        assertTrue(sequencer.getBytes() > 0);
+        assertEquals(list(0), read(add(sequencer, parts.get(0))));
+        assertEquals(list(), read(add(sequencer, parts.get(3))));
+        assertEquals(list(1, 2, 3), read(add(sequencer, parts.get(1))));
+        assertEquals(0, sequencer.getBytes());
+        assertTrue(sequencer.sequences.isEmpty());
+        for (EncapsulatedPacket part : parts) {
+            assertEquals(0, part.refCnt());
+        }
+    }
+
+    //late duplicates of a completed packet don't start a new sequence
+    @Test
+    public void testDuplicates() {
+        SplitPacketSequencer sequencer = new SplitPacketSequencer(USER_PACKET_ID);
+        List<EncapsulatedPacket> parts = split(USER_PACKET_ID, 1, 0, 3);
+        List<EncapsulatedPacket> duplicates = split(USER_PACKET_ID, 1, 0, 3);
+        assertEquals(list(), read(add(sequencer, parts.get(1))));
+        assertEquals(list(), read(add(sequencer, duplicates.get(1))));
+        assertEquals(list(0, 1), read(add(sequencer, parts.get(0))));
+        assertEquals(list(), read(add(sequencer, duplicates.get(0))));
+        assertEquals(list(2), read(add(sequencer, parts.get(2))));
+        for (EncapsulatedPacket duplicate : split(USER_PACKET_ID, 1, 0, 3)) {
+            assertEquals(list(), read(add(sequencer, duplicate)));
+        }
+        assertEquals(0, sequencer.getBytes());
+        assertTrue(sequencer.sequences.isEmpty());
+    }
+
+    //split id wraps around, sequence left by duplicates of an old packet is replaced by the new packet with the same split id
+    @Test
+    public void testSplitIdReuse() {
+        SplitPacketSequencer sequencer = new SplitPacketSequencer(USER_PACKET_ID);
+        EncapsulatedPacket stale = split(USER_PACKET_ID, 7, 3, 3).get(2);
+        assertEquals(list(), read(add(sequencer, stale)));
+        assertEquals(1, stale.refCnt());
+        List<EncapsulatedPacket> parts = split(USER_PACKET_ID, 7, 70000, 3);
+        assertEquals(list(), read(add(sequencer, parts.get(1))));
+        assertEquals(0, stale.refCnt());
+        assertEquals(list(0, 1), read(add(sequencer, parts.get(0))));
+        assertEquals(list(2), read(add(sequencer, parts.get(2))));
+        assertEquals(0, sequencer.getBytes());
+        assertTrue(sequencer.sequences.isEmpty());
+    }
+
+    //internal packets are decoded as a whole, so their parts are assembled, including parts received before the first one
+    @Test
+    public void testNonUserPacket() {
+        SplitPacketSequencer sequencer = new SplitPacketSequencer(USER_PACKET_ID);
+        List<EncapsulatedPacket> parts = split(0x10, 2, 0, 3);
+        List<EncapsulatedPacket> duplicates = split(0x10, 2, 0, 3);
+        assertEquals(list(), read(add(sequencer, parts.get(2))));
+        assertEquals(list(), read(add(sequencer, parts.get(0))));
+        assertEquals(list(), read(add(sequencer, duplicates.get(2))));
+        List<Object> output = add(sequencer, parts.get(1));
+        assertEquals(1, output.size());
+        assertFalse(((EncapsulatedPacket) output.get(0)).hasSplit());
+        assertEquals(list(0x10, 0, 1, 2), read(output));
+        assertEquals(list(), read(add(sequencer, duplicates.get(0))));
+        assertEquals(0, sequencer.getBytes());
+        assertTrue(sequencer.sequences.isEmpty());
+        assertFalse(sequencer.assembler.contains(2));
+    }
+
+    @Test(expected = DecoderException.class)
+    public void testSplitCountMismatch() {
+        SplitPacketSequencer sequencer = new SplitPacketSequencer(USER_PACKET_ID);
+        add(sequencer, split(USER_PACKET_ID, 1, 0, 4).get(2));
+        add(sequencer, split(USER_PACKET_ID, 1, 0, 5).get(3));
+    }
+
+    @Test(expected = DecoderException.class)
+    public void testSplitIndexOutOfRange() {
+        SplitPacketSequencer sequencer = new SplitPacketSequencer(USER_PACKET_ID);
+        add(sequencer, new EncapsulatedPacket(Unpooled.buffer().writeByte(0), 0, 0, 0, 1, 2, 2));
+    }
+}
@@ -0,0 +1,145 @@
+package raknetserver.pipeline.fused;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.Test;
+import raknetserver.RakNetClient;
+import raknetserver.RakNetServer;
+import raknetserver.TestChannels.TestChannel;
+import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static raknetserver.TestChannels.*;
+
+//same client datagrams are fed to fused and modular server pipelines, both should deliver the same messages
+public class FusedInboundDecoderTests {
+    private final List<String> fusedReceived = new ArrayList<>();
+    private final List<String> modularReceived = new ArrayList<>();
+    private final Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+    private final EmbeddedChannel client = newClientChannel(new RakNetClient(channel -> {}, 0xFE), connected);
+    private final EmbeddedChannel fused = newChannel(fusedReceived, true);
+    private final EmbeddedChannel modular = newChannel(modularReceived, false);
+
+    private static EmbeddedChannel newChannel(List<String> received, boolean fused) {
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> channel.pipeline().addLast(collector(received)), 0xFE);
+        EmbeddedChannel channel = new TestChannel(CLIENT_ADDRESS);
+        server.initChannel(channel, fused);
+        return channel;
+    }
+
+    private List<ByteBuf> readClient() {
+        client.runPendingTasks();
+        List<ByteBuf> datagrams = new ArrayList<>();
+        Object msg;
+        while ((msg = client.readOutbound()) != null) {
+            datagrams.add((ByteBuf) msg);
+        }
+        return datagrams;
+    }
+
+    //fused server answers the client, answers of the modular one are the same and are dropped
+    private void deliver(List<ByteBuf> datagrams) {
+        for (ByteBuf datagram : datagrams) {
+            modular.writeInbound(datagram.copy());
+            fused.writeInbound(datagram);
+        }
+        fused.runPendingTasks();
+        modular.runPendingTasks();
+        Object msg;
+        while ((msg = modular.readOutbound()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+        while ((msg = fused.readOutbound()) != null) {
+            client.writeInbound(new DatagramPacket((ByteBuf) msg, CLIENT_ADDRESS, SERVER_ADDRESS));
+        }
+    }
+
+    private void connect() {
+        for (int i = 0; i < 10; i++) {
+            deliver(readClient());
+        }
+        assertTrue(connected.isSuccess());
+        assertTrue(fused.pipeline().get(RakNetPacketConnectionEstablishHandler.class).isConnected());
+        assertTrue(modular.pipeline().get(RakNetPacketConnectionEstablishHandler.class).isConnected());
+        //decoders are added once connection is established
+        assertNotNull(fused.pipeline().get(FusedInboundDecoder.class));
+        assertNull(modular.pipeline().get(FusedInboundDecoder.class));
+    }
+
+    private List<String> write(int count, int bigEvery) {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String message = "message " + i;
+            if ((i % bigEvery) == 0) {
+                char[] chars = new char[3000 + i];
+                Arrays.fill(chars, (char) ('a' + (i % 26)));
+                message += new String(chars);
+            }
+            messages.add(message);
+            client.writeAndFlush(Unpooled.copiedBuffer(message, StandardCharsets.UTF_8));
+        }
+        return messages;
+    }
+
+    private void close() {
+        client.finishAndReleaseAll();
+        fused.finishAndReleaseAll();
+        modular.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testHandshakeAndInOrder() {
+        connect();
+        List<String> messages = write(20, 5);
+        deliver(readClient());
+        assertEquals(messages, fusedReceived);
+        assertEquals(messages, modularReceived);
+        close();
+    }
+
+    //reversed datagrams: ordered messages are held until the first one arrives, split packets are assembled from the last one
+    @Test
+    public void testReorderedSplits() {
+        connect();
+        List<String> messages = write(20, 3);
+        List<ByteBuf> datagrams = readClient();
+        assertTrue(datagrams.size() > messages.size());
+        Collections.reverse(datagrams);
+        deliver(datagrams);
+        assertEquals(messages, fusedReceived);
+        assertEquals(messages, modularReceived);
+        close();
+    }
+
+    @Test
+    public void testDuplicates() {
+        connect();
+        List<String> messages = write(10, 4);
+        List<ByteBuf> datagrams = readClient();
+        List<ByteBuf> duplicated = new ArrayList<>();
+        for (ByteBuf datagram : datagrams) {
+            duplicated.add(datagram.copy());
+            duplicated.add(datagram);
+        }
+        //late duplicates of already delivered datagrams
+        for (int i = 0; i < datagrams.size(); i += 2) {
+            duplicated.add(datagrams.get(i).copy());
+        }
+        deliver(duplicated);
+        assertEquals(messages, fusedReceived);
+        assertEquals(messages, modularReceived);
+        close();
+    }
+}
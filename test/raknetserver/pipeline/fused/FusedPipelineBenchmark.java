@@ -0,0 +1,97 @@
+package raknetserver.pipeline.fused;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import raknetserver.RakNetClient;
+import raknetserver.RakNetServer;
+import raknetserver.TestChannels.TestChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static raknetserver.TestChannels.*;
+
+//compares inbound cost of fused and modular server pipelines on the same traffic: small ordered messages with a split one every few packets
+//only server side inbound processing is timed, client and ack round trips are excluded
+//usage: FusedPipelineBenchmark [rounds] [messages per round]
+public class FusedPipelineBenchmark {
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        //warmup both variants before measuring
+        run(true, rounds / 4, messages);
+        run(false, rounds / 4, messages);
+        for (int i = 0; i < 3; i++) {
+            report("fused", run(true, rounds, messages));
+            report("modular", run(false, rounds, messages));
+        }
+    }
+
+    private static void report(String name, long[] result) {
+        System.out.println(String.format("%-8s %8d datagrams %8.1f ns/datagram", name, result[1], (double) result[0] / result[1]));
+    }
+
+    //returns total nanoseconds spent in server inbound processing and datagram count
+    private static long[] run(boolean fused, int rounds, int messages) {
+        long[] received = new long[1];
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                received[0]++;
+                ReferenceCountUtil.release(msg);
+            }
+        }), 0xFE);
+        Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+        EmbeddedChannel client = newClientChannel(new RakNetClient(channel -> {}, 0xFE), connected);
+        EmbeddedChannel serverChannel = new TestChannel(CLIENT_ADDRESS);
+        server.initChannel(serverChannel, fused);
+        pump(client, serverChannel);
+        if (!connected.isSuccess()) {
+            throw new IllegalStateException("Client didn't connect");
+        }
+
+        byte[] small = new byte[64];
+        byte[] big = new byte[4000];
+        long time = 0;
+        long count = 0;
+        List<Object> datagrams = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < messages; i++) {
+                client.write(Unpooled.wrappedBuffer((i % 8) == 0 ? big : small));
+            }
+            client.flush();
+            client.runPendingTasks();
+            Object msg;
+            while ((msg = client.readOutbound()) != null) {
+                datagrams.add(msg);
+            }
+            long start = System.nanoTime();
+            for (Object datagram : datagrams) {
+                serverChannel.writeInbound(datagram);
+            }
+            time += System.nanoTime() - start;
+            count += datagrams.size();
+            datagrams.clear();
+            serverChannel.runPendingTasks();
+            while ((msg = serverChannel.readOutbound()) != null) {
+                client.writeInbound(new DatagramPacket((ByteBuf) msg, CLIENT_ADDRESS, SERVER_ADDRESS));
+            }
+        }
+        if (received[0] != ((long) rounds * messages)) {
+            throw new IllegalStateException("Expected " + ((long) rounds * messages) + " messages, received " + received[0]);
+        }
+        client.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+        return new long[] {time, count};
+    }
+
+}
@@ -0,0 +1,187 @@
+package raknetserver.pipeline.raknet;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.RakNetMessage;
+import raknetserver.packet.RakNetPriority;
+import raknetserver.packet.internal.InternalPing;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
+import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
+import raknetserver.packet.raknet.RakNetReliability.RakNetNACK;
+import raknetserver.pipeline.internal.InternalPacketEncoder;
+import raknetserver.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OutboundSchedulingTests {
+    private static EncapsulatedPacket newPacket(RakNetPriority priority, int orderChannel, int orderIndex, int size) {
+        EncapsulatedPacket packet = new EncapsulatedPacket(Unpooled.buffer(size).writeZero(size), 0, orderChannel, orderIndex);
+        packet.setPriority(priority);
+        return packet;
+    }
+
+    private static List<EncapsulatedPacket> pollAll(OutboundPacketQueue queue) {
+        List<EncapsulatedPacket> packets = new ArrayList<>();
+        EncapsulatedPacket packet;
+        while ((packet = queue.poll(ByteBufAllocator.DEFAULT)) != null) {
+            packets.add(packet);
+        }
+        return packets;
+    }
+
+    private static EmbeddedChannel newChannel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(RakNetConstants.MTU).set(1400);
+        channel.pipeline().addLast(new RakNetPacketReliabilityHandler());
+        return channel;
+    }
+
+    private static int readDatagrams(EmbeddedChannel channel) {
+        int count = 0;
+        while (channel.readOutbound() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    //every round gives each non empty priority as many slots as its weight, immediate packets go before all of them
+    @Test
+    public void testPriorityWeights() {
+        OutboundPacketQueue queue = new OutboundPacketQueue();
+        for (int i = 0; i < 20; i++) {
+            queue.add(newPacket(RakNetPriority.LOW, 0, i, 1));
+            queue.add(newPacket(RakNetPriority.MEDIUM, 0, i, 1));
+            queue.add(newPacket(RakNetPriority.HIGH, 0, i, 1));
+        }
+        queue.add(newPacket(RakNetPriority.IMMEDIATE, 0, 0, 1));
+        List<EncapsulatedPacket> packets = pollAll(queue);
+        assertEquals(61, packets.size());
+        assertEquals(RakNetPriority.IMMEDIATE, packets.get(0).getPriority());
+        int round = RakNetPriority.HIGH.getWeight() + RakNetPriority.MEDIUM.getWeight() + RakNetPriority.LOW.getWeight();
+        int[] counts = new int[RakNetPriority.values().length];
+        for (EncapsulatedPacket packet : packets.subList(1, 1 + (round * 3))) {
+            counts[packet.getPriority().ordinal()]++;
+        }
+        assertEquals(RakNetPriority.HIGH.getWeight() * 3, counts[RakNetPriority.HIGH.ordinal()]);
+        assertEquals(RakNetPriority.MEDIUM.getWeight() * 3, counts[RakNetPriority.MEDIUM.ordinal()]);
+        assertEquals(RakNetPriority.LOW.getWeight() * 3, counts[RakNetPriority.LOW.ordinal()]);
+        //each priority keeps order of its packets
+        int[] next = new int[RakNetPriority.values().length];
+        for (EncapsulatedPacket packet : packets.subList(1, packets.size())) {
+            assertEquals(next[packet.getPriority().ordinal()]++, packet.getOrderIndex());
+            packet.release();
+        }
+        packets.get(0).release();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getBytes());
+    }
+
+    //big backlog of one order channel doesn't delay the other channel
+    @Test
+    public void testOrderChannelsRoundRobin() {
+        OutboundPacketQueue queue = new OutboundPacketQueue();
+        for (int i = 0; i < 10; i++) {
+            queue.add(newPacket(RakNetPriority.MEDIUM, 0, i, 1));
+        }
+        queue.add(newPacket(RakNetPriority.MEDIUM, 5, 0, 1));
+        queue.add(newPacket(RakNetPriority.MEDIUM, 5, 1, 1));
+        List<EncapsulatedPacket> packets = pollAll(queue);
+        assertEquals(12, packets.size());
+        assertEquals(5, packets.get(1).getOrderChannel());
+        assertEquals(5, packets.get(3).getOrderChannel());
+        packets.forEach(EncapsulatedPacket::release);
+    }
+
+    //only send window datagrams can be in flight, immediate packets are the only exception
+    @Test
+    public void testSendWindow() {
+        EmbeddedChannel channel = newChannel();
+        for (int i = 0; i < (Constants.SEND_WINDOW + 10); i++) {
+            channel.write(newPacket(RakNetPriority.MEDIUM, 0, i, 1000));
+        }
+        channel.flush();
+        assertEquals(Constants.SEND_WINDOW, readDatagrams(channel));
+
+        channel.writeAndFlush(newPacket(RakNetPriority.IMMEDIATE, 0, 0, 1000));
+        assertEquals(1, readDatagrams(channel));
+        channel.writeAndFlush(newPacket(RakNetPriority.HIGH, 0, 0, 1000));
+        assertEquals(0, readDatagrams(channel));
+
+        //acked datagrams free the window for the queued ones, immediate datagram still takes a slot while in flight
+        channel.writeInbound(new RakNetACK(0, 9));
+        assertEquals(9, readDatagrams(channel));
+        channel.writeInbound(new RakNetACK(10, 10));
+        assertEquals(1, readDatagrams(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    //lost packets of several half empty datagrams are packed together into full ones
+    @Test
+    public void testNackRepacking() {
+        EmbeddedChannel channel = newChannel();
+        for (int i = 0; i < 6; i++) {
+            channel.writeAndFlush(newPacket(RakNetPriority.MEDIUM, 0, i, 400));
+        }
+        assertEquals(6, readDatagrams(channel));
+        channel.writeInbound(new RakNetNACK(0, 5));
+        List<RakNetEncapsulatedData> datagrams = new ArrayList<>();
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            datagrams.add((RakNetEncapsulatedData) msg);
+        }
+        assertEquals(2, datagrams.size());
+        int orderIndex = 0;
+        for (RakNetEncapsulatedData datagram : datagrams) {
+            assertEquals(3, datagram.getPackets().size());
+            for (EncapsulatedPacket packet : datagram.getPackets()) {
+                assertEquals(orderIndex++, packet.getOrderIndex());
+                assertEquals(RakNetPriority.MEDIUM, packet.getPriority());
+            }
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    //resent packets don't go over the send window, even when immediate packets already filled it
+    @Test
+    public void testResendWithinSendWindow() {
+        EmbeddedChannel channel = newChannel();
+        for (int i = 0; i < Constants.SEND_WINDOW; i++) {
+            channel.write(newPacket(RakNetPriority.MEDIUM, 0, i, 1000));
+        }
+        channel.flush();
+        assertEquals(Constants.SEND_WINDOW, readDatagrams(channel));
+        channel.writeAndFlush(newPacket(RakNetPriority.IMMEDIATE, 0, 0, 1000));
+        assertEquals(1, readDatagrams(channel));
+
+        channel.writeInbound(new RakNetNACK(0, 9));
+        assertEquals(9, readDatagrams(channel));
+        channel.writeInbound(new RakNetACK(10, 10));
+        assertEquals(1, readDatagrams(channel));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testPingIsUnreliable() {
+        EmbeddedChannel channel = new EmbeddedChannel(new InternalPacketEncoder(0xFE));
+        channel.writeOutbound(new InternalPing(1));
+        EncapsulatedPacket packet = channel.readOutbound();
+        assertEquals(EncapsulatedPacket.UNRELIABLE, packet.getReliability());
+        assertEquals(RakNetPriority.IMMEDIATE, packet.getPriority());
+        //unreliable packets have neither message index nor order index and channel
+        assertEquals(1 + 2 + 1 + 8, packet.getEncodedSize());
+        packet.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOrderChannelLimit() {
+        new RakNetMessage(Unpooled.EMPTY_BUFFER, RakNetPriority.MEDIUM, RakNetConstants.MAX_ORDER_CHANNELS);
+    }
+}
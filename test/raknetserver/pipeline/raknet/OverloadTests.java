@@ -0,0 +1,72 @@
+package raknetserver.pipeline.raknet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.RakNetMessage;
+import raknetserver.packet.RakNetPriority;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
+import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketOutboundOrder;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketOverloadHandler;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketSplitter;
+import raknetserver.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OverloadTests {
+    private static List<EncapsulatedPacket> readPackets(EmbeddedChannel channel) {
+        List<EncapsulatedPacket> packets = new ArrayList<>();
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            packets.addAll(((RakNetEncapsulatedData) msg).getPackets());
+        }
+        return packets;
+    }
+
+    @Test
+    public void testWritabilityAndPolicies() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(RakNetConstants.MTU).set(1400);
+        EncapsulatedPacketOverloadHandler overload = new EncapsulatedPacketOverloadHandler();
+        RakNetPacketReliabilityHandler reliability = new RakNetPacketReliabilityHandler();
+        channel.pipeline().addLast(reliability, new EncapsulatedPacketSplitter(), new EncapsulatedPacketOutboundOrder(), overload);
+
+        int count = (int) (Constants.WRITE_HIGH_WATER_MARK / 1000) + 1;
+        for (int i = 0; i < count; i++) {
+            channel.write(new RakNetMessage(Unpooled.buffer(1000).writeZero(1000), RakNetPriority.MEDIUM));
+        }
+        assertFalse(channel.isWritable());
+
+        //low priority data is dropped and state updates are coalesced while unwritable
+        ByteBuf low = Unpooled.buffer(1).writeByte(1);
+        channel.write(new RakNetMessage(low, RakNetPriority.LOW));
+        assertEquals(0, low.refCnt());
+        ByteBuf stale = Unpooled.buffer(1).writeByte(2);
+        channel.write(new RakNetMessage(stale, RakNetPriority.MEDIUM, 0, 7));
+        channel.write(new RakNetMessage(Unpooled.buffer(1).writeByte(3), RakNetPriority.MEDIUM, 0, 7));
+        assertEquals(0, stale.refCnt());
+        assertEquals(1, overload.getDroppedMessages());
+        assertEquals(1, overload.getCoalescedMessages());
+
+        channel.flush();
+        List<EncapsulatedPacket> sent = readPackets(channel);
+        assertTrue(reliability.getPendingBytes() >= Constants.WRITE_LOW_WATER_MARK);
+        channel.writeInbound(new RakNetACK(0, Math.min(count, Constants.SEND_WINDOW) - 1));
+        sent.addAll(readPackets(channel));
+        assertTrue(channel.isWritable());
+
+        //held update is sent once channel is writable again, with the next order index
+        assertEquals(count + 1, sent.size());
+        EncapsulatedPacket last = sent.get(count);
+        assertEquals(count, last.getOrderIndex());
+        assertEquals(3, last.getData().getByte(last.getData().readerIndex()));
+        channel.finishAndReleaseAll();
+    }
+}
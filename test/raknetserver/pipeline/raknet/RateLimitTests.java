@@ -0,0 +1,79 @@
+package raknetserver.pipeline.raknet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+import raknetserver.pipeline.raknet.RakNetRateLimitHandler.Action;
+import raknetserver.utils.Clock;
+import raknetserver.utils.VirtualClock;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RateLimitTests {
+    @Test
+    public void testDrop() {
+        RakNetRateLimitHandler limiter = new RakNetRateLimitHandler.Datagrams(10, 0, Action.DROP);
+        EmbeddedChannel channel = new EmbeddedChannel(limiter);
+        ByteBuf last = null;
+        for (int i = 0; i < 15; i++) {
+            last = Unpooled.buffer(1).writeByte(i);
+            channel.writeInbound(last);
+        }
+        assertEquals(0, last.refCnt());
+        assertEquals(10, limiter.getPassedCount());
+        assertEquals(5, limiter.getDroppedCount());
+        assertEquals(10, channel.inboundMessages().size());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testDelayKeepsOrder() throws InterruptedException {
+        RakNetRateLimitHandler limiter = new RakNetRateLimitHandler.Messages(100, Action.DELAY);
+        EmbeddedChannel channel = new EmbeddedChannel(limiter);
+        for (int i = 0; i < 110; i++) {
+            channel.writeInbound(Unpooled.buffer(4).writeInt(i));
+        }
+        //bucket refills while the messages are written and embedded channel runs due delayed reads, so a few more can pass on a slow machine
+        int passed = channel.inboundMessages().size();
+        assertTrue(passed >= 100);
+        assertTrue(limiter.getDelayedCount() >= 110 - passed);
+        Thread.sleep(150);
+        channel.runScheduledPendingTasks();
+        assertEquals(110, channel.inboundMessages().size());
+        for (int i = 0; i < 110; i++) {
+            ByteBuf buf = channel.readInbound();
+            assertEquals(i, buf.readInt());
+            buf.release();
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    //buckets start from the channel clock, delayed messages are read once the clock is advanced
+    @Test
+    public void testChannelClock() {
+        VirtualClock clock = new VirtualClock(0);
+        clock.advance(1, TimeUnit.HOURS);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(Clock.KEY).set(clock);
+        RakNetRateLimitHandler limiter = new RakNetRateLimitHandler.Messages(10, Action.DELAY);
+        channel.pipeline().addLast(limiter);
+        for (int i = 0; i < 15; i++) {
+            channel.writeInbound(Unpooled.buffer(4).writeInt(i));
+        }
+        assertEquals(10, channel.inboundMessages().size());
+        assertEquals(5, limiter.getDelayedCount());
+        clock.advance(300, TimeUnit.MILLISECONDS);
+        assertEquals(13, channel.inboundMessages().size());
+        clock.advance(200, TimeUnit.MILLISECONDS);
+        assertEquals(15, channel.inboundMessages().size());
+        for (int i = 0; i < 15; i++) {
+            ByteBuf buf = channel.readInbound();
+            assertEquals(i, buf.readInt());
+            buf.release();
+        }
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,157 @@
+package raknetserver.pipeline.raknet;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.EncoderException;
+import org.junit.Test;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.RakNetPriority;
+import raknetserver.packet.RakNetStreamMessage;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
+import raknetserver.packet.raknet.RakNetReliability.RakNetACK;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketOutboundOrder;
+import raknetserver.pipeline.encapsulated.EncapsulatedPacketSplitter;
+import raknetserver.utils.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import static org.junit.Assert.*;
+
+public class StreamMessageTests {
+    private static final int MTU = 1400;
+    //one split packet per datagram
+    private static final int SPLIT_SIZE = MTU - 200;
+
+    //source of zeros that counts read bytes and fails once the given amount is read
+    private static class TestSource implements ReadableByteChannel {
+        private final long failAt;
+        private long read;
+        private boolean closed;
+
+        private TestSource(long failAt) {
+            this.failAt = failAt;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (read >= failAt) {
+                throw new IOException("Test read failure");
+            }
+            int length = (int) Math.min(dst.remaining(), failAt - read);
+            dst.position(dst.position() + length);
+            read += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static EmbeddedChannel newChannel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.attr(RakNetConstants.MTU).set(MTU);
+        channel.pipeline().addLast(new RakNetPacketReliabilityHandler(), new EncapsulatedPacketSplitter(), new EncapsulatedPacketOutboundOrder());
+        return channel;
+    }
+
+    private static int readDatagrams(EmbeddedChannel channel) {
+        int count = 0;
+        while (channel.readOutbound() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    //split packets are read from the source only when there is send window space for them
+    @Test
+    public void testLazySplitsAndSendWindow() {
+        EmbeddedChannel channel = newChannel();
+        int splitCount = Constants.SEND_WINDOW + 100;
+        TestSource source = new TestSource(Long.MAX_VALUE);
+        channel.write(RakNetStreamMessage.of(source, (long) splitCount * SPLIT_SIZE, RakNetPriority.MEDIUM, 0));
+        assertEquals(0, source.read);
+
+        channel.flush();
+        assertEquals(Constants.SEND_WINDOW, readDatagrams(channel));
+        //packet that didn't fit in the window is kept at the head of the queue
+        assertEquals((long) (Constants.SEND_WINDOW + 1) * SPLIT_SIZE, source.read);
+
+        channel.writeInbound(new RakNetACK(0, 49));
+        assertEquals(50, readDatagrams(channel));
+        assertEquals((long) (Constants.SEND_WINDOW + 51) * SPLIT_SIZE, source.read);
+
+        channel.writeInbound(new RakNetACK(50, 99));
+        assertEquals(50, readDatagrams(channel));
+        assertEquals((long) splitCount * SPLIT_SIZE, source.read);
+        //last split packet was polled, so stream is released and source is closed
+        assertTrue(source.closed);
+        channel.finishAndReleaseAll();
+    }
+
+    //part of the message was already sent, so connection can't continue
+    @Test
+    public void testReadFailureClosesChannel() {
+        EmbeddedChannel channel = newChannel();
+        TestSource source = new TestSource(10L * SPLIT_SIZE);
+        channel.writeAndFlush(RakNetStreamMessage.of(source, 20L * SPLIT_SIZE, RakNetPriority.MEDIUM, 0));
+        assertFalse(channel.isOpen());
+        assertTrue(source.closed);
+        try {
+            channel.checkException();
+            fail();
+        } catch (EncoderException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    //streams are not limited by max packet splits, it only limits receivers that assemble split packets in memory
+    @Test
+    public void testStreamAbovePacketSplitLimit() {
+        EmbeddedChannel channel = newChannel();
+        int splitCount = Constants.MAX_PACKET_SPLITS + 1;
+        TestSource source = new TestSource(Long.MAX_VALUE);
+        ChannelFuture future = channel.writeAndFlush(RakNetStreamMessage.of(source, (long) splitCount * SPLIT_SIZE, RakNetPriority.MEDIUM, 0));
+        int sent = 0;
+        RakNetEncapsulatedData datagram;
+        while (sent < splitCount) {
+            int window = 0;
+            while ((datagram = channel.readOutbound()) != null) {
+                assertEquals(splitCount, datagram.getPackets().get(0).getSplitCount());
+                window++;
+            }
+            assertTrue(window > 0);
+            channel.writeInbound(new RakNetACK(sent, sent + window - 1));
+            sent += window;
+        }
+        assertEquals(splitCount, sent);
+        assertEquals((long) splitCount * SPLIT_SIZE, source.read);
+        assertTrue(source.closed);
+        assertTrue(future.isSuccess());
+        assertTrue(channel.isOpen());
+        channel.finishAndReleaseAll();
+    }
+
+    //stream that is over the stream split limit is refused before anything is sent
+    @Test
+    public void testSplitCountLimit() {
+        EmbeddedChannel channel = newChannel();
+        TestSource source = new TestSource(Long.MAX_VALUE);
+        ChannelFuture future = channel.writeAndFlush(RakNetStreamMessage.of(source, (Constants.MAX_STREAM_SPLITS + 1L) * SPLIT_SIZE, RakNetPriority.MEDIUM, 0));
+        assertTrue(future.cause() instanceof EncoderException);
+        assertEquals(0, source.read);
+        assertTrue(source.closed);
+        assertEquals(0, readDatagrams(channel));
+        assertTrue(channel.isOpen());
+        channel.finishAndReleaseAll();
+    }
+}
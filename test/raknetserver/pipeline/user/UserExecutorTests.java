@@ -0,0 +1,63 @@
+package raknetserver.pipeline.user;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.NonStickyEventExecutorGroup;
+import io.netty.util.concurrent.UnorderedThreadPoolEventExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class UserExecutorTests {
+    @Test
+    public void testOrderAndBackpressure() throws InterruptedException {
+        EventExecutorGroup executor = new NonStickyEventExecutorGroup(new UnorderedThreadPoolEventExecutor(4));
+        UserExecutorBackpressure backpressure = new UserExecutorBackpressure(10, 2);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch handled = new CountDownLatch(20);
+        List<Integer> received = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(backpressure.getGate(), backpressure.getEnqueueHandler());
+        channel.pipeline().addLast(executor, backpressure.getDequeueHandler());
+        channel.pipeline().addLast(executor, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                blocked.await();
+                ByteBuf buf = (ByteBuf) msg;
+                received.add(buf.readInt());
+                buf.release();
+                handled.countDown();
+            }
+        });
+        try {
+            for (int i = 0; i < 20; i++) {
+                channel.writeInbound(Unpooled.buffer().writeInt(i));
+            }
+            assertTrue(backpressure.isPaused());
+            ByteBuf data = Unpooled.buffer().writeByte(0x84);
+            channel.writeInbound(data);
+            assertEquals(0, data.refCnt());
+            assertEquals(1, backpressure.getDroppedCount());
+            blocked.countDown();
+            assertTrue(handled.await(5, TimeUnit.SECONDS));
+            //messages are counted as handled by tasks queued after the handler ones
+            assertTrue(channel.pipeline().context(backpressure.getDequeueHandler()).executor().submit(() -> {}).await(5, TimeUnit.SECONDS));
+            assertFalse(backpressure.isPaused());
+            assertEquals(0, backpressure.getQueuedCount());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, received.get(i).intValue());
+            }
+        } finally {
+            channel.finishAndReleaseAll();
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        }
+    }
+}
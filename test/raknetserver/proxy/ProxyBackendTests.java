@@ -0,0 +1,50 @@
+package raknetserver.proxy;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import raknetserver.utils.Constants;
+
+import static org.junit.Assert.*;
+
+public class ProxyBackendTests {
+    @Test
+    public void testRoutesAreSticky() {
+        long now = 0;
+        List<ProxyBackend> backends = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            backends.add(new ProxyBackend(new InetSocketAddress("127.0.0.1", 19132 + i), now));
+        }
+        ProxyBackend[] routes = new ProxyBackend[10000];
+        int[] counts = new int[backends.size()];
+        for (int key = 0; key < routes.length; key++) {
+            routes[key] = ProxyBackend.select(backends, key, now);
+            counts[backends.indexOf(routes[key])]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > routes.length / 8);
+        }
+        //only keys of the dead backend move, and they move back when it is alive again
+        ProxyBackend dead = backends.get(1);
+        now = Constants.PROXY_BACKEND_TIMEOUT;
+        for (ProxyBackend backend : backends) {
+            if (backend != dead) {
+                backend.updateInfo("info", now);
+            }
+        }
+        for (int key = 0; key < routes.length; key++) {
+            ProxyBackend backend = ProxyBackend.select(backends, key, now);
+            assertNotSame(dead, backend);
+            if (routes[key] != dead) {
+                assertSame(routes[key], backend);
+            }
+        }
+        dead.updateInfo("info", now);
+        for (int key = 0; key < routes.length; key++) {
+            assertSame(routes[key], ProxyBackend.select(backends, key, now));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package raknetserver.proxy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Test;
+import raknetserver.RakNetClient;
+import raknetserver.RakNetServer;
+import raknetserver.pipeline.raknet.RakNetPacketConnectionEstablishHandler.PingHandler;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+//proxy and backends are real servers on loopback
+public class RakNetProxyTests {
+    private static final int BACKENDS = 3;
+    private static final int CLIENTS = 8;
+
+    private final List<RakNetServer> servers = new ArrayList<>();
+    private final List<InetSocketAddress> backends = new ArrayList<>();
+    //message to index of the backend that received it
+    private final ConcurrentHashMap<String, Integer> routes = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> echoed = new LinkedBlockingQueue<>();
+    private RakNetProxy proxy;
+    private RakNetClient client;
+
+    private static InetSocketAddress freeAddress() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0))) {
+            return new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+        }
+    }
+
+    //backends echo every message back
+    private void startBackends() throws IOException {
+        for (int i = 0; i < BACKENDS; i++) {
+            int index = i;
+            InetSocketAddress address = freeAddress();
+            RakNetServer server = new RakNetServer(address, new PingHandler() {
+                @Override
+                public void executeHandler(Runnable runnable) {
+                    runnable.run();
+                }
+
+                @Override
+                public String getServerInfo(Channel channel) {
+                    return "backend " + index;
+                }
+            }, channel -> channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                    routes.put(((ByteBuf) msg).toString(StandardCharsets.UTF_8), index);
+                    ctx.writeAndFlush(msg);
+                }
+            }), 0xFE);
+            server.start();
+            servers.add(server);
+            backends.add(address);
+        }
+    }
+
+    private void startClient() {
+        client = new RakNetClient(channel -> channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ByteBuf buf = (ByteBuf) msg;
+                echoed.add(buf.toString(StandardCharsets.UTF_8));
+                buf.release();
+            }
+        }), 0xFE);
+        client.start();
+    }
+
+    @After
+    public void stop() {
+        if (client != null) {
+            client.stopNow();
+        }
+        if (proxy != null) {
+            proxy.stop();
+        }
+        for (RakNetServer server : servers) {
+            server.stopNow();
+        }
+    }
+
+    //clients connect through the proxy, each of them gets its message echoed back by the backend
+    private void exchange(InetSocketAddress address) throws Exception {
+        startClient();
+        Set<String> messages = new HashSet<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            Future<Channel> connect = client.connect(address);
+            assertTrue(connect.await(5, TimeUnit.SECONDS));
+            assertTrue(String.valueOf(connect.cause()), connect.isSuccess());
+            String message = "client " + i;
+            messages.add(message);
+            connect.getNow().writeAndFlush(Unpooled.copiedBuffer(message, StandardCharsets.UTF_8));
+        }
+        Set<String> received = new HashSet<>();
+        while (received.size() < CLIENTS) {
+            String message = echoed.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            received.add(message);
+        }
+        assertEquals(messages, received);
+        //clients are spread by guid
+        assertTrue(new HashSet<>(routes.values()).size() > 1);
+        assertEquals(CLIENTS, proxy.getSessionCount());
+        assertEquals(0, proxy.getPendingSessionCount());
+    }
+
+    @Test
+    public void testPassThrough() throws Exception {
+        startBackends();
+        InetSocketAddress address = freeAddress();
+        proxy = new RakNetProxy(address, backends);
+        proxy.start();
+        exchange(address);
+    }
+
+    @Test
+    public void testTermination() throws Exception {
+        startBackends();
+        InetSocketAddress address = freeAddress();
+        proxy = new RakNetTerminatingProxy(address, backends, 0xFE);
+        proxy.start();
+        exchange(address);
+    }
+
+    @Test
+    public void testSessionLimit() throws Exception {
+        startBackends();
+        InetSocketAddress address = freeAddress();
+        proxy = new RakNetProxy(address, backends);
+        proxy.maxSessions = 1;
+        proxy.start();
+        startClient();
+
+        Future<Channel> first = client.connect(address);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        assertTrue(first.isSuccess());
+        assertEquals(0, proxy.getPendingSessionCount());
+        Future<Channel> second = client.connect(address);
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertTrue(second.cause() instanceof DecoderException);
+        assertEquals(1, proxy.getSessionCount());
+    }
+}
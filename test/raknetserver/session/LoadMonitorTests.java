@@ -0,0 +1,50 @@
+package raknetserver.session;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LoadMonitorTests {
+    @Test
+    public void testLagOverload() throws InterruptedException {
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(1);
+        LoadMonitor monitor = new LoadMonitor(5, 50, 2, 1000);
+        try {
+            monitor.start(group);
+            Thread.sleep(50);
+            assertFalse(monitor.isOverloaded());
+            assertTrue(monitor.tryAcceptPing());
+            group.execute(() -> {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                }
+            });
+            Thread.sleep(200);
+            assertTrue(monitor.isOverloaded());
+            assertTrue(monitor.tryAcceptPing());
+            assertTrue(monitor.tryAcceptPing());
+            assertFalse(monitor.tryAcceptPing());
+            assertEquals("a", monitor.getServerInfo(() -> "a"));
+            assertEquals("a", monitor.getServerInfo(() -> "b"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (monitor.isOverloaded() && (System.nanoTime() < deadline)) {
+                Thread.sleep(10);
+            }
+            assertFalse(monitor.isOverloaded());
+            assertEquals("b", monitor.getServerInfo(() -> "b"));
+        } finally {
+            monitor.stop();
+            group.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        assertFalse(LoadMonitor.DISABLED.isOverloaded());
+        assertTrue(LoadMonitor.DISABLED.tryAcceptPing());
+    }
+}
@@ -0,0 +1,75 @@
+package raknetserver.session;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MemoryGovernorTests {
+    @Test
+    public void testConnectionBudget() {
+        MemoryGovernor governor = new MemoryGovernor(1 << 30, 1 << 20);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        MemoryGovernor.Account account = governor.register(channel);
+        account.charge(1000);
+        assertEquals(1000, account.getBytes());
+        assertEquals(MemoryGovernor.CHUNK, governor.getReservedBytes());
+        account.charge(1 << 20);
+        channel.runPendingTasks();
+        assertFalse(channel.isOpen());
+        assertEquals(0, governor.getReservedBytes());
+        assertEquals(0, governor.getAccountCount());
+    }
+
+    @Test
+    public void testShedLargest() {
+        MemoryGovernor governor = new MemoryGovernor(10 * MemoryGovernor.CHUNK, 1 << 30);
+        EmbeddedChannel small = new EmbeddedChannel();
+        EmbeddedChannel large = new EmbeddedChannel();
+        governor.register(small).charge(2 * MemoryGovernor.CHUNK);
+        governor.register(large).charge(5 * MemoryGovernor.CHUNK);
+        small.runPendingTasks();
+        large.runPendingTasks();
+        assertTrue(small.isOpen());
+        assertTrue(large.isOpen());
+        governor.register(large).charge(3 * MemoryGovernor.CHUNK);
+        small.runPendingTasks();
+        large.runPendingTasks();
+        assertTrue(small.isOpen());
+        assertFalse(large.isOpen());
+        assertEquals(2 * MemoryGovernor.CHUNK, governor.getReservedBytes());
+    }
+
+    //connection that is shed but not closed yet still holds its reservation, it shouldn't cause more connections to be shed
+    @Test
+    public void testShedPendingClose() {
+        MemoryGovernor governor = new MemoryGovernor(10 * MemoryGovernor.CHUNK, 1 << 30);
+        EmbeddedChannel large = new EmbeddedChannel();
+        EmbeddedChannel medium = new EmbeddedChannel();
+        EmbeddedChannel small = new EmbeddedChannel();
+        governor.register(large).charge(4 * MemoryGovernor.CHUNK);
+        governor.register(medium).charge(3 * MemoryGovernor.CHUNK);
+        MemoryGovernor.Account account = governor.register(small);
+        account.charge(MemoryGovernor.CHUNK);
+        account.charge(2 * MemoryGovernor.CHUNK);
+        account.charge(MemoryGovernor.CHUNK);
+        assertEquals(11 * MemoryGovernor.CHUNK, governor.getReservedBytes());
+        large.runPendingTasks();
+        medium.runPendingTasks();
+        small.runPendingTasks();
+        assertFalse(large.isOpen());
+        assertTrue(medium.isOpen());
+        assertTrue(small.isOpen());
+        assertEquals(7 * MemoryGovernor.CHUNK, governor.getReservedBytes());
+    }
+
+    @Test
+    public void testReleaseChunks() {
+        MemoryGovernor governor = new MemoryGovernor(1 << 30, 1 << 30);
+        MemoryGovernor.Account account = governor.register(new EmbeddedChannel());
+        account.charge(10 * MemoryGovernor.CHUNK);
+        account.charge(-10 * MemoryGovernor.CHUNK);
+        assertEquals(0, account.getBytes());
+        assertTrue(governor.getReservedBytes() <= 2 * MemoryGovernor.CHUNK);
+    }
+}
@@ -0,0 +1,67 @@
+package raknetserver.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+import raknetserver.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RakNetWriteQueueTests {
+    @Test
+    public void testBatchedWrites() {
+        int[] flushes = new int[1];
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) {
+                flushes[0]++;
+                ctx.flush();
+            }
+        });
+        List<ByteBuf> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            messages.add(Unpooled.buffer().writeInt(i));
+        }
+        assertEquals(100, RakNetWriteQueue.writeAll(channel, messages));
+        assertTrue(RakNetWriteQueue.write(channel, Unpooled.buffer().writeInt(100)));
+        assertNull(channel.readOutbound());
+        channel.runPendingTasks();
+        for (int i = 0; i <= 100; i++) {
+            ByteBuf buf = channel.readOutbound();
+            assertEquals(i, buf.readInt());
+            buf.release();
+        }
+        assertNull(channel.readOutbound());
+        assertEquals(1, flushes[0]);
+
+        //following writes are drained by the event loop drainer
+        RakNetWriteQueue.write(channel, Unpooled.buffer().writeInt(101));
+        channel.runPendingTasks();
+        ByteBuf buf = channel.readOutbound();
+        assertEquals(101, buf.readInt());
+        buf.release();
+        assertEquals(2, flushes[0]);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testBounded() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        List<ByteBuf> messages = new ArrayList<>();
+        for (int i = 0; i < Constants.WRITE_QUEUE_CAPACITY + 10; i++) {
+            messages.add(Unpooled.buffer(4));
+        }
+        assertEquals(Constants.WRITE_QUEUE_CAPACITY, RakNetWriteQueue.writeAll(channel, messages));
+        for (int i = Constants.WRITE_QUEUE_CAPACITY; i < messages.size(); i++) {
+            assertEquals(0, messages.get(i).refCnt());
+        }
+        channel.runPendingTasks();
+        channel.finishAndReleaseAll();
+    }
+}
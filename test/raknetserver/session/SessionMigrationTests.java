@@ -0,0 +1,189 @@
+package raknetserver.session;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.Test;
+import raknetserver.RakNetClient;
+import raknetserver.RakNetServer;
+import raknetserver.packet.EncapsulatedPacket;
+import raknetserver.packet.RakNetConstants;
+import raknetserver.packet.raknet.RakNetEncapsulatedData;
+import raknetserver.pipeline.raknet.RakNetSessionMigrationHandler;
+import raknetserver.utils.PackedAddress;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static raknetserver.TestChannels.*;
+
+public class SessionMigrationTests {
+    private static final InetSocketAddress REBOUND_ADDRESS = new InetSocketAddress("127.0.0.1", 50001);
+
+    private static EmbeddedChannel newReboundChannel(RakNetServer server, InetSocketAddress address) {
+        EmbeddedChannel channel = newServerChannel(server, address);
+        if (channel.pipeline().get("rns-migrate") == null) {
+            channel.pipeline().addAfter("rns-timeout", "rns-migrate", new RakNetSessionMigrationHandler(server.getSessions()));
+        }
+        return channel;
+    }
+
+    private static List<Object> readAll(EmbeddedChannel channel) {
+        List<Object> datagrams = new ArrayList<>();
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            datagrams.add(msg);
+        }
+        return datagrams;
+    }
+
+    private static long readChallengeNonce(ByteBuf datagram) {
+        datagram.skipBytes(1);
+        RakNetEncapsulatedData data = new RakNetEncapsulatedData();
+        data.decode(datagram);
+        datagram.release();
+        ByteBuf payload = data.getPackets().get(0).getData();
+        assertEquals(RakNetConstants.ID_I_MIGRATION_CHALLENGE, payload.readUnsignedByte());
+        long nonce = payload.readLong();
+        data.release();
+        return nonce;
+    }
+
+    private static ByteBuf newProofDatagram(int seqId, long nonce, long proof) {
+        EncapsulatedPacket packet = new EncapsulatedPacket(Unpooled.buffer().writeByte(RakNetConstants.ID_I_MIGRATION_PROOF).writeLong(nonce).writeLong(proof), 0, 0, 0);
+        packet.setReliability(EncapsulatedPacket.UNRELIABLE);
+        RakNetEncapsulatedData data = new RakNetEncapsulatedData(packet);
+        data.setSeqId(seqId);
+        ByteBuf datagram = Unpooled.buffer().writeByte(0x84);
+        data.encode(datagram);
+        data.release();
+        return datagram;
+    }
+
+    private static void write(EmbeddedChannel channel, String... messages) {
+        for (String message : messages) {
+            channel.writeAndFlush(Unpooled.copiedBuffer(message, StandardCharsets.UTF_8));
+        }
+    }
+
+    //client address changes, first datagrams of both sides are lost on the old path, the rest continues from the new address once client answers the challenge
+    private static void testMigrate(InetSocketAddress reboundAddress) {
+        List<String> serverReceived = new ArrayList<>();
+        List<String> clientReceived = new ArrayList<>();
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> channel.pipeline().addLast(collector(serverReceived)), 0xFE);
+        RakNetClient client = new RakNetClient(channel -> channel.pipeline().addLast(collector(clientReceived)), 0xFE);
+        Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+        EmbeddedChannel clientChannel = newClientChannel(client, connected);
+        EmbeddedChannel oldChannel = newServerChannel(server, CLIENT_ADDRESS);
+        pump(clientChannel, oldChannel);
+        assertTrue(connected.isSuccess());
+        RakNetSession session = server.getSessions().get(PackedAddress.of(CLIENT_ADDRESS));
+        assertNotNull(session);
+
+        write(oldChannel, "s0");
+        readAll(oldChannel).forEach(msg -> ((ByteBuf) msg).release());
+        write(clientChannel, "c0", "c1", "c2", "c3", "c4");
+        List<Object> datagrams = readAll(clientChannel);
+        assertEquals(5, datagrams.size());
+        ((ByteBuf) datagrams.get(0)).release();
+
+        EmbeddedChannel newChannel = newReboundChannel(server, reboundAddress);
+        for (Object datagram : datagrams.subList(1, datagrams.size())) {
+            newChannel.writeInbound(datagram);
+        }
+        //nothing is moved until challenge is answered
+        assertSame(oldChannel, session.getTransport());
+        pump(clientChannel, newChannel);
+        assertTrue(newChannel.isActive());
+        assertSame(newChannel, session.getTransport());
+        assertEquals(reboundAddress, session.getRemoteAddress());
+        assertSame(session, server.getSessions().get(PackedAddress.of(reboundAddress)));
+        assertNull(server.getSessions().get(PackedAddress.of(CLIENT_ADDRESS)));
+
+        write(oldChannel, "s1", "s2", "s3", "s4");
+        assertNull(oldChannel.readOutbound());
+        pump(clientChannel, newChannel);
+        assertEquals(Arrays.asList("c0", "c1", "c2", "c3", "c4"), serverReceived);
+        assertEquals(Arrays.asList("s0", "s1", "s2", "s3", "s4"), clientReceived);
+
+        clientChannel.close();
+        newChannel.close();
+        assertFalse(oldChannel.isActive());
+    }
+
+    @Test
+    public void testMigrateOnRebind() {
+        testMigrate(REBOUND_ADDRESS);
+    }
+
+    @Test
+    public void testMigrateToOtherIP() {
+        testMigrate(new InetSocketAddress("127.0.0.2", 50002));
+    }
+
+    //host that replays datagram of the session from its own address gets only the challenge, and it can't answer it without the session token
+    @Test
+    public void testRefuseWithoutProof() {
+        List<String> serverReceived = new ArrayList<>();
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> channel.pipeline().addLast(collector(serverReceived)), 0xFE);
+        RakNetClient client = new RakNetClient(channel -> {}, 0xFE);
+        Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+        EmbeddedChannel clientChannel = newClientChannel(client, connected);
+        EmbeddedChannel oldChannel = newServerChannel(server, CLIENT_ADDRESS);
+        pump(clientChannel, oldChannel);
+        assertTrue(connected.isSuccess());
+        RakNetSession session = server.getSessions().get(PackedAddress.of(CLIENT_ADDRESS));
+
+        write(clientChannel, "c0");
+        ByteBuf replayed = clientChannel.readOutbound();
+        int seqId = replayed.getUnsignedMediumLE(1);
+        EmbeddedChannel newChannel = newReboundChannel(server, REBOUND_ADDRESS);
+        newChannel.writeInbound(replayed);
+        List<Object> sent = readAll(newChannel);
+        assertEquals(1, sent.size());
+        long nonce = readChallengeNonce((ByteBuf) sent.get(0));
+        newChannel.writeInbound(newProofDatagram(seqId + 1, nonce, 0));
+        assertSame(oldChannel, session.getTransport());
+        assertFalse(newChannel.isActive());
+        assertTrue(oldChannel.isActive());
+        assertTrue(serverReceived.isEmpty());
+
+        clientChannel.close();
+        oldChannel.close();
+        newChannel.finishAndReleaseAll();
+    }
+
+    //datagram that doesn't continue sequence of the session from the same ip is refused as usual
+    @Test
+    public void testRefuseUnexpectedSeqId() {
+        RakNetServer server = new RakNetServer(SERVER_ADDRESS, null, channel -> {}, 0xFE);
+        RakNetClient client = new RakNetClient(channel -> {}, 0xFE);
+        Promise<Channel> connected = ImmediateEventExecutor.INSTANCE.newPromise();
+        EmbeddedChannel clientChannel = newClientChannel(client, connected);
+        EmbeddedChannel oldChannel = newServerChannel(server, CLIENT_ADDRESS);
+        pump(clientChannel, oldChannel);
+        assertTrue(connected.isSuccess());
+        RakNetSession session = server.getSessions().get(PackedAddress.of(CLIENT_ADDRESS));
+
+        ByteBuf forged = Unpooled.buffer();
+        forged.writeByte(0x84);
+        forged.writeMediumLE(500000);
+        forged.writeBytes(new byte[16]);
+        EmbeddedChannel newChannel = newReboundChannel(server, REBOUND_ADDRESS);
+        newChannel.writeInbound(forged);
+        assertSame(oldChannel, session.getTransport());
+        assertFalse(newChannel.isActive());
+        assertTrue(oldChannel.isActive());
+
+        clientChannel.close();
+        oldChannel.close();
+        newChannel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,41 @@
+package raknetserver.simulation;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SimulationTests {
+    private static Simulation run(long seed, int connections, int seconds) {
+        Simulation simulation = new Simulation(seed, 0.1, 40, 30, TimeUnit.MILLISECONDS);
+        try {
+            simulation.addConnections(connections, 2, 5, 4000, TimeUnit.SECONDS);
+            simulation.run(seconds - 10, TimeUnit.SECONDS);
+            simulation.stopSending();
+            simulation.run(10, TimeUnit.SECONDS);
+            return simulation;
+        } finally {
+            simulation.close();
+        }
+    }
+
+    @Test
+    public void testLossyNetworkDelivery() {
+        Simulation simulation = run(1, 100, 60);
+        assertEquals(TimeUnit.SECONDS.toMillis(60), simulation.getClock().currentTimeMillis() - Simulation.EPOCH);
+        for (Simulation.Connection connection : simulation.getConnections()) {
+            assertTrue(connection.isConnected());
+            assertTrue(connection.getSent() > 200);
+            assertEquals(connection.getSent(), connection.getServerReceived());
+            assertEquals(connection.getSent(), connection.getClientReceived());
+            assertEquals(0, connection.getOutOfOrder());
+        }
+        assertTrue(simulation.getSummary(), simulation.getSummary().endsWith("errors: 0"));
+    }
+
+    @Test
+    public void testDeterministic() {
+        assertEquals(run(7, 20, 30).getSummary(), run(7, 20, 30).getSummary());
+    }
+}
@@ -0,0 +1,45 @@
+package raknetserver.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PackedAddressMapTests {
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(0);
+        PackedAddressMap<Integer> map = new PackedAddressMap<>(4);
+        HashMap<PackedAddress, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            //small key space, so that there are a lot of collisions and removals
+            PackedAddress address = random.nextBoolean() ?
+                PackedAddress.ofIPv4(random.nextInt(64), 19132 + random.nextInt(8)) :
+                new PackedAddress(random.nextInt(4), random.nextInt(64), random.nextInt(8));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(address), map.remove(address));
+            } else {
+                assertEquals(expected.put(address, i), map.put(address, i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<PackedAddress, Integer> entry : expected.entrySet()) {
+            PackedAddress address = entry.getKey();
+            assertEquals(entry.getValue(), map.get(address.getHigh(), address.getLow(), address.getPort()));
+        }
+    }
+
+    @Test
+    public void testConditionalRemove() {
+        PackedAddressMap<String> map = new PackedAddressMap<>();
+        PackedAddress address = PackedAddress.ofIPv4(0x7F000001, 19132);
+        map.put(address, "a");
+        assertFalse(map.remove(address, "b"));
+        assertEquals("a", map.get(address));
+        assertTrue(map.remove(address, "a"));
+        assertNull(map.get(address));
+    }
+}
@@ -0,0 +1,43 @@
+package raknetserver.utils;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SequenceWindowTests {
+    @Test
+    public void testReorderedAndDuplicates() {
+        Random random = new Random(0);
+        SequenceWindow window = new SequenceWindow(256);
+        HashSet<Integer> received = new HashSet<>();
+        //starts close to the 3 byte limit, so that wrap around is covered
+        int base = UINT.B3.MAX_VALUE - 5000;
+        for (int i = 0; i < 20000; i++) {
+            int seqId = UINT.B3.plus(base, i + random.nextInt(64) - 32);
+            boolean duplicate = received.contains(seqId);
+            int behind = UINT.B3.minusWrap(window.getHighest(), seqId);
+            if (behind < window.getSize()) {
+                assertEquals(!duplicate, window.add(seqId));
+                received.add(seqId);
+                assertTrue(window.contains(seqId));
+            }
+        }
+    }
+
+    @Test
+    public void testFarJump() {
+        SequenceWindow window = new SequenceWindow(64);
+        assertTrue(window.add(0));
+        assertTrue(window.add(1));
+        assertTrue(window.add(1000));
+        assertFalse(window.contains(999));
+        assertFalse(window.contains(1000 - 63));
+        assertTrue(window.contains(1000 - 64));
+        assertFalse(window.add(1));
+        assertTrue(window.add(999));
+        assertFalse(window.add(999));
+    }
+}